@@ -0,0 +1,15 @@
+package io.strac.gdrive.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+@SpringBootApplication
+@ConfigurationPropertiesScan
+public class ReactiveGoogleDriveApiApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(ReactiveGoogleDriveApiApplication.class, args);
+	}
+
+}
@@ -0,0 +1,24 @@
+package io.strac.gdrive.reactive.clients;
+
+import lombok.Data;
+
+/**
+ * File resource as returned by the Drive REST API, limited to {@link ReactiveDriveClient#FILE_FIELDS}.
+ * Drive sends {@code size} and {@code version} as strings; they are read as numbers.
+ */
+@Data
+public class DriveFile {
+    private String id;
+    private String name;
+    private String mimeType;
+    private Long size;
+    private String modifiedTime;
+    private String md5Checksum;
+    private Long version;
+    private Capabilities capabilities;
+
+    @Data
+    public static class Capabilities {
+        private Boolean canDownload;
+    }
+}
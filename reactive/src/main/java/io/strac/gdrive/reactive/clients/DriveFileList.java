@@ -0,0 +1,14 @@
+package io.strac.gdrive.reactive.clients;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Page of a file listing as returned by the Drive REST API.
+ */
+@Data
+public class DriveFileList {
+    private List<DriveFile> files;
+    private String nextPageToken;
+}
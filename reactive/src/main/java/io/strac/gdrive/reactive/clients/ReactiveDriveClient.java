@@ -0,0 +1,134 @@
+package io.strac.gdrive.reactive.clients;
+
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.strac.gdrive.reactive.config.ReactiveDriveClientConfiguration.DRIVE_WEB_CLIENT;
+
+/**
+ * Non-blocking client of the Drive v3 REST endpoints, acting as the current user.
+ * Content is passed through as {@link DataBuffer}s without being collected, so demand from the caller reaches Drive
+ * as TCP backpressure and each transfer holds at most a few buffers in memory.
+ * Failures are signalled as {@link org.springframework.web.reactive.function.client.WebClientResponseException}.
+ */
+@Component
+public class ReactiveDriveClient {
+    public static final String FILE_FIELDS = "id, name, mimeType, size, modifiedTime, md5Checksum, version, capabilities/canDownload";
+    private static final String FILES_PATH = "/drive/v3/files";
+    private static final String UPLOAD_PATH = "/upload/drive/v3/files";
+
+    private final WebClient webClient;
+
+    @Autowired
+    public ReactiveDriveClient(@NonNull @Qualifier(DRIVE_WEB_CLIENT) final WebClient webClient) {
+        this.webClient = webClient;
+    }
+
+    /**
+     * @param pageToken Token of the page to fetch, or null for the first page
+     */
+    public Mono<DriveFileList> list(final String pageToken, final int pageSize) {
+        final Map<String, Object> variables = new HashMap<>();
+        variables.put("fields", "nextPageToken, files(%s)".formatted(FILE_FIELDS));
+        variables.put("pageSize", pageSize);
+        variables.put("pageToken", pageToken);
+        return webClient.get()
+                .uri(builder -> {
+                    final UriBuilder uri = builder.path(FILES_PATH)
+                            .queryParam("fields", "{fields}")
+                            .queryParam("pageSize", "{pageSize}");
+                    if (pageToken != null) {
+                        uri.queryParam("pageToken", "{pageToken}");
+                    }
+                    return uri.build(variables);
+                })
+                .retrieve()
+                .bodyToMono(DriveFileList.class);
+    }
+
+    public Mono<DriveFile> get(@NonNull final String fileId) {
+        return webClient.get()
+                .uri(builder -> builder.path(FILES_PATH + "/{fileId}")
+                        .queryParam("fields", "{fields}")
+                        .build(fileId, FILE_FIELDS))
+                .retrieve()
+                .bodyToMono(DriveFile.class);
+    }
+
+    /**
+     * @return Content of the file, read from Drive as it is consumed
+     */
+    public Flux<DataBuffer> download(@NonNull final String fileId) {
+        return webClient.get()
+                .uri(builder -> builder.path(FILES_PATH + "/{fileId}")
+                        .queryParam("alt", "media")
+                        .build(fileId))
+                .retrieve()
+                .bodyToFlux(DataBuffer.class);
+    }
+
+    public Mono<Void> delete(@NonNull final String fileId) {
+        return webClient.delete()
+                .uri(builder -> builder.path(FILES_PATH + "/{fileId}").build(fileId))
+                .retrieve()
+                .bodyToMono(Void.class);
+    }
+
+    /**
+     * Create a file with a resumable upload session, streaming the content into it in a single request
+     * as it is produced.
+     * @param contentLength Length of the content in bytes, or -1 when unknown
+     */
+    public Mono<DriveFile> upload(@NonNull final String name, final String mimeType,
+                                  @NonNull final Flux<DataBuffer> content, final long contentLength) {
+        final MediaType contentType = mimeType != null ? MediaType.parseMediaType(mimeType) : MediaType.APPLICATION_OCTET_STREAM;
+        return startUpload(name, contentType, contentLength)
+                .flatMap(session -> webClient.put()
+                        .uri(session)
+                        .headers(headers -> {
+                            headers.setContentType(contentType);
+                            if (contentLength >= 0) {
+                                headers.setContentLength(contentLength);
+                            }
+                        })
+                        .body(BodyInserters.fromDataBuffers(content))
+                        .retrieve()
+                        .bodyToMono(DriveFile.class));
+    }
+
+    /**
+     * @return URI of a new resumable upload session, which accepts the content without further authorization
+     */
+    private Mono<URI> startUpload(final String name, final MediaType contentType, final long contentLength) {
+        return webClient.post()
+                .uri(builder -> builder.path(UPLOAD_PATH)
+                        .queryParam("uploadType", "resumable")
+                        .queryParam("fields", "{fields}")
+                        .build(FILE_FIELDS))
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    headers.set("X-Upload-Content-Type", contentType.toString());
+                    if (contentLength >= 0) {
+                        headers.set("X-Upload-Content-Length", String.valueOf(contentLength));
+                    }
+                })
+                .bodyValue(Map.of("name", name))
+                .retrieve()
+                .toBodilessEntity()
+                .flatMap(response -> Mono.justOrEmpty(response.getHeaders().getLocation()))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Drive did not return an upload session")));
+    }
+}
@@ -0,0 +1,42 @@
+package io.strac.gdrive.reactive.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+@Configuration
+public class ReactiveDriveClientConfiguration {
+    public static final String DRIVE_WEB_CLIENT = "driveWebClient";
+
+    /**
+     * WebClient for the Drive REST endpoints, sending the current user's access token with every request.
+     * Runs on the Reactor Netty event loops, one per core, so a transfer only occupies a thread while bytes are moving.
+     * No response timeout is set, since downloads and uploads can take arbitrarily long.
+     */
+    @Bean(DRIVE_WEB_CLIENT)
+    public WebClient driveWebClient(WebClient.Builder builder, ReactiveOAuth2AuthorizedClientManager authorizedClientManager,
+                                    ReactiveDriveProperties properties) {
+        final ReactiveDriveProperties.Transport transport = properties.getTransport();
+        final ConnectionProvider connectionProvider = ConnectionProvider.builder("gdrive")
+                .maxConnections(transport.getMaxConnections())
+                .pendingAcquireMaxCount(-1)
+                .maxIdleTime(transport.getIdleEviction())
+                .build();
+        final HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) transport.getConnectTimeout().toMillis());
+        final ServerOAuth2AuthorizedClientExchangeFilterFunction oauth =
+                new ServerOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager);
+        oauth.setDefaultOAuth2AuthorizedClient(true);
+        return builder
+                .baseUrl(properties.getApiUrl())
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(oauth)
+                .build();
+    }
+}
@@ -0,0 +1,47 @@
+package io.strac.gdrive.reactive.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("gdrive")
+public class ReactiveDriveProperties {
+    /**
+     * Base URL of the Drive REST endpoints, for both metadata and media requests.
+     */
+    private String apiUrl = "https://www.googleapis.com";
+    private Transport transport = new Transport();
+    private Token token = new Token();
+    private Listing listing = new Listing();
+
+    @Data
+    public static class Transport {
+        /**
+         * Connections to Drive shared by all users. Further requests wait for a free connection without holding a thread.
+         */
+        private int maxConnections = 500;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        /**
+         * Idle connections are closed after this long.
+         */
+        private Duration idleEviction = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Token {
+        /**
+         * Access tokens are refreshed with the refresh token once they are this close to expiring.
+         */
+        private Duration refreshAhead = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Listing {
+        /**
+         * Files per page when the request does not specify a page size.
+         */
+        private int defaultPageSize = 100;
+    }
+}
@@ -0,0 +1,57 @@
+package io.strac.gdrive.reactive.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProviderBuilder;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.DefaultReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.web.server.DefaultServerOAuth2AuthorizationRequestResolver;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizationRequestResolver;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+
+@Configuration
+@EnableWebFluxSecurity
+public class ReactiveSecurityConfiguration {
+    @Bean
+    public SecurityWebFilterChain filterChain(ServerHttpSecurity http, ReactiveClientRegistrationRepository clientRegistrations) {
+        return http.authorizeExchange(exchanges -> exchanges.anyExchange().authenticated())
+                .oauth2Login(login -> login.authorizationRequestResolver(offlineAccessRequestResolver(clientRegistrations)))
+                .csrf(ServerHttpSecurity.CsrfSpec::disable) // Disable CSRF for testing purposes
+                .build();
+    }
+
+    /**
+     * Refreshes access tokens with the refresh token once they are within {@code gdrive.token.refresh-ahead} of expiring.
+     */
+    @Bean
+    public ReactiveOAuth2AuthorizedClientManager authorizedClientManager(ReactiveClientRegistrationRepository clientRegistrations,
+                                                                         ServerOAuth2AuthorizedClientRepository authorizedClients,
+                                                                         ReactiveDriveProperties properties) {
+        final DefaultReactiveOAuth2AuthorizedClientManager manager =
+                new DefaultReactiveOAuth2AuthorizedClientManager(clientRegistrations, authorizedClients);
+        manager.setAuthorizedClientProvider(ReactiveOAuth2AuthorizedClientProviderBuilder.builder()
+                .authorizationCode()
+                .refreshToken(refreshToken -> refreshToken.clockSkew(properties.getToken().getRefreshAhead()))
+                .build());
+        return manager;
+    }
+
+    /**
+     * Google only issues a refresh token when offline access is requested, and only on the first consent unless
+     * consent is prompted for again, so returning users whose stored client was lost still get one.
+     */
+    private static ServerOAuth2AuthorizationRequestResolver offlineAccessRequestResolver(
+            ReactiveClientRegistrationRepository clientRegistrations) {
+        final DefaultServerOAuth2AuthorizationRequestResolver resolver = new DefaultServerOAuth2AuthorizationRequestResolver(clientRegistrations);
+        resolver.setAuthorizationRequestCustomizer(request ->
+                request.additionalParameters(parameters -> {
+                    parameters.put("access_type", "offline");
+                    parameters.put("prompt", "consent");
+                }));
+        return resolver;
+    }
+}
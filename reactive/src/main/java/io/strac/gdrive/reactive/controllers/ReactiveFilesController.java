@@ -0,0 +1,164 @@
+package io.strac.gdrive.reactive.controllers;
+
+import io.strac.gdrive.reactive.models.GoogleDriveFileListResponse;
+import io.strac.gdrive.reactive.models.GoogleDriveFileResponse;
+import io.strac.gdrive.reactive.services.ReactiveGoogleDriveService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Same routes and representations as the servlet {@code FilesController}, for list, metadata, download, upload and delete.
+ * Nothing blocks: content is streamed between the client and Drive as {@link DataBuffer}s, with the slower side's demand
+ * throttling the other.
+ */
+@RestController
+public class ReactiveFilesController {
+    public static final String API_RESOURCE_NAME = "/files";
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveFilesController.class);
+
+    private final ReactiveGoogleDriveService googleDriveService;
+
+    @Autowired
+    public ReactiveFilesController(ReactiveGoogleDriveService googleDriveService) {
+        this.googleDriveService = googleDriveService;
+    }
+
+    /**
+     * @param pageSize Files per page, up to 1000
+     * @return HTTP Response Entity containing Google Drive files for current user
+     */
+    @GetMapping(API_RESOURCE_NAME)
+    Mono<ResponseEntity<GoogleDriveFileListResponse>> getFilesPaginated(@RequestParam(required = false) String nextPageToken,
+                                                                         @RequestParam(required = false) Integer pageSize) {
+        return googleDriveService.getFilesPaginated(nextPageToken, pageSize)
+                .map(ResponseEntity::ok)
+                .onErrorResume(e -> {
+                    log.error("Error Getting all files", e);
+                    return Mono.just(errorResponse(e));
+                });
+    }
+
+    /**
+     * @param fileId Google Drive FileID
+     * @return Metadata of the file
+     */
+    @GetMapping(API_RESOURCE_NAME + "/{fileId}:metadata")
+    Mono<ResponseEntity<GoogleDriveFileResponse>> getFile(@PathVariable String fileId) {
+        return googleDriveService.getById(fileId)
+                .map(ResponseEntity::ok)
+                .onErrorResume(e -> {
+                    log.error("Error Getting FileId={}", fileId, e);
+                    return Mono.just(errorResponse(e));
+                });
+    }
+
+    /**
+     * Stream a file from Google Drive. The metadata is fetched first, so that a missing file is still answered
+     * with a status rather than a broken body.
+     * @param fileId Google Drive FileID to download
+     */
+    @GetMapping(API_RESOURCE_NAME + "/{fileId}")
+    Mono<ResponseEntity<Flux<DataBuffer>>> downloadFile(@PathVariable String fileId) {
+        return googleDriveService.getById(fileId)
+                .map(file -> ResponseEntity.ok()
+                        .headers(fileHeaders(file))
+                        .body(googleDriveService.downloadById(fileId)))
+                .onErrorResume(e -> {
+                    log.error("Error Downloading FileId={}", fileId, e);
+                    return Mono.just(errorResponse(e));
+                });
+    }
+
+    /**
+     * Upload a file to Google Drive
+     * @return Uploaded file response
+     */
+    @PostMapping(path = API_RESOURCE_NAME, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    Mono<ResponseEntity<GoogleDriveFileResponse>> uploadFile(@RequestPart("file") FilePart filePart) {
+        final MediaType contentType = filePart.headers().getContentType();
+        return googleDriveService.uploadFile(filePart.filename(), contentType != null ? contentType.toString() : null,
+                        filePart.content(), filePart.headers().getContentLength())
+                .map(ResponseEntity::ok)
+                .onErrorResume(e -> {
+                    log.error("Error Uploading File", e);
+                    return Mono.just(errorResponse(e));
+                });
+    }
+
+    /**
+     * Upload a file to Google Drive from the raw request body, which is streamed into the upload as it arrives.
+     * The request Content-Type is used as the file MIME type.
+     * @param name Name of the file to create
+     * @return Uploaded file response
+     */
+    @PostMapping(path = API_RESOURCE_NAME, consumes = "!" + MediaType.MULTIPART_FORM_DATA_VALUE)
+    Mono<ResponseEntity<GoogleDriveFileResponse>> uploadFileStream(@RequestParam String name, ServerHttpRequest request) {
+        final MediaType contentType = request.getHeaders().getContentType();
+        return googleDriveService.uploadFile(name, contentType != null ? contentType.toString() : null,
+                        request.getBody(), request.getHeaders().getContentLength())
+                .map(ResponseEntity::ok)
+                .onErrorResume(e -> {
+                    log.error("Error Uploading File name={}", name, e);
+                    return Mono.just(errorResponse(e));
+                });
+    }
+
+    /**
+     * Delete a file from GoogleDrive
+     * @param fileId ID of the file to delete
+     */
+    @DeleteMapping(API_RESOURCE_NAME + "/{fileId}")
+    Mono<ResponseEntity<Void>> deleteFile(@PathVariable String fileId) {
+        return googleDriveService.deleteFile(fileId)
+                .then(Mono.just(ResponseEntity.ok().<Void>build()))
+                .onErrorResume(e -> {
+                    log.error("Error Deleting FileId={}", fileId, e);
+                    return Mono.just(errorResponse(e));
+                });
+    }
+
+    private static HttpHeaders fileHeaders(GoogleDriveFileResponse file) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getName());
+        headers.setContentType(file.getMimeType() != null ? MediaType.parseMediaType(file.getMimeType()) : MediaType.APPLICATION_OCTET_STREAM);
+        if (file.getSize() != null) {
+            headers.setContentLength(file.getSize());
+        }
+        return headers;
+    }
+
+    /**
+     * Drive's 404 and rate limiting are passed on, with Drive's Retry-After when it sent one. Anything else is a 500.
+     */
+    private static <T> ResponseEntity<T> errorResponse(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            final HttpStatus status = HttpStatus.resolve(responseException.getStatusCode().value());
+            if (status == HttpStatus.NOT_FOUND) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            if (status == HttpStatus.TOO_MANY_REQUESTS
+                    || (status == HttpStatus.FORBIDDEN && responseException.getResponseBodyAsString().toLowerCase().contains("ratelimitexceeded"))) {
+                final String retryAfter = responseException.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+                final ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS);
+                if (retryAfter != null) {
+                    response.header(HttpHeaders.RETRY_AFTER, retryAfter);
+                }
+                return response.build();
+            }
+        }
+        return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+}
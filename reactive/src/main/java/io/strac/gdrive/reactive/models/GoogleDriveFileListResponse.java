@@ -0,0 +1,18 @@
+package io.strac.gdrive.reactive.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Same JSON representation as the servlet API's {@code GoogleDriveFileListResponse}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GoogleDriveFileListResponse {
+    private List<GoogleDriveFileResponse> files;
+    private String nextPageToken;
+}
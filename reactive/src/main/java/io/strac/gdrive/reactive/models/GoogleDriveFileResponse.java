@@ -0,0 +1,47 @@
+package io.strac.gdrive.reactive.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.strac.gdrive.reactive.clients.DriveFile;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Same JSON representation as the servlet API's {@code GoogleDriveFileResponse}, so clients can use either.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GoogleDriveFileResponse {
+    private String id;
+    private String name;
+    private String mimeType;
+    private Long size;
+    private String lastModifiedDateTime;
+    /**
+     * MD5 of the content, only set for files with binary content
+     */
+    private String md5Checksum;
+    /**
+     * Increases with every change to the file
+     */
+    private Long version;
+    /**
+     * Whether the current user may download or export the content, unset when unknown
+     */
+    private Boolean canDownload;
+
+    public GoogleDriveFileResponse(final DriveFile driveFile) {
+        this.id = driveFile.getId();
+        this.name = driveFile.getName();
+        this.mimeType = driveFile.getMimeType();
+        this.size = driveFile.getSize();
+        this.lastModifiedDateTime = driveFile.getModifiedTime();
+        this.md5Checksum = driveFile.getMd5Checksum();
+        this.version = driveFile.getVersion();
+        this.canDownload = driveFile.getCapabilities() != null ? driveFile.getCapabilities().getCanDownload() : null;
+    }
+}
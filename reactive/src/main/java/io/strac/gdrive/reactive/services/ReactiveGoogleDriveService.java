@@ -0,0 +1,71 @@
+package io.strac.gdrive.reactive.services;
+
+import io.strac.gdrive.reactive.clients.ReactiveDriveClient;
+import io.strac.gdrive.reactive.config.ReactiveDriveProperties;
+import io.strac.gdrive.reactive.models.GoogleDriveFileListResponse;
+import io.strac.gdrive.reactive.models.GoogleDriveFileResponse;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@Service
+public class ReactiveGoogleDriveService {
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveGoogleDriveService.class);
+
+    private final ReactiveDriveClient driveClient;
+    private final int defaultPageSize;
+
+    @Autowired
+    public ReactiveGoogleDriveService(@NonNull final ReactiveDriveClient driveClient,
+                                      @NonNull final ReactiveDriveProperties properties) {
+        this.driveClient = driveClient;
+        this.defaultPageSize = properties.getListing().getDefaultPageSize();
+    }
+
+    /**
+     * @param pageSize Files per page, up to {@link #MAX_PAGE_SIZE}. Defaults to {@code gdrive.listing.default-page-size}.
+     * @return Page of the current user's Google Drive files
+     */
+    public Mono<GoogleDriveFileListResponse> getFilesPaginated(final String nextPageToken, final Integer pageSize) {
+        return driveClient.list(nextPageToken, Math.clamp(pageSize != null ? pageSize : defaultPageSize, 1, MAX_PAGE_SIZE))
+                .map(page -> new GoogleDriveFileListResponse(
+                        page.getFiles() != null ? page.getFiles().stream().map(GoogleDriveFileResponse::new).toList() : List.of(),
+                        page.getNextPageToken()));
+    }
+
+    public Mono<GoogleDriveFileResponse> getById(@NonNull final String fileId) {
+        return driveClient.get(fileId).map(GoogleDriveFileResponse::new);
+    }
+
+    /**
+     * @return Content of the file, read from Google Drive only as fast as it is consumed
+     */
+    public Flux<DataBuffer> downloadById(@NonNull final String fileId) {
+        log.info("Download File {}", fileId);
+        return driveClient.download(fileId);
+    }
+
+    /**
+     * Upload a file to Google Drive, streaming the content through as it arrives
+     * @param contentLength Length of the content in bytes, or -1 when unknown
+     */
+    public Mono<GoogleDriveFileResponse> uploadFile(@NonNull final String name, final String mimeType,
+                                                    @NonNull final Flux<DataBuffer> content, final long contentLength) {
+        log.info("Upload File {} length={}", name, contentLength);
+        return driveClient.upload(name, mimeType, content, contentLength).map(GoogleDriveFileResponse::new);
+    }
+
+    public Mono<Void> deleteFile(@NonNull final String fileId) {
+        log.info("Delete File {}", fileId);
+        return driveClient.delete(fileId);
+    }
+}
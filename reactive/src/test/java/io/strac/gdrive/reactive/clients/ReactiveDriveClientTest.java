@@ -0,0 +1,122 @@
+package io.strac.gdrive.reactive.clients;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReactiveDriveClientTest {
+    private final List<ClientRequest> requests = new ArrayList<>();
+    private final Deque<ClientResponse> responses = new ArrayDeque<>();
+
+    private ReactiveDriveClient driveClient;
+
+    @BeforeEach
+    public void setup() {
+        final WebClient webClient = WebClient.builder()
+                .baseUrl("http://drive.test")
+                .exchangeFunction(request -> {
+                    requests.add(request);
+                    return Mono.just(responses.removeFirst());
+                })
+                .build();
+        driveClient = new ReactiveDriveClient(webClient);
+    }
+
+    @Test
+    public void test_list_parsesPage() {
+        responses.add(json("{\"files\": [{\"id\": \"file-1\", \"name\": \"a.txt\", \"size\": \"12\", \"version\": \"3\","
+                + " \"capabilities\": {\"canDownload\": true}}], \"nextPageToken\": \"next\"}"));
+
+        final DriveFileList page = driveClient.list("token-1", 50).block();
+
+        assertEquals("next", page.getNextPageToken());
+        final DriveFile file = page.getFiles().get(0);
+        assertEquals("file-1", file.getId());
+        assertEquals(12L, file.getSize());
+        assertEquals(3L, file.getVersion());
+        assertTrue(file.getCapabilities().getCanDownload());
+        final String query = requests.get(0).url().getQuery();
+        assertTrue(query.contains("pageSize=50"));
+        assertTrue(query.contains("pageToken=token-1"));
+        assertTrue(query.contains("fields=nextPageToken, files(" + ReactiveDriveClient.FILE_FIELDS + ")"));
+    }
+
+    @Test
+    public void test_download_streamsContent() {
+        responses.add(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM_VALUE)
+                .body("Hello, Drive")
+                .build());
+
+        StepVerifier.create(DataBufferUtils.join(driveClient.download("file-1")).map(ReactiveDriveClientTest::string))
+                .expectNext("Hello, Drive")
+                .verifyComplete();
+
+        assertEquals("/drive/v3/files/file-1", requests.get(0).url().getPath());
+        assertEquals("alt=media", requests.get(0).url().getQuery());
+    }
+
+    @Test
+    public void test_upload_streamsContentIntoSession() {
+        responses.add(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.LOCATION, "http://drive.test/upload/drive/v3/files?uploadType=resumable&upload_id=session-1")
+                .build());
+        responses.add(json("{\"id\": \"file-1\", \"name\": \"a.txt\"}"));
+        final Flux<DataBuffer> content = Flux.just(DefaultDataBufferFactory.sharedInstance.wrap("Hello, Drive".getBytes()));
+
+        final DriveFile file = driveClient.upload("a.txt", "text/plain", content, 12).block();
+
+        assertEquals("file-1", file.getId());
+        assertEquals(HttpMethod.POST, requests.get(0).method());
+        assertEquals("text/plain", requests.get(0).headers().getFirst("X-Upload-Content-Type"));
+        assertEquals("12", requests.get(0).headers().getFirst("X-Upload-Content-Length"));
+        assertEquals(HttpMethod.PUT, requests.get(1).method());
+        assertEquals("uploadType=resumable&upload_id=session-1", requests.get(1).url().getQuery());
+        assertEquals(12, requests.get(1).headers().getContentLength());
+    }
+
+    @Test
+    public void test_get_notFound() {
+        responses.add(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+
+        StepVerifier.create(driveClient.get("missing"))
+                .expectError(WebClientResponseException.NotFound.class)
+                .verify();
+    }
+
+    private static ClientResponse json(final String body) {
+        return ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build();
+    }
+
+    private static String string(final DataBuffer buffer) {
+        try {
+            return buffer.toString(StandardCharsets.UTF_8);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package io.strac.gdrive.reactive.controllers;
+
+import io.strac.gdrive.reactive.models.GoogleDriveFileListResponse;
+import io.strac.gdrive.reactive.models.GoogleDriveFileResponse;
+import io.strac.gdrive.reactive.services.ReactiveGoogleDriveService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveFilesControllerTests {
+
+    @Mock
+    private ReactiveGoogleDriveService googleDriveService;
+
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    public void setup() {
+        webTestClient = WebTestClient.bindToController(new ReactiveFilesController(googleDriveService)).build();
+    }
+
+    @Test
+    public void test_getFilesPaginated_success() {
+        when(googleDriveService.getFilesPaginated(null, 50))
+                .thenReturn(Mono.just(new GoogleDriveFileListResponse(List.of(file("file-1")), "next")));
+
+        webTestClient.get().uri(ReactiveFilesController.API_RESOURCE_NAME + "?pageSize=50")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.files[0].id").isEqualTo("file-1")
+                .jsonPath("$.nextPageToken").isEqualTo("next");
+    }
+
+    @Test
+    public void test_downloadFile_success() {
+        final GoogleDriveFileResponse file = file("file-1");
+        file.setName("a.txt");
+        file.setMimeType("text/plain");
+        file.setSize(12L);
+        when(googleDriveService.getById("file-1")).thenReturn(Mono.just(file));
+        when(googleDriveService.downloadById("file-1"))
+                .thenReturn(Flux.just(buffer("Hello, "), buffer("Drive")));
+
+        webTestClient.get().uri(ReactiveFilesController.API_RESOURCE_NAME + "/file-1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.TEXT_PLAIN)
+                .expectHeader().contentLength(12)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=a.txt")
+                .expectBody(String.class).isEqualTo("Hello, Drive");
+    }
+
+    @Test
+    public void test_downloadFile_notFound() {
+        when(googleDriveService.getById("missing")).thenReturn(Mono.error(
+                WebClientResponseException.create(404, "Not Found", HttpHeaders.EMPTY, new byte[0], null)));
+
+        webTestClient.get().uri(ReactiveFilesController.API_RESOURCE_NAME + "/missing")
+                .exchange()
+                .expectStatus().isNotFound();
+
+        verify(googleDriveService, never()).downloadById(any());
+    }
+
+    @Test
+    public void test_getFile_rateLimited() {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "3");
+        when(googleDriveService.getById("file-1")).thenReturn(Mono.error(
+                WebClientResponseException.create(429, "Too Many Requests", headers, new byte[0], null)));
+
+        webTestClient.get().uri(ReactiveFilesController.API_RESOURCE_NAME + "/file-1:metadata")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "3");
+    }
+
+    @Test
+    public void test_uploadFileStream_success() {
+        when(googleDriveService.uploadFile(eq("video.mp4"), eq("video/mp4"), any(), eq(12L)))
+                .thenReturn(Mono.just(file("file-id")));
+
+        webTestClient.post().uri(ReactiveFilesController.API_RESOURCE_NAME + "?name=video.mp4")
+                .contentType(MediaType.parseMediaType("video/mp4"))
+                .bodyValue("Hello, Drive".getBytes())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("file-id");
+    }
+
+    @Test
+    public void test_deleteFile_success() {
+        when(googleDriveService.deleteFile("file-1")).thenReturn(Mono.empty());
+
+        webTestClient.delete().uri(ReactiveFilesController.API_RESOURCE_NAME + "/file-1")
+                .exchange()
+                .expectStatus().isOk();
+
+        verify(googleDriveService, times(1)).deleteFile("file-1");
+    }
+
+    private static GoogleDriveFileResponse file(final String id) {
+        final GoogleDriveFileResponse file = new GoogleDriveFileResponse();
+        file.setId(id);
+        return file;
+    }
+
+    private static DataBuffer buffer(final String content) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(content.getBytes());
+    }
+}
@@ -0,0 +1,208 @@
+package io.strac.gdrive.gdrive.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.services.drive.model.File;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import io.strac.gdrive.gdrive.clients.DriveRateLimiter;
+import io.strac.gdrive.gdrive.clients.DriveTokenManager;
+import io.strac.gdrive.gdrive.clients.GoogleDriveClientFactory;
+import io.strac.gdrive.gdrive.clients.GoogleDriveTransportConfiguration;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.fakes.FakeDriveServer;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import io.strac.gdrive.gdrive.services.GoogleDriveArchiveService;
+import io.strac.gdrive.gdrive.services.GoogleDriveContentCache;
+import io.strac.gdrive.gdrive.services.GoogleDriveFileIndex;
+import io.strac.gdrive.gdrive.services.GoogleDriveIndexStore;
+import io.strac.gdrive.gdrive.services.GoogleDriveMetadataCache;
+import io.strac.gdrive.gdrive.services.GoogleDriveMetrics;
+import io.strac.gdrive.gdrive.services.GoogleDriveService;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.AuthorizedClientServiceOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.InMemoryOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Download and upload through {@link FilesController} and the real Drive client stack, against a {@link FakeDriveServer}
+ * on localhost, so the numbers reflect our copy paths and HTTP client rather than Google's latency.
+ * Response bodies are counted and discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FilesControllerTransferBenchmark {
+    private static final String FILE_ID = "benchmark-file";
+    private static final String USER = "benchmark-user";
+
+    @Param({"1048576", "16777216"})
+    private int contentSize;
+
+    private FakeDriveServer fakeDrive;
+    private HttpTransport httpTransport;
+    private FilesController controller;
+    private byte[] content;
+
+    @Setup
+    public void setup() {
+        try {
+            fakeDrive = FakeDriveServer.start();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        content = new byte[contentSize];
+        new Random(42).nextBytes(content);
+        fakeDrive.addContent(new File().setId(FILE_ID).setName("benchmark.bin").setMimeType("application/octet-stream")
+                .setVersion(1L), content);
+
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        properties.getTransport().setRootUrl(fakeDrive.rootUrl());
+        properties.getRateLimit().setEnabled(false);
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        final SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("gdrive-");
+        executor.setVirtualThreads(true);
+        httpTransport = new GoogleDriveTransportConfiguration().googleDriveHttpTransport(properties, meterRegistry);
+
+        final DriveTokenManager tokenManager = new DriveTokenManager(authorizedClientManager(), executor, properties, meterRegistry);
+        final GoogleDriveClientFactory clientFactory = new GoogleDriveClientFactory(tokenManager, httpTransport,
+                new DriveRateLimiter(properties, meterRegistry), properties, meterRegistry);
+        final GoogleDriveMetrics metrics = new GoogleDriveMetrics(ObservationRegistry.NOOP, meterRegistry);
+        final GoogleDriveService service = new GoogleDriveService(clientFactory,
+                new GoogleDriveMetadataCache(properties, meterRegistry),
+                new GoogleDriveFileIndex(properties, new GoogleDriveIndexStore(properties, objectMapper), metrics),
+                metrics, executor, executor, properties);
+        controller = new FilesController(service, new GoogleDriveArchiveService(service, executor, properties),
+                new GoogleDriveContentCache(properties, meterRegistry),
+                properties, objectMapper, executor);
+
+        // Shared by JMH worker threads and the Drive executor
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+        SecurityContextHolder.getContext().setAuthentication(new OAuth2AuthenticationToken(
+                new DefaultOAuth2User(AuthorityUtils.createAuthorityList("USER"), Map.of("sub", USER), "sub"),
+                AuthorityUtils.createAuthorityList("USER"), "google"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SecurityContextHolder.clearContext();
+        httpTransport.shutdown();
+        fakeDrive.close();
+    }
+
+    @Benchmark
+    public long download() {
+        final DiscardingResponse response = new DiscardingResponse();
+        controller.downloadFile(FILE_ID, null, null, null, null, null, response);
+        return checkedCount(response);
+    }
+
+    @Benchmark
+    public long downloadRange() {
+        final DiscardingResponse response = new DiscardingResponse();
+        controller.downloadFile(FILE_ID, null, null, "bytes=0-" + (contentSize / 2 - 1), null, null, response);
+        return checkedCount(response);
+    }
+
+    @Benchmark
+    public GoogleDriveFileResponse upload() {
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", FilesController.API_RESOURCE_NAME);
+        request.setContentType("application/octet-stream");
+        request.setContent(content);
+        final ResponseEntity<GoogleDriveFileResponse> response = controller.uploadFileStream("upload.bin", request);
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new IllegalStateException("Upload failed with " + response.getStatusCode());
+        }
+        return response.getBody();
+    }
+
+    private static long checkedCount(final DiscardingResponse response) {
+        if (response.getStatus() >= 300) {
+            throw new IllegalStateException("Download failed with " + response.getStatus());
+        }
+        return response.written;
+    }
+
+    private static OAuth2AuthorizedClientManager authorizedClientManager() {
+        final ClientRegistration registration = ClientRegistration.withRegistrationId("google")
+                .clientId("benchmark")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("http://localhost/login/oauth2/code/google")
+                .authorizationUri("http://localhost/authorize")
+                .tokenUri("http://localhost/token")
+                .build();
+        final InMemoryClientRegistrationRepository clientRegistrations = new InMemoryClientRegistrationRepository(registration);
+        final InMemoryOAuth2AuthorizedClientService clientService = new InMemoryOAuth2AuthorizedClientService(clientRegistrations);
+        final OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "benchmark-token",
+                Instant.now(), Instant.now().plusSeconds(86_400));
+        clientService.saveAuthorizedClient(new OAuth2AuthorizedClient(registration, USER, accessToken),
+                new OAuth2AuthenticationToken(new DefaultOAuth2User(AuthorityUtils.createAuthorityList("USER"),
+                        Map.of("sub", USER), "sub"), AuthorityUtils.createAuthorityList("USER"), "google"));
+        return new AuthorizedClientServiceOAuth2AuthorizedClientManager(clientRegistrations, clientService);
+    }
+
+    /**
+     * Counts the response body instead of keeping it in memory, so allocation figures are those of the copy path.
+     */
+    private static final class DiscardingResponse extends MockHttpServletResponse {
+        private long written;
+
+        private final ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                written++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written += len;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.strac.gdrive.gdrive.models;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping a page of Drive files to responses, and serializing the page as the {@code /files} endpoint does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GoogleDriveFileResponseBenchmark {
+
+    @Param({"100", "1000"})
+    private int pageSize;
+
+    private List<File> driveFiles;
+    private GoogleDriveFileListResponse page;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setup() {
+        driveFiles = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            driveFiles.add(new File()
+                    .setId("1a2b3c4d5e6f7g8h9i0j-file-" + i)
+                    .setName("Quarterly report " + i + ".pdf")
+                    .setMimeType("application/pdf")
+                    .setSize(1_048_576L + i)
+                    .setModifiedTime(new DateTime(1_700_000_000_000L + i * 1000L))
+                    .setMd5Checksum("9e107d9d372bb6826bd81d3542a419d6")
+                    .setVersion(42L + i));
+        }
+        page = new GoogleDriveFileListResponse(mapFiles(), "next-page-token");
+        // Configured like the application's ObjectMapper
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Benchmark
+    public List<GoogleDriveFileResponse> mapFiles() {
+        final List<GoogleDriveFileResponse> files = new ArrayList<>(driveFiles.size());
+        for (File file : driveFiles) {
+            files.add(new GoogleDriveFileResponse(file));
+        }
+        return files;
+    }
+
+    @Benchmark
+    public void serializePage() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), page);
+    }
+
+    @Benchmark
+    public byte[] serializePageToBytes() throws IOException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
@@ -0,0 +1,182 @@
+package io.strac.gdrive.gdrive.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+import io.strac.gdrive.gdrive.GoogleDriveApiApplication;
+import io.strac.gdrive.gdrive.fakes.FakeDriveServer;
+import io.strac.gdrive.gdrive.loadtest.LoadTestOptions.Operation;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test: starts the application on a random port against a {@link FakeDriveServer}, signs requests in
+ * through {@link LoadTestSecurityConfiguration}, and runs a weighted mix of list, download, upload and delete requests
+ * at a fixed concurrency. Latency percentiles, throughput and memory high-water marks are printed and written as JSON.
+ * Run with {@code ./gradlew loadTest -PloadTestArgs="--concurrency=64 --duration=60s"}, see {@link LoadTestOptions}.
+ */
+public class DriveLoadTest {
+    private static final String FILE_ID_PREFIX = "load-test-file-";
+
+    private final LoadTestOptions options;
+    private final URI baseUri;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Operation[] weightedOperations;
+    private final byte[] uploadContent;
+    private final Queue<String> uploadedFileIds = new ConcurrentLinkedQueue<>();
+    private final AtomicLong uploads = new AtomicLong();
+
+    DriveLoadTest(final LoadTestOptions options, final URI baseUri) {
+        this.options = options;
+        this.baseUri = baseUri;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        final List<Operation> operations = new ArrayList<>();
+        options.mix().forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                operations.add(operation);
+            }
+        });
+        this.weightedOperations = operations.toArray(Operation[]::new);
+        this.uploadContent = randomContent((int) options.uploadSize().toBytes());
+    }
+
+    public static void main(String[] args) throws Exception {
+        final LoadTestOptions options = LoadTestOptions.parse(args);
+        try (FakeDriveServer fakeDrive = FakeDriveServer.start()) {
+            final byte[] content = randomContent((int) options.fileSize().toBytes());
+            for (int i = 0; i < options.files(); i++) {
+                fakeDrive.addContent(new File()
+                        .setId(FILE_ID_PREFIX + i)
+                        .setName(FILE_ID_PREFIX + i + ".bin")
+                        .setMimeType("application/octet-stream")
+                        .setVersion(1L)
+                        .setModifiedTime(new DateTime(System.currentTimeMillis())), content);
+            }
+            fakeDrive.setLatency(options.latency());
+            fakeDrive.setErrorRate(options.errorRate());
+
+            try (ConfigurableApplicationContext application = new SpringApplicationBuilder(
+                    GoogleDriveApiApplication.class, LoadTestSecurityConfiguration.class)
+                    .bannerMode(Banner.Mode.OFF)
+                    .properties(
+                            "server.port=0",
+                            "gdrive.transport.root-url=" + fakeDrive.rootUrl(),
+                            "logging.level.io.strac.gdrive=WARN")
+                    .run(options.applicationArgs().toArray(String[]::new))) {
+                final int port = application.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                new DriveLoadTest(options, URI.create("http://localhost:" + port)).run();
+            }
+        }
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        try (LoadTestResults results = new LoadTestResults()) {
+            System.out.printf("Warming up for %s at concurrency %d%n", options.warmup(), options.concurrency());
+            drive(results, System.nanoTime() + options.warmup().toNanos());
+            System.out.printf("Measuring for %s%n", options.duration());
+            results.start();
+            drive(results, System.nanoTime() + options.duration().toNanos());
+            report(results.summary());
+        }
+    }
+
+    /**
+     * Keep the configured number of requests in flight until the deadline.
+     */
+    private void drive(final LoadTestResults results, final long deadline) throws InterruptedException {
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < options.concurrency(); i++) {
+                workers.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        final Operation operation = weightedOperations[ThreadLocalRandom.current().nextInt(weightedOperations.length)];
+                        execute(operation, results);
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    private void execute(final Operation operation, final LoadTestResults results) throws InterruptedException {
+        final String user = "load-test-user-" + ThreadLocalRandom.current().nextInt(options.users());
+        final String deleteId = operation == Operation.DELETE ? uploadedFileIds.poll() : null;
+        // Nothing uploaded yet to delete, so upload instead
+        final Operation executed = operation == Operation.DELETE && deleteId == null ? Operation.UPLOAD : operation;
+        final HttpRequest request = switch (executed) {
+            case LIST -> request(user, "/files?pageSize=100").GET().build();
+            case DOWNLOAD -> request(user, "/files/" + FILE_ID_PREFIX + ThreadLocalRandom.current().nextInt(options.files())).GET().build();
+            case UPLOAD -> request(user, "/files?name=upload-" + uploads.incrementAndGet() + ".bin")
+                    .header("Content-Type", "application/octet-stream")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(uploadContent))
+                    .build();
+            case DELETE -> request(user, "/files/" + deleteId).DELETE().build();
+        };
+        final long start = System.nanoTime();
+        try {
+            if (executed == Operation.UPLOAD) {
+                final HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                results.record(executed, System.nanoTime() - start, response.statusCode() == 200);
+                if (response.statusCode() == 200) {
+                    uploadedFileIds.add(objectMapper.readTree(response.body()).get("id").asText());
+                }
+            } else {
+                final HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                results.record(executed, System.nanoTime() - start, response.statusCode() < 300);
+            }
+        } catch (IOException e) {
+            results.record(executed, System.nanoTime() - start, false);
+        }
+    }
+
+    private HttpRequest.Builder request(final String user, final String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).header(LoadTestSecurityConfiguration.USER_HEADER, user);
+    }
+
+    private void report(final Map<String, Object> summary) throws IOException {
+        System.out.printf("%n%-10s %10s %9s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "failures", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        @SuppressWarnings("unchecked")
+        final Map<String, Map<String, Object>> operations = (Map<String, Map<String, Object>>) summary.get("operations");
+        operations.forEach((operation, stats) -> System.out.printf("%-10s %10d %9d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                operation, stats.get("count"), stats.get("failures"), stats.get("requestsPerSecond"),
+                stats.get("p50Millis"), stats.get("p99Millis"), stats.get("p999Millis"), stats.get("maxMillis")));
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> memory = (Map<String, Object>) summary.get("memory");
+        System.out.printf("%nheap used peak %d MB, heap committed peak %d MB, direct peak %d MB, %d GCs taking %d ms%n",
+                (long) memory.get("heapUsedPeakBytes") >> 20, (long) memory.get("heapCommittedPeakBytes") >> 20,
+                (long) memory.get("directPeakBytes") >> 20, memory.get("gcCount"), memory.get("gcMillis"));
+
+        Files.createDirectories(options.report().toAbsolutePath().getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(options.report().toFile(), summary);
+        System.out.println("Summary written to " + options.report().toAbsolutePath());
+    }
+
+    private static byte[] randomContent(final int size) {
+        final byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,87 @@
+package io.strac.gdrive.gdrive.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Load test settings, given as {@code --name=value} arguments. Arguments under {@code gdrive.}, {@code spring.},
+ * {@code server.}, {@code management.} and {@code logging.} are passed on to the application instead.
+ * @param concurrency Requests in flight at any time
+ * @param duration Length of the measured run
+ * @param warmup Length of the run before measuring, which is not reported
+ * @param users Number of distinct users the requests are spread over
+ * @param files Number of files in the fake Drive
+ * @param fileSize Size of each file in the fake Drive
+ * @param uploadSize Size of each uploaded file
+ * @param latency Delay the fake Drive adds to every response
+ * @param errorRate Share of fake Drive responses that fail with 503
+ * @param mix Relative weight of each operation, e.g. {@code list=40,download=40,upload=15,delete=5}
+ * @param report Where the JSON summary is written
+ * @param applicationArgs Arguments for the application under test
+ */
+public record LoadTestOptions(int concurrency, Duration duration, Duration warmup, int users, int files,
+                              DataSize fileSize, DataSize uploadSize, Duration latency, double errorRate,
+                              Map<Operation, Integer> mix, Path report, List<String> applicationArgs) {
+    private static final List<String> APPLICATION_PREFIXES = List.of("gdrive.", "spring.", "server.", "management.", "logging.");
+
+    public enum Operation {
+        LIST, DOWNLOAD, UPLOAD, DELETE
+    }
+
+    public static LoadTestOptions parse(final String[] args) {
+        final Map<String, String> values = new HashMap<>();
+        final List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            final String name = arg.substring(2, separator);
+            if (APPLICATION_PREFIXES.stream().anyMatch(name::startsWith)) {
+                applicationArgs.add(arg);
+            } else {
+                values.put(name, arg.substring(separator + 1));
+            }
+        }
+        final LoadTestOptions options = new LoadTestOptions(
+                Integer.parseInt(values.getOrDefault("concurrency", "32")),
+                DurationStyle.detectAndParse(values.getOrDefault("duration", "30s")),
+                DurationStyle.detectAndParse(values.getOrDefault("warmup", "5s")),
+                Integer.parseInt(values.getOrDefault("users", "8")),
+                Integer.parseInt(values.getOrDefault("files", "200")),
+                DataSize.parse(values.getOrDefault("file-size", "1MB")),
+                DataSize.parse(values.getOrDefault("upload-size", "1MB")),
+                DurationStyle.detectAndParse(values.getOrDefault("latency", "20ms")),
+                Double.parseDouble(values.getOrDefault("error-rate", "0")),
+                parseMix(values.getOrDefault("mix", "list=40,download=40,upload=15,delete=5")),
+                Path.of(values.getOrDefault("report", "build/reports/loadtest/summary.json")),
+                applicationArgs);
+        values.keySet().removeAll(List.of("concurrency", "duration", "warmup", "users", "files", "file-size",
+                "upload-size", "latency", "error-rate", "mix", "report"));
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown load test options " + values.keySet());
+        }
+        return options;
+    }
+
+    private static Map<Operation, Integer> parseMix(final String mix) {
+        final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            final String[] weight = entry.split("=");
+            weights.put(Operation.valueOf(weight[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(weight[1].trim()));
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("The operation mix needs a positive weight: " + mix);
+        }
+        return weights;
+    }
+}
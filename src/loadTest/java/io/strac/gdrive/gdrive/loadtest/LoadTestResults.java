@@ -0,0 +1,132 @@
+package io.strac.gdrive.gdrive.loadtest;
+
+import io.strac.gdrive.gdrive.loadtest.LoadTestOptions.Operation;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and failures per operation, recorded in microseconds without coordination between workers,
+ * and high-water marks of heap and direct memory sampled while the run is measured.
+ * The application and the load generator share the JVM, so memory figures include both.
+ */
+final class LoadTestResults implements AutoCloseable {
+    private static final long SAMPLE_INTERVAL_MILLIS = 50;
+
+    private final Map<Operation, Recorder> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> failures = new EnumMap<>(Operation.class);
+    private final AtomicLong heapUsedPeak = new AtomicLong();
+    private final AtomicLong heapCommittedPeak = new AtomicLong();
+    private final AtomicLong directPeak = new AtomicLong();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+    private long gcCountAtStart;
+    private long gcMillisAtStart;
+    private long startedAt;
+
+    LoadTestResults() {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new Recorder(3));
+            failures.put(operation, new LongAdder());
+        }
+    }
+
+    void record(final Operation operation, final long nanos, final boolean success) {
+        latencies.get(operation).recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        if (!success) {
+            failures.get(operation).increment();
+        }
+    }
+
+    /**
+     * Drop everything recorded so far, e.g. during warmup, and start sampling memory.
+     */
+    void start() {
+        latencies.values().forEach(Recorder::reset);
+        failures.values().forEach(LongAdder::reset);
+        gcCountAtStart = gcCount();
+        gcMillisAtStart = gcMillis();
+        startedAt = System.nanoTime();
+        sampler.scheduleAtFixedRate(this::sampleMemory, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Summary of the measured run, in the order it is printed
+     */
+    Map<String, Object> summary() {
+        sampleMemory();
+        final double seconds = Duration.ofNanos(System.nanoTime() - startedAt).toMillis() / 1000d;
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        final Map<String, Object> operations = new LinkedHashMap<>();
+        final Histogram total = new Histogram(3);
+        long totalFailures = 0;
+        for (Operation operation : Operation.values()) {
+            final Histogram histogram = latencies.get(operation).getIntervalHistogram();
+            if (histogram.getTotalCount() > 0) {
+                operations.put(operation.name().toLowerCase(), stats(histogram, failures.get(operation).sum(), seconds));
+                total.add(histogram);
+                totalFailures += failures.get(operation).sum();
+            }
+        }
+        operations.put("total", stats(total, totalFailures, seconds));
+        summary.put("durationSeconds", seconds);
+        summary.put("operations", operations);
+        final Map<String, Object> memory = new LinkedHashMap<>();
+        memory.put("heapUsedPeakBytes", heapUsedPeak.get());
+        memory.put("heapCommittedPeakBytes", heapCommittedPeak.get());
+        memory.put("directPeakBytes", directPeak.get());
+        memory.put("gcCount", gcCount() - gcCountAtStart);
+        memory.put("gcMillis", gcMillis() - gcMillisAtStart);
+        summary.put("memory", memory);
+        return summary;
+    }
+
+    @Override
+    public void close() {
+        sampler.shutdownNow();
+    }
+
+    private static Map<String, Object> stats(final Histogram histogram, final long failures, final double seconds) {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", histogram.getTotalCount());
+        stats.put("failures", failures);
+        stats.put("requestsPerSecond", histogram.getTotalCount() / seconds);
+        stats.put("p50Millis", histogram.getValueAtPercentile(50) / 1000d);
+        stats.put("p99Millis", histogram.getValueAtPercentile(99) / 1000d);
+        stats.put("p999Millis", histogram.getValueAtPercentile(99.9) / 1000d);
+        stats.put("maxMillis", histogram.getMaxValue() / 1000d);
+        return stats;
+    }
+
+    private void sampleMemory() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        heapUsedPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        heapCommittedPeak.accumulateAndGet(memory.getHeapMemoryUsage().getCommitted(), Math::max);
+        final long direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)
+                .stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+        directPeak.accumulateAndGet(direct, Math::max);
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
@@ -0,0 +1,89 @@
+package io.strac.gdrive.gdrive.loadtest;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+/**
+ * Replaces the Google login for load tests. Requests carrying the {@value #USER_HEADER} header are
+ * authenticated as the user it names, and every user gets an access token that the fake Drive server accepts.
+ * Requests without the header still go through the application's OAuth login.
+ */
+@TestConfiguration
+public class LoadTestSecurityConfiguration {
+    public static final String USER_HEADER = "X-Load-Test-User";
+    private static final String REGISTRATION_ID = "google";
+
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public SecurityFilterChain loadTestFilterChain(HttpSecurity http) throws Exception {
+        return http.securityMatcher(request -> request.getHeader(USER_HEADER) != null)
+                .authorizeHttpRequests(registry -> registry.anyRequest().authenticated())
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .addFilterBefore(new LoadTestAuthenticationFilter(), AuthorizationFilter.class)
+                .csrf(AbstractHttpConfigurer::disable)
+                .build();
+    }
+
+    @Bean
+    public OAuth2AuthorizedClientService loadTestAuthorizedClientService(ClientRegistrationRepository clientRegistrations) {
+        final OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "load-test-token",
+                Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+        return new OAuth2AuthorizedClientService() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId, String principalName) {
+                return (T) new OAuth2AuthorizedClient(clientRegistrations.findByRegistrationId(clientRegistrationId),
+                        principalName, accessToken);
+            }
+
+            @Override
+            public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+            }
+
+            @Override
+            public void removeAuthorizedClient(String clientRegistrationId, String principalName) {
+            }
+        };
+    }
+
+    private static final class LoadTestAuthenticationFilter extends OncePerRequestFilter {
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+                throws ServletException, IOException {
+            final String user = request.getHeader(USER_HEADER);
+            final SecurityContext context = SecurityContextHolder.createEmptyContext();
+            context.setAuthentication(new OAuth2AuthenticationToken(
+                    new DefaultOAuth2User(AuthorityUtils.createAuthorityList("OAUTH2_USER"), Map.of("sub", user), "sub"),
+                    AuthorityUtils.createAuthorityList("OAUTH2_USER"), REGISTRATION_ID));
+            SecurityContextHolder.setContext(context);
+            filterChain.doFilter(request, response);
+        }
+    }
+}
@@ -2,8 +2,10 @@ package io.strac.gdrive.gdrive;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class GoogleDriveApiApplication {
 
 	public static void main(String[] args) {
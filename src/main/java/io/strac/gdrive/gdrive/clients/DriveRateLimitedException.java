@@ -0,0 +1,20 @@
+package io.strac.gdrive.gdrive.clients;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * A Drive request was not sent, or gave up, because the user is over their request rate.
+ * Callers should answer with 429 and ask the client to retry after {@link #getRetryAfter()}.
+ */
+@Getter
+public class DriveRateLimitedException extends IOException {
+    private final Duration retryAfter;
+
+    public DriveRateLimitedException(final String message, final Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,109 @@
+package io.strac.gdrive.gdrive.clients;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-user token bucket in front of every Drive HTTP request, retries included, so that bursts wait here
+ * instead of running into the user's Drive quota. A request waits for a permit for up to
+ * {@code gdrive.rate-limit.max-wait}, with at most {@code gdrive.rate-limit.max-waiting} requests of a user waiting;
+ * beyond that it is rejected straight away with {@link DriveRateLimitedException}.
+ * Waits are recorded in {@code gdrive.ratelimit.wait}, rejections in {@code gdrive.ratelimit.rejected}.
+ */
+@Component
+public class DriveRateLimiter {
+    private final boolean enabled;
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long maxWaitNanos;
+    private final int maxWaiting;
+    private final Cache<DriveUser, TokenBucket> buckets;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    @Autowired
+    public DriveRateLimiter(@NonNull final GoogleDriveProperties properties, @NonNull final MeterRegistry meterRegistry) {
+        final GoogleDriveProperties.RateLimit rateLimit = properties.getRateLimit();
+        this.enabled = rateLimit.isEnabled();
+        this.permitsPerSecond = rateLimit.getPermitsPerSecond();
+        this.burst = Math.max(1, rateLimit.getBurst());
+        this.maxWaitNanos = rateLimit.getMaxWait().toNanos();
+        this.maxWaiting = rateLimit.getMaxWaiting();
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getClientCache().getMaximumSize())
+                .expireAfterAccess(properties.getClientCache().getExpireAfterAccess())
+                .build();
+        this.waitTimer = Timer.builder("gdrive.ratelimit.wait")
+                .description("Time Drive requests waited for a rate limit permit")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("gdrive.ratelimit.rejected")
+                .description("Drive requests rejected because the user is over their request rate")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Take a permit for one Drive request of the user, waiting for it if necessary.
+     * @throws DriveRateLimitedException When no permit is available within the maximum wait
+     */
+    public void acquire(@NonNull final DriveUser user) throws DriveRateLimitedException, InterruptedIOException {
+        if (!enabled) {
+            return;
+        }
+        final TokenBucket bucket = buckets.get(user, key -> new TokenBucket());
+        final long waitNanos = bucket.reserve();
+        if (waitNanos == 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a rate limit permit");
+        } finally {
+            bucket.release();
+        }
+    }
+
+    /**
+     * Permits may be reserved ahead, taking the balance below zero; each reservation waits until its permit is refilled.
+     */
+    private final class TokenBucket {
+        private double tokens = burst;
+        private long refilledAt = System.nanoTime();
+        private int waiting;
+
+        private synchronized long reserve() throws DriveRateLimitedException {
+            final long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * permitsPerSecond);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            final long waitNanos = (long) Math.ceil((1 - tokens) / permitsPerSecond * 1e9);
+            if (waitNanos > maxWaitNanos || waiting >= maxWaiting) {
+                rejected.increment();
+                throw new DriveRateLimitedException("Too many Google Drive requests for this user", Duration.ofNanos(waitNanos));
+            }
+            tokens -= 1;
+            waiting++;
+            return waitNanos;
+        }
+
+        private synchronized void release() {
+            waiting--;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package io.strac.gdrive.gdrive.clients;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpIOExceptionHandler;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.Sleeper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+
+/**
+ * Retry policy for a single Drive HTTP request, installed on every request by {@link GoogleDriveClientFactory}.
+ * I/O errors, server errors, 429 and 403 rate limit errors are retried with exponential backoff and jitter,
+ * waiting at least as long as Drive asks for in {@code Retry-After}.
+ * A rate limited request that runs out of retries fails with {@link DriveRateLimitedException}.
+ * Retries are counted in {@code gdrive.requests.retries}, and requests that ran out of retries in
+ * {@code gdrive.requests.retries.exhausted}, both tagged by reason.
+ */
+public class DriveRetryPolicy implements HttpUnsuccessfulResponseHandler, HttpIOExceptionHandler {
+    public static final Set<String> RATE_LIMIT_REASONS = Set.of("rateLimitExceeded", "userRateLimitExceeded");
+
+    private static final Logger log = LoggerFactory.getLogger(DriveRetryPolicy.class);
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private final BackOff backOff;
+    private final Duration maxRetryAfter;
+    private final MeterRegistry meterRegistry;
+    private final Sleeper sleeper;
+
+    public DriveRetryPolicy(final BackOff backOff, final Duration maxRetryAfter, final MeterRegistry meterRegistry) {
+        this(backOff, maxRetryAfter, meterRegistry, Sleeper.DEFAULT);
+    }
+
+    DriveRetryPolicy(final BackOff backOff, final Duration maxRetryAfter, final MeterRegistry meterRegistry, final Sleeper sleeper) {
+        this.backOff = backOff;
+        this.maxRetryAfter = maxRetryAfter;
+        this.meterRegistry = meterRegistry;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * @return Whether a Drive error is a rate limit, which is worth retrying later
+     */
+    public static boolean isRateLimited(final GoogleJsonError error) {
+        if (error.getCode() == 429) {
+            return true;
+        }
+        return error.getCode() == 403 && error.getErrors() != null && error.getErrors()
+                .stream()
+                .anyMatch(errorInfo -> RATE_LIMIT_REASONS.contains(errorInfo.getReason()));
+    }
+
+    /**
+     * 403 responses are only told apart by the error reason in the body. Reading it consumes the response,
+     * so any 403 that is not retried is rethrown here as the usual {@link GoogleJsonResponseException}.
+     */
+    @Override
+    public boolean handleResponse(final HttpRequest request, final HttpResponse response, final boolean supportsRetry) throws IOException {
+        final int status = response.getStatusCode();
+        GoogleJsonResponseException forbidden = null;
+        if (status == 403) {
+            forbidden = GoogleJsonResponseException.from(GsonFactory.getDefaultInstance(), response);
+            if (forbidden.getDetails() == null || !isRateLimited(forbidden.getDetails())) {
+                throw forbidden;
+            }
+        } else if (status != 429 && status < 500) {
+            return false;
+        }
+        final boolean rateLimited = status == 429 || forbidden != null;
+        final Duration retryAfter = retryAfter(response.getHeaders().getFirstHeaderStringValue(RETRY_AFTER));
+        final long backOffMillis = supportsRetry ? backOff.nextBackOffMillis() : BackOff.STOP;
+
+        if (backOffMillis == BackOff.STOP || (retryAfter != null && retryAfter.compareTo(maxRetryAfter) > 0)) {
+            meterRegistry.counter("gdrive.requests.retries.exhausted", "reason", String.valueOf(status)).increment();
+            if (rateLimited) {
+                throw new DriveRateLimitedException("Google Drive rate limit exceeded, status " + status,
+                        retryAfter != null ? retryAfter : Duration.ofSeconds(1));
+            }
+            if (forbidden != null) {
+                throw forbidden;
+            }
+            return false;
+        }
+
+        final long delayMillis = Math.max(backOffMillis, retryAfter != null ? retryAfter.toMillis() : 0);
+        meterRegistry.counter("gdrive.requests.retries", "reason", String.valueOf(status)).increment();
+        log.debug("Retrying {} {} after status {} in {}ms", request.getRequestMethod(), request.getUrl(), status, delayMillis);
+        sleep(delayMillis);
+        return true;
+    }
+
+    @Override
+    public boolean handleIOException(final HttpRequest request, final boolean supportsRetry) throws IOException {
+        final long backOffMillis = supportsRetry ? backOff.nextBackOffMillis() : BackOff.STOP;
+        if (backOffMillis == BackOff.STOP) {
+            meterRegistry.counter("gdrive.requests.retries.exhausted", "reason", "io").increment();
+            return false;
+        }
+        meterRegistry.counter("gdrive.requests.retries", "reason", "io").increment();
+        sleep(backOffMillis);
+        return true;
+    }
+
+    private void sleep(final long millis) throws InterruptedIOException {
+        try {
+            sleeper.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    /**
+     * @return Delay requested by a {@code Retry-After} header in seconds or as an HTTP date, or null when absent
+     */
+    static Duration retryAfter(final String header) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(header.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                final Instant at = ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                final Duration delay = Duration.between(Instant.now(), at);
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package io.strac.gdrive.gdrive.clients;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static io.strac.gdrive.gdrive.config.GoogleDriveExecutorConfiguration.DRIVE_TASK_EXECUTOR;
+
+/**
+ * Per-user cache of OAuth2 access tokens in front of the {@link OAuth2AuthorizedClientManager}, which refreshes them
+ * with the user's refresh token. Tokens within {@code gdrive.token.refresh-ahead} of expiring are refreshed
+ * in the background, both when they are used and every {@code gdrive.token.refresh-interval}, so requests keep using
+ * the current token meanwhile and only wait when there is no valid token at all. A request without a valid token
+ * refreshes it on its own thread rather than on the executor, which may be taken by requests waiting for tokens.
+ * Concurrent refreshes of a user's token share one token request, waited for at most {@code gdrive.token.refresh-timeout}.
+ * Calls to the manager, which refresh the token when it is due, are counted in {@code gdrive.token.refreshes},
+ * tagged by {@code outcome}.
+ */
+@Component
+public class DriveTokenManager {
+    private static final Logger log = LoggerFactory.getLogger(DriveTokenManager.class);
+
+    /**
+     * Tokens this close to expiring are no longer handed out, so they do not expire during the request.
+     */
+    private static final Duration EXPIRY_MARGIN = Duration.ofSeconds(30);
+
+    private final OAuth2AuthorizedClientManager authorizedClientManager;
+    private final AsyncTaskExecutor taskExecutor;
+    private final Duration refreshAhead;
+    private final Duration refreshTimeout;
+    private final Clock clock;
+    private final Cache<DriveUser, OAuth2AuthorizedClient> clients;
+    private final ConcurrentHashMap<DriveUser, CompletableFuture<OAuth2AuthorizedClient>> refreshes = new ConcurrentHashMap<>();
+    private final Counter refreshed;
+    private final Counter failed;
+
+    @Autowired
+    public DriveTokenManager(@NonNull final OAuth2AuthorizedClientManager authorizedClientManager,
+                             @NonNull @Qualifier(DRIVE_TASK_EXECUTOR) final AsyncTaskExecutor taskExecutor,
+                             @NonNull final GoogleDriveProperties properties,
+                             @NonNull final MeterRegistry meterRegistry) {
+        this(authorizedClientManager, taskExecutor, properties, meterRegistry, Clock.systemUTC());
+    }
+
+    DriveTokenManager(final OAuth2AuthorizedClientManager authorizedClientManager, final AsyncTaskExecutor taskExecutor,
+                      final GoogleDriveProperties properties, final MeterRegistry meterRegistry, final Clock clock) {
+        this.authorizedClientManager = authorizedClientManager;
+        this.taskExecutor = taskExecutor;
+        this.refreshAhead = properties.getToken().getRefreshAhead();
+        this.refreshTimeout = properties.getToken().getRefreshTimeout();
+        this.clock = clock;
+        this.clients = Caffeine.newBuilder()
+                .maximumSize(properties.getClientCache().getMaximumSize())
+                .expireAfterAccess(properties.getClientCache().getExpireAfterAccess())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, this.clients, "gdrive.tokens");
+        this.refreshed = meterRegistry.counter("gdrive.token.refreshes", "outcome", "success");
+        this.failed = meterRegistry.counter("gdrive.token.refreshes", "outcome", "failure");
+    }
+
+    /**
+     * @return A current access token of the user, only waiting for the authorization server when none is cached
+     * @throws IOException When the user has no authorized client, or its token cannot be refreshed
+     */
+    public String accessToken(@NonNull final DriveUser user) throws IOException {
+        final Instant now = clock.instant();
+        final OAuth2AuthorizedClient cached = clients.getIfPresent(user);
+        if (cached != null && !isExpired(cached, now)) {
+            if (isRefreshDue(cached, now)) {
+                refresh(user);
+            }
+            return cached.getAccessToken().getTokenValue();
+        }
+        final OAuth2AuthorizedClient client = refreshNow(user);
+        if (client == null) {
+            throw new IOException("No authorized client for registration=" + user.registrationId());
+        }
+        return client.getAccessToken().getTokenValue();
+    }
+
+    /**
+     * Refresh cached tokens that are about to expire, so that users active within
+     * {@code gdrive.client-cache.expire-after-access} never find their token expired.
+     */
+    @Scheduled(fixedDelayString = "${gdrive.token.refresh-interval:1m}")
+    public void refreshExpiring() {
+        final Instant now = clock.instant();
+        clients.asMap().forEach((user, client) -> {
+            if (isRefreshDue(client, now)) {
+                refresh(user);
+            }
+        });
+    }
+
+    /**
+     * Refresh the user's token on the calling thread, or wait for the refresh already running.
+     */
+    private OAuth2AuthorizedClient refreshNow(final DriveUser user) throws IOException {
+        final CompletableFuture<OAuth2AuthorizedClient> refresh = new CompletableFuture<>();
+        final CompletableFuture<OAuth2AuthorizedClient> running = refreshes.putIfAbsent(user, refresh);
+        if (running != null) {
+            return await(running);
+        }
+        run(user, refresh);
+        return await(refresh);
+    }
+
+    /**
+     * Start a refresh of the user's token on the executor, unless one is running already.
+     */
+    private void refresh(final DriveUser user) {
+        final CompletableFuture<OAuth2AuthorizedClient> refresh = new CompletableFuture<>();
+        if (refreshes.putIfAbsent(user, refresh) != null) {
+            return;
+        }
+        try {
+            taskExecutor.execute(() -> run(user, refresh));
+        } catch (RuntimeException e) {
+            refreshes.remove(user, refresh);
+            refresh.completeExceptionally(e);
+        }
+    }
+
+    private void run(final DriveUser user, final CompletableFuture<OAuth2AuthorizedClient> refresh) {
+        try {
+            refresh.complete(authorize(user));
+        } catch (Throwable e) {
+            refresh.completeExceptionally(e);
+        } finally {
+            refreshes.remove(user, refresh);
+        }
+    }
+
+    /**
+     * The manager only asks the authorization server for a new token when the stored one is within
+     * {@code gdrive.token.refresh-ahead} of expiring, and saves the refreshed client back to the authorized client service.
+     */
+    private OAuth2AuthorizedClient authorize(final DriveUser user) {
+        final OAuth2AuthorizeRequest request = OAuth2AuthorizeRequest.withClientRegistrationId(user.registrationId())
+                .principal(user.principalName())
+                .build();
+        try {
+            final OAuth2AuthorizedClient client = authorizedClientManager.authorize(request);
+            if (client == null) {
+                clients.invalidate(user);
+                return null;
+            }
+            clients.put(user, client);
+            refreshed.increment();
+            return client;
+        } catch (RuntimeException e) {
+            // A cached token that has not expired yet stays in use until it does
+            failed.increment();
+            log.warn("Cannot refresh access token of {}", user, e);
+            throw e;
+        }
+    }
+
+    private static boolean isExpired(final OAuth2AuthorizedClient client, final Instant now) {
+        final Instant expiresAt = client.getAccessToken().getExpiresAt();
+        return expiresAt != null && !now.isBefore(expiresAt.minus(EXPIRY_MARGIN));
+    }
+
+    /**
+     * Tokens without a refresh token cannot be refreshed, the user has to log in again once they expire.
+     */
+    private boolean isRefreshDue(final OAuth2AuthorizedClient client, final Instant now) {
+        final Instant expiresAt = client.getAccessToken().getExpiresAt();
+        return client.getRefreshToken() != null && expiresAt != null && !now.isBefore(expiresAt.minus(refreshAhead));
+    }
+
+    private OAuth2AuthorizedClient await(final CompletableFuture<OAuth2AuthorizedClient> refresh) throws IOException {
+        try {
+            return refresh.get(refreshTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out after " + refreshTimeout + " waiting for the access token to be refreshed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while refreshing the access token");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot obtain an access token", e.getCause());
+        }
+    }
+}
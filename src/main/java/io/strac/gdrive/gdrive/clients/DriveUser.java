@@ -0,0 +1,9 @@
+package io.strac.gdrive.gdrive.clients;
+
+/**
+ * Identifies the OAuth2 authorized client that Drive calls are made on behalf of.
+ * @param registrationId OAuth2 client registration, e.g. {@code google}
+ * @param principalName Name of the authenticated principal
+ */
+public record DriveUser(String registrationId, String principalName) {
+}
@@ -1,38 +1,114 @@
 package io.strac.gdrive.gdrive.clients;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestInitializer;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.ExponentialBackOff;
 import com.google.api.services.drive.Drive;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
-import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.stereotype.Service;
 
 @Service
 public class GoogleDriveClientFactory {
-    private final OAuth2AuthorizedClientService clientService;
+    public static final String APPLICATION_NAME = "Google Drive Stack API";
+
+    private final DriveTokenManager tokenManager;
+    private final HttpTransport httpTransport;
+    private final DriveRateLimiter rateLimiter;
+    private final MeterRegistry meterRegistry;
+    private final GoogleDriveProperties.Transport transportProperties;
+    private final GoogleDriveProperties.Retry retryProperties;
+    private final Cache<DriveUser, Drive> clients;
 
     @Autowired
-    public GoogleDriveClientFactory(@NonNull final OAuth2AuthorizedClientService clientService) {
-        this.clientService = clientService;
+    public GoogleDriveClientFactory(@NonNull final DriveTokenManager tokenManager,
+                                    @NonNull final HttpTransport httpTransport,
+                                    @NonNull final DriveRateLimiter rateLimiter,
+                                    @NonNull final GoogleDriveProperties properties,
+                                    @NonNull final MeterRegistry meterRegistry) {
+        this.tokenManager = tokenManager;
+        this.httpTransport = httpTransport;
+        this.rateLimiter = rateLimiter;
+        this.meterRegistry = meterRegistry;
+        this.transportProperties = properties.getTransport();
+        this.retryProperties = properties.getRetry();
+        this.clients = Caffeine.newBuilder()
+                .maximumSize(properties.getClientCache().getMaximumSize())
+                .expireAfterAccess(properties.getClientCache().getExpireAfterAccess())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, this.clients, "gdrive.clients");
     }
 
     /**
-     * @implNote Investigate using singleton on client side. Needs error handling.
-     * @return Instance of Drive Client
+     * @return The OAuth2 user of the current request
      */
-    public Drive createClient() {
+    public DriveUser currentUser() {
         OAuth2AuthenticationToken oauth2User = (OAuth2AuthenticationToken) SecurityContextHolder.getContext().getAuthentication();
-        OAuth2AuthorizedClient client = clientService.loadAuthorizedClient(oauth2User.getAuthorizedClientRegistrationId(), oauth2User.getName());
+        return new DriveUser(oauth2User.getAuthorizedClientRegistrationId(), oauth2User.getName());
+    }
+
+    /**
+     * @return Instance of Drive Client for the current user
+     */
+    public Drive createClient() {
+        return createClient(currentUser());
+    }
+
+    /**
+     * Drive clients are cached per user and share one pooled HTTP transport.
+     * The access token is resolved on every HTTP request from the {@link DriveTokenManager}, so refreshed tokens are picked up
+     * without rebuilding the client.
+     * Every HTTP request, retries included, first takes a permit from the user's {@link DriveRateLimiter}. A batch takes one
+     * permit per request it carries, as the batch runs the interceptor of each of them, and none for the batch itself.
+     * Failures are retried according to {@link DriveRetryPolicy}, which also lets resumable uploads
+     * continue from the last offset acknowledged by Google Drive.
+     * @return Instance of Drive Client for the given user
+     */
+    public Drive createClient(@NonNull final DriveUser user) {
+        return clients.get(user, this::buildClient);
+    }
+
+    private Drive buildClient(final DriveUser user) {
         HttpRequestInitializer requestInitializer = request -> {
-            request.getHeaders().setAuthorization("Bearer " + client.getAccessToken().getTokenValue());
+            request.getHeaders().setAuthorization("Bearer " + tokenManager.accessToken(user));
+            request.setConnectTimeout((int) transportProperties.getConnectTimeout().toMillis());
+            request.setReadTimeout((int) transportProperties.getReadTimeout().toMillis());
+            final DriveRetryPolicy retryPolicy = new DriveRetryPolicy(backOff(), retryProperties.getMaxRetryAfter(), meterRegistry);
+            request.setIOExceptionHandler(retryPolicy);
+            request.setUnsuccessfulResponseHandler(retryPolicy);
+            request.setInterceptor(executed -> {
+                if (!isBatch(executed)) {
+                    rateLimiter.acquire(user);
+                }
+            });
         };
-        return new Drive.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance(), requestInitializer)
-                .setApplicationName("Google Drive Stack API")
+        final Drive.Builder builder = new Drive.Builder(httpTransport, GsonFactory.getDefaultInstance(), requestInitializer)
+                .setApplicationName(APPLICATION_NAME);
+        if (transportProperties.getRootUrl() != null) {
+            builder.setRootUrl(transportProperties.getRootUrl());
+        }
+        return builder.build();
+    }
+
+    private static boolean isBatch(final HttpRequest request) {
+        return request.getUrl().getRawPath().endsWith("/" + Drive.DEFAULT_BATCH_PATH);
+    }
+
+    private BackOff backOff() {
+        return new ExponentialBackOff.Builder()
+                .setInitialIntervalMillis((int) retryProperties.getInitialInterval().toMillis())
+                .setMaxElapsedTimeMillis((int) retryProperties.getMaxElapsedTime().toMillis())
                 .build();
     }
 
@@ -0,0 +1,50 @@
+package io.strac.gdrive.gdrive.clients;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class GoogleDriveTransportConfiguration {
+
+    /**
+     * One HTTP transport shared by every Drive client, backed by a bounded keep-alive connection pool,
+     * so that calls reuse TLS connections instead of opening new ones.
+     * Pool usage is published as {@code gdrive.http.pool.*} gauges.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public HttpTransport googleDriveHttpTransport(GoogleDriveProperties properties, MeterRegistry meterRegistry) {
+        final GoogleDriveProperties.Transport transport = properties.getTransport();
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                transport.getConnectionTimeToLive().toMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(transport.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(transport.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity((int) transport.getValidateAfterInactivity().toMillis());
+
+        Gauge.builder("gdrive.http.pool.leased", connectionManager, cm -> cm.getTotalStats().getLeased())
+                .description("Connections currently in use")
+                .register(meterRegistry);
+        Gauge.builder("gdrive.http.pool.available", connectionManager, cm -> cm.getTotalStats().getAvailable())
+                .description("Idle connections kept alive in the pool")
+                .register(meterRegistry);
+        Gauge.builder("gdrive.http.pool.pending", connectionManager, cm -> cm.getTotalStats().getPending())
+                .description("Requests waiting for a connection")
+                .register(meterRegistry);
+        Gauge.builder("gdrive.http.pool.max", connectionManager, cm -> cm.getTotalStats().getMax())
+                .description("Maximum number of pooled connections")
+                .register(meterRegistry);
+
+        return new ApacheHttpTransport(ApacheHttpTransport.newDefaultHttpClientBuilder()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(transport.getIdleEviction().toMillis(), TimeUnit.MILLISECONDS)
+                .build());
+    }
+}
@@ -0,0 +1,105 @@
+package io.strac.gdrive.gdrive.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+
+@Configuration
+public class GoogleDriveExecutorConfiguration {
+    public static final String DRIVE_TASK_EXECUTOR = "googleDriveTaskExecutor";
+    public static final String DRIVE_UPLOAD_EXECUTOR = "googleDriveUploadExecutor";
+    public static final String DRIVE_ARCHIVE_EXECUTOR = "googleDriveArchiveExecutor";
+    public static final String DRIVE_SHARED_DOWNLOAD_EXECUTOR = "googleDriveSharedDownloadExecutor";
+
+    private static final TaskDecorator CONTEXT_PROPAGATING_DECORATOR = new ContextPropagatingTaskDecorator();
+
+    /**
+     * Tasks run with the security context of the request that submitted them, and its current observation,
+     * so Drive calls made off the request thread are traced as part of the request.
+     */
+    private static final TaskDecorator SECURITY_CONTEXT_DECORATOR = runnable ->
+            DelegatingSecurityContextRunnable.create(CONTEXT_PROPAGATING_DECORATOR.decorate(runnable), null);
+
+    /**
+     * Bounded pool for Drive calls made off the request thread.
+     */
+    @Bean(name = DRIVE_TASK_EXECUTOR)
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public AsyncTaskExecutor googleDriveTaskExecutor(GoogleDriveProperties properties) {
+        final GoogleDriveProperties.Executor executorProperties = properties.getExecutor();
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(executorProperties.getCorePoolSize());
+        executor.setMaxPoolSize(executorProperties.getMaxPoolSize());
+        executor.setQueueCapacity(executorProperties.getQueueCapacity());
+        executor.setThreadNamePrefix("gdrive-");
+        executor.setTaskDecorator(SECURITY_CONTEXT_DECORATOR);
+        return executor;
+    }
+
+    /**
+     * Fixed pool of workers for background upload jobs, on platform threads either way, so the number of uploads
+     * pushed to Drive at once stays bounded. Jobs run with the security context of the request that accepted them.
+     */
+    @Bean(name = DRIVE_UPLOAD_EXECUTOR)
+    public AsyncTaskExecutor googleDriveUploadExecutor(GoogleDriveProperties properties) {
+        final GoogleDriveProperties.Upload.Jobs jobs = properties.getUpload().getJobs();
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(jobs.getWorkers());
+        executor.setMaxPoolSize(jobs.getWorkers());
+        executor.setQueueCapacity(jobs.getQueueCapacity());
+        executor.setThreadNamePrefix("gdrive-upload-");
+        executor.setTaskDecorator(SECURITY_CONTEXT_DECORATOR);
+        return executor;
+    }
+
+    /**
+     * Fixed pool of workers downloading archive files ahead of the one being written, kept apart from the Drive task
+     * executor so archives cannot take every thread that other requests wait on. Workers only make plain downloads,
+     * so they never wait for tasks of their own pool.
+     */
+    @Bean(name = DRIVE_ARCHIVE_EXECUTOR)
+    public AsyncTaskExecutor googleDriveArchiveExecutor(GoogleDriveProperties properties) {
+        final int workers = Math.max(1, properties.getArchive().getWorkers());
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setThreadNamePrefix("gdrive-archive-");
+        executor.setTaskDecorator(SECURITY_CONTEXT_DECORATOR);
+        return executor;
+    }
+
+    /**
+     * Runs the Drive download behind each shared download on a thread of its own, virtual when
+     * {@code spring.threads.virtual.enabled=true}. There is at most one per request that started it, so they are bounded
+     * by the request threads, and never wait for a Drive task slot while their readers wait for them.
+     */
+    @Bean(name = DRIVE_SHARED_DOWNLOAD_EXECUTOR)
+    public AsyncTaskExecutor googleDriveSharedDownloadExecutor(Environment environment) {
+        final SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("gdrive-shared-");
+        executor.setVirtualThreads(Threading.VIRTUAL.isActive(environment));
+        executor.setTaskDecorator(SECURITY_CONTEXT_DECORATOR);
+        return executor;
+    }
+
+    /**
+     * With {@code spring.threads.virtual.enabled=true}, Tomcat serves requests on virtual threads and
+     * Drive calls made off the request thread get a virtual thread each, so blocking on Drive I/O is cheap.
+     */
+    @Bean(name = DRIVE_TASK_EXECUTOR)
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public AsyncTaskExecutor googleDriveVirtualTaskExecutor(GoogleDriveProperties properties) {
+        final SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("gdrive-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(properties.getExecutor().getVirtualThreadConcurrencyLimit());
+        executor.setTaskDecorator(SECURITY_CONTEXT_DECORATOR);
+        return executor;
+    }
+}
@@ -0,0 +1,379 @@
+package io.strac.gdrive.gdrive.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Tunables for the Google Drive integration, bound from {@code gdrive.*} in application.properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "gdrive")
+public class GoogleDriveProperties {
+    private Transport transport = new Transport();
+    private ClientCache clientCache = new ClientCache();
+    private Token token = new Token();
+    private Store store = new Store();
+    private MetadataCache metadataCache = new MetadataCache();
+    private Coalescing coalescing = new Coalescing();
+    private ContentCache contentCache = new ContentCache();
+    private Index index = new Index();
+    private Retry retry = new Retry();
+    private RateLimit rateLimit = new RateLimit();
+    private Executor executor = new Executor();
+    private Listing listing = new Listing();
+    private Download download = new Download();
+    private Upload upload = new Upload();
+    private Archive archive = new Archive();
+
+    @Data
+    public static class Transport {
+        /**
+         * Maximum number of pooled connections to Google APIs, shared by all users.
+         */
+        private int maxConnections = 200;
+        /**
+         * Maximum number of pooled connections per host. Drive traffic goes to a handful of hosts.
+         */
+        private int maxConnectionsPerRoute = 100;
+        /**
+         * Pooled connections older than this are closed, even if they are still alive.
+         */
+        private Duration connectionTimeToLive = Duration.ofMinutes(5);
+        /**
+         * Connections idle for longer than this are evicted from the pool.
+         */
+        private Duration idleEviction = Duration.ofSeconds(30);
+        /**
+         * Pooled connections idle for longer than this are validated before they are reused.
+         */
+        private Duration validateAfterInactivity = Duration.ofSeconds(2);
+        private Duration connectTimeout = Duration.ofSeconds(20);
+        private Duration readTimeout = Duration.ofSeconds(60);
+        /**
+         * Base URL of the Drive API, e.g. {@code http://localhost:8089/} to run against a local fake.
+         * Defaults to Google's endpoint.
+         */
+        private String rootUrl;
+    }
+
+    @Data
+    public static class ClientCache {
+        /**
+         * Maximum number of per-user Drive clients kept in memory.
+         */
+        private long maximumSize = 10_000;
+        /**
+         * Drive clients unused for longer than this are dropped from the cache.
+         */
+        private Duration expireAfterAccess = Duration.ofMinutes(30);
+    }
+
+    @Data
+    public static class Token {
+        /**
+         * Access tokens are refreshed in the background once they are this close to expiring. Google tokens last an hour.
+         */
+        private Duration refreshAhead = Duration.ofMinutes(5);
+        /**
+         * How often cached access tokens are checked for upcoming expiry.
+         */
+        private Duration refreshInterval = Duration.ofMinutes(1);
+        /**
+         * How long a request without a valid token waits for a refresh of it that another thread has already started.
+         */
+        private Duration refreshTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Store {
+        /**
+         * Where users' authorized clients and HTTP sessions are kept. {@code memory} ties a user to the node they logged in on.
+         * {@code jdbc} shares them through {@code spring.datasource}, so any node can serve any request; it is selected
+         * by the {@code jdbc} profile, which also enables the DataSource and Spring Session.
+         */
+        private Type type = Type.MEMORY;
+        /**
+         * Authorized clients read from a shared store are kept in memory on each node for this long. Tokens refreshed
+         * or revoked on another node are picked up once it passes.
+         */
+        private Duration nearCacheTimeToLive = Duration.ofSeconds(30);
+        private long nearCacheMaximumSize = 10_000;
+
+        public enum Type {
+            MEMORY, JDBC
+        }
+    }
+
+    @Data
+    public static class MetadataCache {
+        /**
+         * Maximum number of file metadata entries kept in memory across all users. 0 disables the cache.
+         */
+        private long maximumSize = 50_000;
+        /**
+         * How long file metadata is served from the cache before it is fetched from Drive again.
+         */
+        private Duration timeToLive = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class Coalescing {
+        /**
+         * Let concurrent identical metadata and list requests of the same user wait for one Drive call instead of each making their own.
+         */
+        private boolean enabled = true;
+    }
+
+    @Data
+    public static class ContentCache {
+        /**
+         * Keep downloaded file content on local disk and serve repeated downloads of an unchanged file from there.
+         */
+        private boolean enabled = false;
+        /**
+         * Directory holding cached content. Defaults to {@code gdrive-content} under the system temp directory.
+         * Cache files left over from a previous run are deleted on startup.
+         */
+        private String directory;
+        /**
+         * Disk budget for cached content. Least recently used files are evicted beyond it.
+         */
+        private DataSize maximumSize = DataSize.ofGigabytes(10);
+        /**
+         * Files larger than this are always downloaded from Drive and never cached.
+         */
+        private DataSize maximumFileSize = DataSize.ofMegabytes(512);
+    }
+
+    @Data
+    public static class Index {
+        /**
+         * Serve listing, lookup and search from a local per-user index kept current from the Drive changes feed.
+         */
+        private boolean enabled = false;
+        /**
+         * How old the index may be before a request first applies pending changes from Drive.
+         */
+        private Duration maxStaleness = Duration.ofSeconds(30);
+        /**
+         * Maximum number of users whose index is kept in memory.
+         */
+        private long maximumUsers = 1_000;
+        /**
+         * Directory where each user's index and changes start page token are persisted.
+         * When unset, indexes live in memory only and are bootstrapped again after a restart.
+         */
+        private String storageDirectory;
+    }
+
+    @Data
+    public static class Retry {
+        /**
+         * Delay before the first retry of a failed Drive request. Later retries back off exponentially.
+         */
+        private Duration initialInterval = Duration.ofMillis(500);
+        /**
+         * Retries stop once this much time has passed since the first attempt.
+         */
+        private Duration maxElapsedTime = Duration.ofMinutes(1);
+        /**
+         * Rate limited requests are given up on straight away when Drive asks to wait longer than this in Retry-After.
+         */
+        private Duration maxRetryAfter = Duration.ofSeconds(30);
+        /**
+         * Number of times a batch is sent for ids that failed with a retryable error, including the first attempt.
+         */
+        private int batchMaxAttempts = 4;
+    }
+
+    @Data
+    public static class RateLimit {
+        /**
+         * Throttle each user's Drive requests with a token bucket, so bursts wait here instead of exhausting the Drive quota.
+         */
+        private boolean enabled = true;
+        /**
+         * Sustained Drive requests per second per user. Drive allows 12,000 queries per minute per user by default.
+         */
+        private double permitsPerSecond = 200;
+        /**
+         * Drive requests a user may send at once after being idle.
+         */
+        private int burst = 200;
+        /**
+         * Longest a request waits for a permit. Requests that would wait longer are rejected with 429.
+         */
+        private Duration maxWait = Duration.ofSeconds(2);
+        /**
+         * Maximum number of a user's requests waiting for a permit. Further requests are rejected with 429.
+         */
+        private int maxWaiting = 100;
+    }
+
+    @Data
+    public static class Executor {
+        /**
+         * Threads kept for background Drive work, such as prefetching the next page of a listing.
+         */
+        private int corePoolSize = 8;
+        private int maxPoolSize = 64;
+        /**
+         * Background Drive tasks queued while all threads are busy. Submissions beyond this are rejected.
+         */
+        private int queueCapacity = 1_000;
+        /**
+         * Maximum number of concurrent background Drive tasks when running on virtual threads
+         * ({@code spring.threads.virtual.enabled=true}). Further submissions wait for a slot.
+         */
+        private int virtualThreadConcurrencyLimit = 10_000;
+    }
+
+    @Data
+    public static class Listing {
+        /**
+         * Page size used when the client does not ask for one. Google Drive allows at most 1000.
+         */
+        private int defaultPageSize = 100;
+    }
+
+    @Data
+    public static class Download {
+        /**
+         * Size of the buffer used to copy file content to the HTTP response.
+         */
+        private int bufferSize = 64 * 1024;
+        private Parallel parallel = new Parallel();
+        private Shared shared = new Shared();
+
+        @Data
+        public static class Parallel {
+            /**
+             * Download large files as several byte ranges over separate connections at once.
+             */
+            private boolean enabled = false;
+            /**
+             * Files of at least this size are downloaded in parallel ranges, smaller ones over a single connection.
+             */
+            private DataSize threshold = DataSize.ofMegabytes(64);
+            /**
+             * Size of each byte range requested from Drive.
+             */
+            private DataSize rangeSize = DataSize.ofMegabytes(8);
+            /**
+             * Ranges of one download fetched at the same time.
+             */
+            private int connections = 4;
+            /**
+             * Memory per download for ranges that arrived before the ones ahead of them were sent to the client.
+             * Fewer than {@code connections} ranges fitting in the budget lowers the parallelism to match.
+             */
+            private DataSize bufferBudget = DataSize.ofMegabytes(64);
+            /**
+             * Attempts per range, each resuming after the bytes already received.
+             */
+            private int maxAttempts = 3;
+        }
+
+        @Data
+        public static class Shared {
+            /**
+             * Feed concurrent downloads of the same file version from one Drive download. Each user's access to the file
+             * is still checked with their own credentials first.
+             */
+            private boolean enabled = false;
+            /**
+             * Memory per shared download. The Drive download waits once the slowest reader is this far behind, and
+             * requests arriving after the first buffer-size bytes have been released start a download of their own.
+             */
+            private DataSize bufferSize = DataSize.ofMegabytes(8);
+        }
+    }
+
+    @Data
+    public static class Upload {
+        /**
+         * Size of each chunk of a resumable upload session. Rounded down to a multiple of 256 KiB.
+         * Uploads of known length up to one chunk are sent in a single request instead.
+         */
+        private DataSize chunkSize = DataSize.ofMegabytes(8);
+        private Jobs jobs = new Jobs();
+        private Dedup dedup = new Dedup();
+
+        @Data
+        public static class Jobs {
+            /**
+             * Upload jobs pushed to Drive at the same time.
+             */
+            private int workers = 4;
+            /**
+             * Accepted upload jobs waiting for a worker. Further uploads are refused with 503 until a job finishes.
+             */
+            private int queueCapacity = 100;
+            /**
+             * Attempts per job. A job that fails with a transient Drive error is uploaded again from its spooled copy.
+             */
+            private int maxAttempts = 5;
+            /**
+             * How long the outcome of a finished job can be polled.
+             */
+            private Duration retention = Duration.ofHours(1);
+            /**
+             * Retry-After hint sent with 503 when the queue is full.
+             */
+            private Duration retryAfter = Duration.ofSeconds(5);
+            /**
+             * Directory holding accepted content until it has been uploaded. Defaults to {@code gdrive-uploads}
+             * under the system temp directory.
+             */
+            private String spoolDirectory;
+        }
+
+        @Data
+        public static class Dedup {
+            /**
+             * Hash uploads while spooling them to local disk, and skip sending content the user already has in Drive,
+             * as found by MD5 and size in the local file index. Has no effect unless {@code gdrive.index.enabled}.
+             */
+            private boolean enabled = false;
+            /**
+             * What a duplicate upload results in.
+             */
+            private Mode mode = Mode.COPY;
+
+            public enum Mode {
+                /**
+                 * A copy of the existing file under the uploaded name, made by Drive without transferring the content.
+                 */
+                COPY,
+                /**
+                 * The existing file itself, unchanged.
+                 */
+                EXISTING
+            }
+        }
+    }
+
+    @Data
+    public static class Archive {
+        /**
+         * Files of one archive downloaded from Drive at the same time, ahead of the one being written.
+         */
+        private int concurrency = 4;
+        /**
+         * Files downloaded ahead for all archives being written at the same time. Further downloads wait for a worker.
+         */
+        private int workers = 16;
+        /**
+         * Memory per archive for files downloaded ahead. Files larger than this are streamed into the archive
+         * when their turn comes instead.
+         */
+        private DataSize prefetchBudget = DataSize.ofMegabytes(64);
+        /**
+         * Archives of folders holding more files than this, subfolders included, are refused.
+         */
+        private int maxFiles = 10_000;
+    }
+}
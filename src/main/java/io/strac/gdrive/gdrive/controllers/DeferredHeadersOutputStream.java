@@ -0,0 +1,53 @@
+package io.strac.gdrive.gdrive.controllers;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Holds back the first byte of a response body until its headers have been written, so that content can start
+ * downloading while the metadata needed for the headers is still being fetched.
+ */
+class DeferredHeadersOutputStream extends FilterOutputStream {
+
+    @FunctionalInterface
+    interface HeaderWriter {
+        void writeHeaders() throws IOException;
+    }
+
+    private final HeaderWriter headerWriter;
+    private boolean headersWritten;
+
+    DeferredHeadersOutputStream(final OutputStream body, final HeaderWriter headerWriter) {
+        super(body);
+        this.headerWriter = headerWriter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        writeHeaders();
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        writeHeaders();
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeHeaders();
+        out.flush();
+    }
+
+    /**
+     * Write the headers now, if that has not happened yet. Also called for empty bodies before completing the response.
+     */
+    void writeHeaders() throws IOException {
+        if (!headersWritten) {
+            headerWriter.writeHeaders();
+            headersWritten = true;
+        }
+    }
+}
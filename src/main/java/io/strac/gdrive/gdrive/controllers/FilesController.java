@@ -1,67 +1,284 @@
 package io.strac.gdrive.gdrive.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import io.strac.gdrive.gdrive.clients.DriveRateLimitedException;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveArchiveRequest;
+import io.strac.gdrive.gdrive.models.GoogleDriveBatchRequest;
+import io.strac.gdrive.gdrive.models.GoogleDriveBatchResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileQuery;
 import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
 import io.strac.gdrive.gdrive.models.GoogleDriveFileListResponse;
+import io.strac.gdrive.gdrive.services.DriveTaskScope;
+import io.strac.gdrive.gdrive.services.GoogleDriveArchiveService;
+import io.strac.gdrive.gdrive.services.GoogleDriveContentCache;
+import io.strac.gdrive.gdrive.services.GoogleDriveExportFormats;
 import io.strac.gdrive.gdrive.services.GoogleDriveService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static io.strac.gdrive.gdrive.config.GoogleDriveExecutorConfiguration.DRIVE_TASK_EXECUTOR;
 
 @RestController
 public class FilesController {
     public static final String API_RESOURCE_NAME = "/files";
 
     private static final Logger log = LoggerFactory.getLogger(FilesController.class);
+    private static final String ZIP_CONTENT_TYPE = "application/zip";
+    private static final String FILE_NOT_DOWNLOADABLE = "fileNotDownloadable";
+
     private final GoogleDriveService googleDriveService;
+    private final GoogleDriveArchiveService archiveService;
+    private final GoogleDriveContentCache contentCache;
+    private final GoogleDriveProperties properties;
+    private final ObjectMapper objectMapper;
+    private final AsyncTaskExecutor taskExecutor;
 
     @Autowired
-    public FilesController(GoogleDriveService googleDriveService) {
+    public FilesController(GoogleDriveService googleDriveService, GoogleDriveArchiveService archiveService,
+                           GoogleDriveContentCache contentCache,
+                           GoogleDriveProperties properties, ObjectMapper objectMapper,
+                           @Qualifier(DRIVE_TASK_EXECUTOR) AsyncTaskExecutor taskExecutor) {
         this.googleDriveService = googleDriveService;
+        this.archiveService = archiveService;
+        this.contentCache = contentCache;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.taskExecutor = taskExecutor;
     }
 
     /**
-     * @implNote Expand to support folders, pagination, querying in the future.
+     * List the current user's files, optionally filtered, sorted and projected to a subset of fields,
+     * e.g. {@code /files?mimeType=application/pdf&modifiedAfter=2024-01-01T00:00:00Z&orderBy=name&fields=id,name}
+     * @param query Filters, {@code orderBy} and {@code fields}, see {@link GoogleDriveFileQuery}
+     * @param pageSize Files per page, up to 1000
      * @return HTTP Response Entity containing Google Drive files for current user
      */
     @GetMapping(API_RESOURCE_NAME)
     ResponseEntity<GoogleDriveFileListResponse> getFilesPaginated(
-            @RequestParam(required = false) String nextPageToken
+            @ModelAttribute GoogleDriveFileQuery query,
+            @RequestParam(required = false) String nextPageToken,
+            @RequestParam(required = false) Integer pageSize
     ) {
         try {
-            return new ResponseEntity<>(googleDriveService.getFilesPaginated(nextPageToken), HttpStatus.OK);
+            return new ResponseEntity<>(googleDriveService.getFilesPaginated(query, nextPageToken, pageSize), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid file query {}: {}", query, e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
             log.error("Error Getting all files", e);
-            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            return errorResponse(e);
         }
     }
 
     /**
-     * Download File from Google Drive
+     * Search the current user's files by name
+     * @param name Case-insensitive prefix of the file name or of any word in it
+     * @param pageSize Files per page, up to 1000
+     * @return HTTP Response Entity containing matching Google Drive files
+     */
+    @GetMapping(API_RESOURCE_NAME + ":search")
+    ResponseEntity<GoogleDriveFileListResponse> searchFiles(
+            @RequestParam String name,
+            @RequestParam(required = false) String nextPageToken,
+            @RequestParam(required = false) Integer pageSize
+    ) {
+        try {
+            return new ResponseEntity<>(googleDriveService.searchByName(name, nextPageToken, pageSize), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid search name={}: {}", name, e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            log.error("Error Searching files name={}", name, e);
+            return errorResponse(e);
+        }
+    }
+
+    /**
+     * Stream every file of the current user as newline-delimited JSON, one file per line.
+     * All pages are walked server-side, and each page is flushed to the client while the next one is fetched.
+     * @param pageSize Files per Google Drive page, up to 1000
+     */
+    @GetMapping(path = API_RESOURCE_NAME + ":stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    void streamFiles(@RequestParam(required = false) Integer pageSize, HttpServletResponse response) {
+        try {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            final OutputStream outputStream = responseStream(response);
+            googleDriveService.listAllFiles(pageSize, files -> {
+                for (GoogleDriveFileResponse file : files) {
+                    outputStream.write(objectMapper.writeValueAsBytes(file));
+                    outputStream.write('\n');
+                }
+                outputStream.flush();
+            });
+            outputStream.flush();
+        } catch (Exception e) {
+            log.error("Error Streaming all files", e);
+            if (!response.isCommitted()) {
+                response.reset();
+                writeErrorStatus(response, e);
+            }
+        }
+    }
+
+    /**
+     * Download File from Google Drive. Content is streamed to the response in fixed-size buffers,
+     * and a single {@code Range} (optionally guarded by {@code If-Range}) is passed through to Google Drive.
+     * Responses carry an {@code ETag} derived from the file's checksum or version, and {@code If-None-Match}
+     * is answered with 304 when the file is unchanged.
+     * With {@code gdrive.content-cache.enabled}, content is served from local disk when this version was downloaded before.
+     * With {@code gdrive.download.parallel.enabled}, large files are fetched from Google Drive over several connections.
+     * With {@code gdrive.download.shared.enabled}, concurrent downloads of the same file share one Google Drive download
+     * once each user's metadata has been fetched with their own credentials.
+     * Otherwise, without a Range, content and metadata are fetched concurrently, and the body is held back until the headers are known.
+     * Google Docs, Sheets and Slides are exported, to the {@code format} given (an extension such as {@code pdf} or a MIME type),
+     * else to the first supported type in the Accept header, else to the document type's default.
+     * Exports are cached per document version and format alongside downloaded content.
      * @param fileId Google Drive FileID to download
-     * @return Response Stream to download a file
+     * @param format Optional export format of Google Docs, Sheets and Slides
+     * @param range Optional byte range, e.g. {@code bytes=0-1023}
+     * @param ifRange Optional validator; the range is only honoured when it matches the current file
+     * @param ifNoneMatch Optional entity tags the client already holds
      */
     @GetMapping(API_RESOURCE_NAME + "/{fileId}")
-    ResponseEntity<byte[]> downloadFile(@PathVariable String fileId) {
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            googleDriveService.downloadById(fileId, outputStream);
-            final GoogleDriveFileResponse file = googleDriveService.getById(fileId);
+    void downloadFile(@PathVariable String fileId,
+                      @RequestParam(required = false) String format,
+                      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                      @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                      @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                      HttpServletResponse response) {
+        try {
+            if (format == null && range == null && ifNoneMatch == null && !contentCache.isEnabled()
+                    && !properties.getDownload().getParallel().isEnabled() && !properties.getDownload().getShared().isEnabled()) {
+                try (DriveTaskScope scope = new DriveTaskScope(taskExecutor)) {
+                    final CompletableFuture<GoogleDriveFileResponse> metadata = scope.fork(() -> googleDriveService.getById(fileId));
+                    final DeferredHeadersOutputStream outputStream = new DeferredHeadersOutputStream(responseStream(response),
+                            () -> writeFileHeaders(response, scope.join(metadata)));
+                    googleDriveService.downloadById(fileId, outputStream);
+                    outputStream.flush();
+                    return;
+                } catch (GoogleJsonResponseException e) {
+                    // Google Docs, Sheets and Slides have no content to download, they are exported below
+                    if (response.isCommitted() || !FILE_NOT_DOWNLOADABLE.equals(errorReason(e))) {
+                        throw e;
+                    }
+                    response.reset();
+                }
+            }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getName());
-            headers.add(HttpHeaders.CONTENT_TYPE, file.getMimeType());
+            final GoogleDriveFileResponse file = googleDriveService.getById(fileId);
+            if (GoogleDriveExportFormats.isWorkspaceDocument(file.getMimeType())) {
+                sendExport(response, file, GoogleDriveExportFormats.resolve(file.getMimeType(), format, accept));
+                return;
+            }
+            final String etag = etag(file);
+            if (etag != null && ifNoneMatch != null && etagMatches(ifNoneMatch, etag)) {
+                response.setHeader(HttpHeaders.ETAG, etag);
+                response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                return;
+            }
+            // Opened before any header is written, so an eviction meanwhile cannot take the content away
+            try (FileChannel cachedContent = contentCache.open(file)) {
+                final HttpRange byteRange = resolveRange(range, ifRange, file);
+                if (byteRange == null) {
+                    writeFileHeaders(response, file);
+                    if (cachedContent != null) {
+                        sendCachedContent(response, cachedContent, 0, file.getSize());
+                        return;
+                    }
+                    final OutputStream outputStream = responseStream(response);
+                    contentCache.fill(file, content -> googleDriveService.downloadFile(file, content), outputStream);
+                    outputStream.flush();
+                    return;
+                }
 
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
+                final long size = file.getSize();
+                final long firstBytePos = byteRange.getRangeStart(size);
+                final long lastBytePos = byteRange.getRangeEnd(size);
+                writeFileHeaders(response, file);
+                if (firstBytePos >= size || firstBytePos > lastBytePos) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response.setContentLengthLong(0);
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes %d-%d/%d".formatted(firstBytePos, lastBytePos, size));
+                response.setContentLengthLong(lastBytePos - firstBytePos + 1);
+                if (cachedContent != null) {
+                    sendCachedContent(response, cachedContent, firstBytePos, lastBytePos - firstBytePos + 1);
+                    return;
+                }
+                final OutputStream outputStream = responseStream(response);
+                googleDriveService.downloadRangeById(fileId, firstBytePos, lastBytePos, outputStream);
+                outputStream.flush();
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid download of FileId={}: {}", fileId, e.getMessage());
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.BAD_REQUEST.value());
+            }
         } catch (Exception e) {
             log.error("Error Downloading FileId={}", fileId, e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            if (!response.isCommitted()) {
+                response.reset();
+                writeErrorStatus(response, e);
+            }
+        }
+    }
+
+    /**
+     * Download a folder, including its subfolders, or a list of files as one ZIP archive, streamed while it is built.
+     * Google Docs, Sheets and Slides are left out.
+     */
+    @PostMapping(path = API_RESOURCE_NAME + ":zip", produces = ZIP_CONTENT_TYPE)
+    void downloadArchive(@Valid @RequestBody GoogleDriveArchiveRequest archiveRequest, HttpServletResponse response) {
+        try {
+            final GoogleDriveArchiveService.Archive archive = archiveService.resolve(archiveRequest);
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(ZIP_CONTENT_TYPE);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + archive.name() + ".zip");
+            final OutputStream outputStream = responseStream(response);
+            archiveService.writeZip(archive.entries(), outputStream);
+            outputStream.flush();
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid archive request {}: {}", archiveRequest, e.getMessage());
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+        } catch (Exception e) {
+            log.error("Error Downloading archive {}", archiveRequest, e);
+            if (!response.isCommitted()) {
+                response.reset();
+                writeErrorStatus(response, e);
+            }
         }
     }
 
@@ -71,19 +288,34 @@ public class FilesController {
      */
     @PostMapping(path = API_RESOURCE_NAME, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     ResponseEntity<GoogleDriveFileResponse> uploadFile(@RequestParam("file") MultipartFile multipartFile) {
-        try {
-            // Convert MultipartFile to a File
-            java.io.File file = new java.io.File(System.getProperty("java.io.tmpdir") + "/" + multipartFile.getOriginalFilename());
-            multipartFile.transferTo(file);
-
-            // Get MIME type
-            String mimeType = multipartFile.getContentType();
-            GoogleDriveFileResponse uploadedFile = googleDriveService.uploadFile(file, mimeType);
+        try (InputStream content = multipartFile.getInputStream()) {
+            GoogleDriveFileResponse uploadedFile = googleDriveService.uploadFile(
+                    multipartFile.getOriginalFilename(), multipartFile.getContentType(), content, multipartFile.getSize());
 
             return new ResponseEntity<>(uploadedFile, HttpStatus.OK);
         } catch (Exception e) {
             log.error("Error Uploading File", e);
-            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            return errorResponse(e);
+        }
+    }
+
+    /**
+     * Upload a file to Google Drive from the raw request body, which is streamed straight into a
+     * resumable upload session without being written to local disk.
+     * The request Content-Type is used as the file MIME type.
+     * @param name Name of the file to create
+     * @return Uploaded file response
+     */
+    @PostMapping(path = API_RESOURCE_NAME, consumes = "!" + MediaType.MULTIPART_FORM_DATA_VALUE)
+    ResponseEntity<GoogleDriveFileResponse> uploadFileStream(@RequestParam String name, HttpServletRequest request) {
+        try (InputStream content = request.getInputStream()) {
+            GoogleDriveFileResponse uploadedFile = googleDriveService.uploadFile(
+                    name, request.getContentType(), content, request.getContentLengthLong());
+
+            return new ResponseEntity<>(uploadedFile, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("Error Uploading File name={}", name, e);
+            return errorResponse(e);
         }
     }
 
@@ -98,7 +330,202 @@ public class FilesController {
             return ResponseEntity.status(HttpStatus.OK).build();
         } catch (Exception e) {
             log.error("Error Deleting FileId={}", fileId, e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            return errorResponse(e);
+        }
+    }
+
+    /**
+     * Fetch metadata of several files in as few Google Drive round trips as possible
+     * @return One result per distinct id, each with its own status
+     */
+    @PostMapping(API_RESOURCE_NAME + ":batchGet")
+    ResponseEntity<GoogleDriveBatchResponse> batchGetFiles(@Valid @RequestBody GoogleDriveBatchRequest request) {
+        try {
+            return new ResponseEntity<>(new GoogleDriveBatchResponse(googleDriveService.batchGetByIds(request.getIds())), HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("Error Batch Getting {} files", request.getIds().size(), e);
+            return errorResponse(e);
+        }
+    }
+
+    /**
+     * Delete several files from GoogleDrive in as few round trips as possible
+     * @return One result per distinct id, each with its own status
+     */
+    @PostMapping(API_RESOURCE_NAME + ":batchDelete")
+    ResponseEntity<GoogleDriveBatchResponse> batchDeleteFiles(@Valid @RequestBody GoogleDriveBatchRequest request) {
+        try {
+            return new ResponseEntity<>(new GoogleDriveBatchResponse(googleDriveService.batchDelete(request.getIds())), HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("Error Batch Deleting {} files", request.getIds().size(), e);
+            return errorResponse(e);
+        }
+    }
+
+    /**
+     * Requests rejected for going over the user's Drive request rate get 429 with a Retry-After hint, requests Drive
+     * refused for lack of permission get 403; anything else is a 500.
+     */
+    private static <T> ResponseEntity<T> errorResponse(Exception e) {
+        if (e instanceof DriveRateLimitedException rateLimited) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(rateLimited))
+                    .build();
+        }
+        if (isForbidden(e)) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private static void writeErrorStatus(HttpServletResponse response, Exception e) {
+        if (e instanceof DriveRateLimitedException rateLimited) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds(rateLimited));
+            return;
+        }
+        response.setStatus(isForbidden(e) ? HttpStatus.FORBIDDEN.value() : HttpStatus.INTERNAL_SERVER_ERROR.value());
+    }
+
+    private static boolean isForbidden(Exception e) {
+        return e instanceof HttpResponseException responseException && responseException.getStatusCode() == HttpStatus.FORBIDDEN.value();
+    }
+
+    private static String retryAfterSeconds(DriveRateLimitedException e) {
+        return String.valueOf(Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000));
+    }
+
+    /**
+     * Headers for sending the whole file with 200. Range responses override the status and Content-Length.
+     */
+    private static void writeFileHeaders(HttpServletResponse response, GoogleDriveFileResponse file) {
+        response.setStatus(HttpStatus.OK.value());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getName());
+        response.setContentType(file.getMimeType() != null ? file.getMimeType() : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        final String etag = etag(file);
+        if (etag != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+        }
+        final Instant lastModified = lastModified(file);
+        if (lastModified != null) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified.toEpochMilli());
+        }
+        if (file.getSize() != null) {
+            response.setContentLengthLong(file.getSize());
+        }
+    }
+
+    /**
+     * Send a document exported to the format, from the content cache when this version was exported before.
+     * Exports have no known size, ranges or ETag.
+     */
+    private void sendExport(HttpServletResponse response, GoogleDriveFileResponse file,
+                            GoogleDriveExportFormats.ExportFormat exportFormat) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(exportFormat.mimeType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getName() + "." + exportFormat.extension());
+        try (FileChannel cachedExport = contentCache.openExport(file, exportFormat.mimeType())) {
+            if (cachedExport != null) {
+                final long size = cachedExport.size();
+                response.setContentLengthLong(size);
+                sendCachedContent(response, cachedExport, 0, size);
+                return;
+            }
+        }
+        final OutputStream outputStream = responseStream(response);
+        contentCache.fillExport(file, exportFormat.mimeType(),
+                content -> googleDriveService.exportFile(file, exportFormat.mimeType(), content), outputStream);
+        outputStream.flush();
+    }
+
+    private static String errorReason(GoogleJsonResponseException e) {
+        return e.getDetails() != null && e.getDetails().getErrors() != null && !e.getDetails().getErrors().isEmpty()
+                ? e.getDetails().getErrors().getFirst().getReason()
+                : null;
+    }
+
+    /**
+     * Send part of a cached file from the channel opened on it, copying it through a heap buffer into the response.
+     * The whole transfer happens before this method returns, while the channel is still open; handing the file name
+     * to Tomcat's sendfile instead would avoid the copy but read the file after the request has finished, when nothing
+     * keeps an evicted entry on disk.
+     */
+    private void sendCachedContent(HttpServletResponse response, FileChannel channel, long position, long count) throws IOException {
+        final OutputStream outputStream = responseStream(response);
+        GoogleDriveContentCache.transferTo(channel, position, count, outputStream);
+        outputStream.flush();
+    }
+
+    private OutputStream responseStream(HttpServletResponse response) throws IOException {
+        final int bufferSize = properties.getDownload().getBufferSize();
+        response.setBufferSize(bufferSize);
+        return new BufferedOutputStream(response.getOutputStream(), bufferSize);
+    }
+
+    /**
+     * @return The single byte range to serve, or null when the whole file should be sent.
+     * Multiple ranges, unparseable headers and stale If-Range validators all fall back to the whole file.
+     */
+    private static HttpRange resolveRange(String range, String ifRange, GoogleDriveFileResponse file) {
+        if (range == null || file.getSize() == null || file.getSize() == 0 || !ifRangeMatches(ifRange, file)) {
+            return null;
+        }
+        try {
+            final List<HttpRange> ranges = HttpRange.parseRanges(range);
+            return ranges.size() == 1 ? ranges.getFirst() : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean ifRangeMatches(String ifRange, GoogleDriveFileResponse file) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag(file));
+        }
+        final Instant lastModified = lastModified(file);
+        if (lastModified == null || ifRange.startsWith("W/")) {
+            return false;
+        }
+        try {
+            final Instant since = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return since.getEpochSecond() == lastModified.getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return Strong entity tag of the file content, or null when Google Drive reports neither checksum nor version
+     */
+    private static String etag(GoogleDriveFileResponse file) {
+        if (file.getMd5Checksum() != null) {
+            return "\"" + file.getMd5Checksum() + "\"";
+        }
+        return file.getVersion() != null ? "\"v" + file.getVersion() + "\"" : null;
+    }
+
+    /**
+     * Weak comparison, as required for {@code If-None-Match}
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            final String tag = candidate.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Instant lastModified(GoogleDriveFileResponse file) {
+        try {
+            return file.getLastModifiedDateTime() != null ? Instant.parse(file.getLastModifiedDateTime()) : null;
+        } catch (DateTimeParseException e) {
+            return null;
         }
     }
 }
@@ -0,0 +1,91 @@
+package io.strac.gdrive.gdrive.controllers;
+
+import io.strac.gdrive.gdrive.models.GoogleDriveUploadJobResponse;
+import io.strac.gdrive.gdrive.services.GoogleDriveUploadService;
+import io.strac.gdrive.gdrive.services.UploadQueueFullException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.net.URI;
+
+@RestController
+public class UploadsController {
+    public static final String API_RESOURCE_NAME = "/uploads";
+
+    private static final Logger log = LoggerFactory.getLogger(UploadsController.class);
+
+    private final GoogleDriveUploadService uploadService;
+
+    @Autowired
+    public UploadsController(GoogleDriveUploadService uploadService) {
+        this.uploadService = uploadService;
+    }
+
+    /**
+     * Queue a file for upload to Google Drive in the background
+     * @return 202 with the queued job, whose progress can be polled at the Location
+     */
+    @PostMapping(path = API_RESOURCE_NAME, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    ResponseEntity<GoogleDriveUploadJobResponse> submitUpload(@RequestParam("file") MultipartFile multipartFile) {
+        try {
+            return accepted(uploadService.submit(multipartFile));
+        } catch (Exception e) {
+            log.error("Error Queueing Upload", e);
+            return errorResponse(e);
+        }
+    }
+
+    /**
+     * Queue the raw request body for upload to Google Drive in the background.
+     * The request Content-Type is used as the file MIME type.
+     * @param name Name of the file to create
+     * @return 202 with the queued job, whose progress can be polled at the Location
+     */
+    @PostMapping(path = API_RESOURCE_NAME, consumes = "!" + MediaType.MULTIPART_FORM_DATA_VALUE)
+    ResponseEntity<GoogleDriveUploadJobResponse> submitUploadStream(@RequestParam String name, HttpServletRequest request) {
+        try (InputStream content = request.getInputStream()) {
+            return accepted(uploadService.submit(name, request.getContentType(), content));
+        } catch (Exception e) {
+            log.error("Error Queueing Upload name={}", name, e);
+            return errorResponse(e);
+        }
+    }
+
+    /**
+     * Get the state of an upload job, with the created file once it has succeeded
+     * @param jobId ID of the upload job
+     * @return Upload job, or 404 when the current user has no such job
+     */
+    @GetMapping(API_RESOURCE_NAME + "/{jobId}")
+    ResponseEntity<GoogleDriveUploadJobResponse> getUpload(@PathVariable String jobId) {
+        final GoogleDriveUploadJobResponse job = uploadService.get(jobId);
+        if (job == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(job, HttpStatus.OK);
+    }
+
+    private static ResponseEntity<GoogleDriveUploadJobResponse> accepted(GoogleDriveUploadJobResponse job) {
+        return ResponseEntity.accepted()
+                .location(URI.create(API_RESOURCE_NAME + "/" + job.getId()))
+                .body(job);
+    }
+
+    private static <T> ResponseEntity<T> errorResponse(Exception e) {
+        if (e instanceof UploadQueueFullException queueFull) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (queueFull.getRetryAfter().toMillis() + 999) / 1000)))
+                    .build();
+        }
+        return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+}
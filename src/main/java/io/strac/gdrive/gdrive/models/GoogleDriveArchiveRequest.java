@@ -0,0 +1,34 @@
+package io.strac.gdrive.gdrive.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Files to download as one ZIP archive: either a folder, including its subfolders, or a list of files.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GoogleDriveArchiveRequest {
+    private String folderId;
+    @Size(max = 1000)
+    private List<String> ids;
+    /**
+     * Archive file name without the extension. Defaults to the folder name, or {@code files}
+     */
+    private String name;
+
+    @JsonIgnore
+    @AssertTrue(message = "Exactly one of folderId and ids is required")
+    public boolean isSingleSource() {
+        return (folderId != null) != (ids != null && !ids.isEmpty());
+    }
+}
@@ -0,0 +1,14 @@
+package io.strac.gdrive.gdrive.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GoogleDriveBatchResponse {
+    private List<GoogleDriveBatchResult> results;
+}
@@ -0,0 +1,27 @@
+package io.strac.gdrive.gdrive.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one file in a batch request.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GoogleDriveBatchResult {
+    private String id;
+    /**
+     * HTTP status reported by Google Drive for this file
+     */
+    private int status;
+    private GoogleDriveFileResponse file;
+    private String error;
+    /**
+     * Google Drive error reason of a failed file, e.g. {@code insufficientFilePermissions} or {@code rateLimitExceeded}
+     */
+    private String reason;
+}
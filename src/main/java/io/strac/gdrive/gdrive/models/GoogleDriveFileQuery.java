@@ -0,0 +1,43 @@
+package io.strac.gdrive.gdrive.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Filters, order and field projection for listing files. Every criterion is optional and criteria are combined with AND.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GoogleDriveFileQuery {
+    /**
+     * Case-insensitive prefix of the file name or of any word in it, as Google Drive's {@code name contains} matches
+     */
+    private String name;
+    private String mimeType;
+    /**
+     * Google Drive ID of the folder directly containing the files
+     */
+    private String parent;
+    private Instant modifiedAfter;
+    private Instant modifiedBefore;
+    private Long minSize;
+    private Long maxSize;
+    /**
+     * Comma-separated sort keys out of {@code name}, {@code lastModifiedDateTime} and {@code size},
+     * each optionally followed by {@code asc} or {@code desc}, e.g. {@code lastModifiedDateTime desc,name}.
+     * {@code size} sorts on {@code quotaBytesUsed}, the storage used including revisions, as Google Drive does.
+     */
+    private String orderBy;
+    /**
+     * Comma-separated response fields out of {@code id}, {@code name}, {@code mimeType}, {@code size},
+     * {@code lastModifiedDateTime}, {@code md5Checksum}, {@code version}, {@code quotaBytesUsed} and {@code canDownload}.
+     * All fields when empty.
+     */
+    private String fields;
+}
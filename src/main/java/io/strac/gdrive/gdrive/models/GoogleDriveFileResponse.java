@@ -1,5 +1,6 @@
 package io.strac.gdrive.gdrive.models;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.google.api.services.drive.model.File;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -10,18 +11,39 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class GoogleDriveFileResponse { ;
     private String id;
     private String name;
     private String mimeType;
     private Long size;
     private String lastModifiedDateTime;
+    /**
+     * MD5 of the content, only set for files with binary content
+     */
+    private String md5Checksum;
+    /**
+     * Increases with every change to the file
+     */
+    private Long version;
+    /**
+     * Storage used by the file including its revisions, which is what Google Drive sorts on for {@code orderBy=size}
+     */
+    private Long quotaBytesUsed;
+    /**
+     * Whether the current user may download or export the content, unset when unknown
+     */
+    private Boolean canDownload;
 
     public GoogleDriveFileResponse(final File googleDriveFile) {
         this.id = googleDriveFile.getId();
         this.name = googleDriveFile.getName();
         this.mimeType = googleDriveFile.getMimeType();
         this.size = googleDriveFile.getSize();
-        this.lastModifiedDateTime = googleDriveFile.getModifiedTime().toString();
+        this.lastModifiedDateTime = googleDriveFile.getModifiedTime() != null ? googleDriveFile.getModifiedTime().toString() : null;
+        this.md5Checksum = googleDriveFile.getMd5Checksum();
+        this.version = googleDriveFile.getVersion();
+        this.quotaBytesUsed = googleDriveFile.getQuotaBytesUsed();
+        this.canDownload = googleDriveFile.getCapabilities() != null ? googleDriveFile.getCapabilities().getCanDownload() : null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package io.strac.gdrive.gdrive.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of an upload accepted with {@code POST /uploads} and pushed to Google Drive in the background.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GoogleDriveUploadJobResponse {
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private String id;
+    private State state;
+    private String name;
+    /**
+     * Size of the accepted content in bytes
+     */
+    private long size;
+    /**
+     * Bytes sent to Google Drive by the current attempt
+     */
+    private long bytesSent;
+    private int attempts;
+    /**
+     * The uploaded file, once the job has succeeded
+     */
+    private GoogleDriveFileResponse file;
+    private String error;
+}
@@ -0,0 +1,33 @@
+package io.strac.gdrive.gdrive.oauth;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.security.oauth2.client.JdbcOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+
+/**
+ * Store of users' authorized clients, selected by {@code gdrive.store.type}. Without a store defined here,
+ * Spring Boot keeps them in memory. Another shared store can be plugged in by defining an
+ * {@link OAuth2AuthorizedClientService} bean, ideally wrapped in a {@link CachingOAuth2AuthorizedClientService}.
+ */
+@Configuration
+public class AuthorizedClientStoreConfiguration {
+    /**
+     * Authorized clients in the {@code oauth2_authorized_client} table, shared by all nodes.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "gdrive.store.type", havingValue = "jdbc")
+    public OAuth2AuthorizedClientService jdbcAuthorizedClientService(JdbcOperations jdbcOperations,
+                                                                     ClientRegistrationRepository clientRegistrations,
+                                                                     GoogleDriveProperties properties,
+                                                                     MeterRegistry meterRegistry) {
+        final GoogleDriveProperties.Store store = properties.getStore();
+        return new CachingOAuth2AuthorizedClientService(new JdbcOAuth2AuthorizedClientService(jdbcOperations, clientRegistrations),
+                store.getNearCacheMaximumSize(), store.getNearCacheTimeToLive(), meterRegistry);
+    }
+}
@@ -0,0 +1,57 @@
+package io.strac.gdrive.gdrive.oauth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+
+import java.time.Duration;
+
+/**
+ * Near-cache in front of a shared {@link OAuth2AuthorizedClientService}, so that looking up a user's tokens
+ * does not go to the shared store on every request. Writes go through to the store and update the local copy.
+ * Changes made on other nodes are seen once the local copy expires, which is harmless for tokens:
+ * a superseded access token stays valid until it expires, and the manager refreshes it again if needed.
+ * Missing clients are not cached, so a user who has just logged in on another node is found right away.
+ */
+public class CachingOAuth2AuthorizedClientService implements OAuth2AuthorizedClientService {
+    private final OAuth2AuthorizedClientService delegate;
+    private final Cache<Key, OAuth2AuthorizedClient> clients;
+
+    public CachingOAuth2AuthorizedClientService(@NonNull final OAuth2AuthorizedClientService delegate, final long maximumSize,
+                                                @NonNull final Duration timeToLive, @NonNull final MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.clients = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, this.clients, "gdrive.authorized.clients");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(final String clientRegistrationId, final String principalName) {
+        return (T) clients.get(new Key(clientRegistrationId, principalName),
+                key -> delegate.loadAuthorizedClient(clientRegistrationId, principalName));
+    }
+
+    @Override
+    public void saveAuthorizedClient(final OAuth2AuthorizedClient authorizedClient, final Authentication principal) {
+        delegate.saveAuthorizedClient(authorizedClient, principal);
+        clients.put(new Key(authorizedClient.getClientRegistration().getRegistrationId(), principal.getName()), authorizedClient);
+    }
+
+    @Override
+    public void removeAuthorizedClient(final String clientRegistrationId, final String principalName) {
+        delegate.removeAuthorizedClient(clientRegistrationId, principalName);
+        clients.invalidate(new Key(clientRegistrationId, principalName));
+    }
+
+    private record Key(String clientRegistrationId, String principalName) {
+    }
+}
@@ -1,19 +1,61 @@
 package io.strac.gdrive.gdrive.oauth;
 
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.config.Customizer;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.oauth2.client.AuthorizedClientServiceOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientProviderBuilder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.DefaultOAuth2AuthorizationRequestResolver;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizationRequestRedirectFilter;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizationRequestResolver;
 import org.springframework.security.web.SecurityFilterChain;
 
 @Configuration
+@EnableScheduling
 public class OAuthConfiguration  {
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, ClientRegistrationRepository clientRegistrations) throws Exception {
         return http.authorizeHttpRequests(registry -> registry.anyRequest().authenticated())
-                .oauth2Login(Customizer.withDefaults())
+                .oauth2Login(login -> login.authorizationEndpoint(endpoint ->
+                        endpoint.authorizationRequestResolver(offlineAccessRequestResolver(clientRegistrations))))
                 .csrf(AbstractHttpConfigurer::disable) // Disable CSRF for testing purposes
                 .build();
     }
+
+    /**
+     * Refreshes access tokens with the refresh token once they are within {@code gdrive.token.refresh-ahead} of expiring.
+     * Works outside of requests, so tokens can be refreshed in the background.
+     */
+    @Bean
+    public OAuth2AuthorizedClientManager authorizedClientManager(ClientRegistrationRepository clientRegistrations,
+                                                                 OAuth2AuthorizedClientService authorizedClientService,
+                                                                 GoogleDriveProperties properties) {
+        final AuthorizedClientServiceOAuth2AuthorizedClientManager manager =
+                new AuthorizedClientServiceOAuth2AuthorizedClientManager(clientRegistrations, authorizedClientService);
+        manager.setAuthorizedClientProvider(OAuth2AuthorizedClientProviderBuilder.builder()
+                .refreshToken(refreshToken -> refreshToken.clockSkew(properties.getToken().getRefreshAhead()))
+                .build());
+        return manager;
+    }
+
+    /**
+     * Google only issues a refresh token when offline access is requested, and only on the first consent unless
+     * consent is prompted for again, so returning users whose stored client was lost still get one.
+     */
+    private static OAuth2AuthorizationRequestResolver offlineAccessRequestResolver(ClientRegistrationRepository clientRegistrations) {
+        final DefaultOAuth2AuthorizationRequestResolver resolver = new DefaultOAuth2AuthorizationRequestResolver(clientRegistrations,
+                OAuth2AuthorizationRequestRedirectFilter.DEFAULT_AUTHORIZATION_REQUEST_BASE_URI);
+        resolver.setAuthorizationRequestCustomizer(request ->
+                request.additionalParameters(parameters -> {
+                    parameters.put("access_type", "offline");
+                    parameters.put("prompt", "consent");
+                }));
+        return resolver;
+    }
 }
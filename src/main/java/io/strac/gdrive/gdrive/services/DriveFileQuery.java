@@ -0,0 +1,270 @@
+package io.strac.gdrive.gdrive.services;
+
+import io.strac.gdrive.gdrive.models.GoogleDriveFileQuery;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static io.strac.gdrive.gdrive.services.GoogleDriveService.FILE_FIELDS;
+
+/**
+ * A {@link GoogleDriveFileQuery} translated for Google Drive: the {@code q} expression, the {@code orderBy} clause
+ * and the {@code fields} mask, together with the equivalent filter, order and projection for the local index.
+ * Google Drive cannot filter on size, so size bounds are always applied locally, to each page after it is fetched.
+ * Both sides agree on everything else: names match Drive's {@code contains}, a case-insensitive prefix of the name or of
+ * any word in it, and {@code size} sorts on {@code quotaBytesUsed}, the only size Drive can order by.
+ */
+final class DriveFileQuery {
+    static final DriveFileQuery ALL = of(new GoogleDriveFileQuery());
+
+    /**
+     * Response fields mapped to Google Drive file fields
+     */
+    private static final Map<String, String> DRIVE_FIELDS = Map.of(
+            "id", "id",
+            "name", "name",
+            "mimeType", "mimeType",
+            "size", "size",
+            "lastModifiedDateTime", "modifiedTime",
+            "md5Checksum", "md5Checksum",
+            "version", "version",
+            "quotaBytesUsed", "quotaBytesUsed",
+            "canDownload", "capabilities/canDownload");
+
+    /**
+     * Sortable response fields mapped to Google Drive {@code orderBy} keys
+     */
+    private static final Map<String, String> DRIVE_ORDER_BY = Map.of(
+            "name", "name",
+            "lastModifiedDateTime", "modifiedTime",
+            "size", "quotaBytesUsed");
+
+    private static final Comparator<GoogleDriveFileResponse> NAME_ORDER = Comparator
+            .comparing(GoogleDriveFileResponse::getName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+
+    private final GoogleDriveFileQuery query;
+    private final String driveQuery;
+    private final String driveOrderBy;
+    private final String driveFields;
+    private final Set<String> projection;
+    private final Comparator<GoogleDriveFileResponse> indexOrder;
+
+    private DriveFileQuery(final GoogleDriveFileQuery query) {
+        this.query = query;
+        this.projection = parseFields(query.getFields());
+        this.driveQuery = buildDriveQuery(query);
+
+        final List<String> orderBy = new ArrayList<>();
+        Comparator<GoogleDriveFileResponse> order = null;
+        if (query.getOrderBy() != null && !query.getOrderBy().isBlank()) {
+            for (String key : query.getOrderBy().split(",")) {
+                final String[] parts = key.trim().split("\\s+");
+                final String driveKey = DRIVE_ORDER_BY.get(parts[0]);
+                if (driveKey == null || parts.length > 2 || (parts.length == 2 && !parts[1].matches("(?i)asc|desc"))) {
+                    throw new IllegalArgumentException("Unsupported orderBy: " + key.trim());
+                }
+                final boolean descending = parts.length == 2 && parts[1].equalsIgnoreCase("desc");
+                orderBy.add(descending ? driveKey + " desc" : driveKey);
+                final Comparator<GoogleDriveFileResponse> keyOrder = comparator(parts[0], descending);
+                order = order == null ? keyOrder : order.thenComparing(keyOrder);
+            }
+        }
+        this.driveOrderBy = orderBy.isEmpty() ? null : String.join(",", orderBy);
+        this.indexOrder = (order != null ? order : NAME_ORDER).thenComparing(GoogleDriveFileResponse::getId);
+
+        if (projection == null) {
+            this.driveFields = FILE_FIELDS;
+        } else {
+            final Set<String> fields = new LinkedHashSet<>();
+            projection.forEach(field -> fields.add(DRIVE_FIELDS.get(field)));
+            if (query.getMinSize() != null || query.getMaxSize() != null) {
+                fields.add("size");
+            }
+            this.driveFields = String.join(", ", fields);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException When the query names unsupported fields or sort keys
+     */
+    static DriveFileQuery of(final GoogleDriveFileQuery query) {
+        return new DriveFileQuery(query != null ? query : new GoogleDriveFileQuery());
+    }
+
+    /**
+     * @return Google Drive {@code q} expression, or null to list every file
+     */
+    String driveQuery() {
+        return driveQuery;
+    }
+
+    /**
+     * @return Google Drive {@code orderBy} clause, or null for the Drive default
+     */
+    String driveOrderBy() {
+        return driveOrderBy;
+    }
+
+    /**
+     * @return Google Drive file fields to request
+     */
+    String driveFields() {
+        return driveFields;
+    }
+
+    /**
+     * @return Whether responses carry every file field, so they can populate the metadata cache
+     */
+    boolean isFullProjection() {
+        return projection == null;
+    }
+
+    /**
+     * The index does not track parent folders, so parent queries are always sent to Google Drive.
+     */
+    boolean isIndexable() {
+        return query.getParent() == null;
+    }
+
+    /**
+     * @return Filter for files already fetched from Google Drive, which only has to apply what Drive cannot
+     */
+    Predicate<GoogleDriveFileResponse> driveFilter() {
+        return this::matchesSize;
+    }
+
+    /**
+     * @return Filter applying every criterion, for files of the local index
+     */
+    Predicate<GoogleDriveFileResponse> indexFilter() {
+        final String lowerCaseName = query.getName() != null ? query.getName().toLowerCase(Locale.ROOT) : null;
+        return file -> (lowerCaseName == null || nameContains(file.getName(), lowerCaseName))
+                && (query.getMimeType() == null || query.getMimeType().equals(file.getMimeType()))
+                && (query.getModifiedAfter() == null || isAfter(file, query.getModifiedAfter()))
+                && (query.getModifiedBefore() == null || isBefore(file, query.getModifiedBefore()))
+                && matchesSize(file);
+    }
+
+    Comparator<GoogleDriveFileResponse> indexOrder() {
+        return indexOrder;
+    }
+
+    /**
+     * @return Copy of the file carrying only the requested fields
+     */
+    Function<GoogleDriveFileResponse, GoogleDriveFileResponse> projection() {
+        if (projection == null) {
+            return Function.identity();
+        }
+        return file -> GoogleDriveFileResponse.builder()
+                .id(projection.contains("id") ? file.getId() : null)
+                .name(projection.contains("name") ? file.getName() : null)
+                .mimeType(projection.contains("mimeType") ? file.getMimeType() : null)
+                .size(projection.contains("size") ? file.getSize() : null)
+                .lastModifiedDateTime(projection.contains("lastModifiedDateTime") ? file.getLastModifiedDateTime() : null)
+                .md5Checksum(projection.contains("md5Checksum") ? file.getMd5Checksum() : null)
+                .version(projection.contains("version") ? file.getVersion() : null)
+                .quotaBytesUsed(projection.contains("quotaBytesUsed") ? file.getQuotaBytesUsed() : null)
+                .canDownload(projection.contains("canDownload") ? file.getCanDownload() : null)
+                .build();
+    }
+
+    /**
+     * Google Drive's {@code name contains}: the term starts the name or one of its words, ignoring case.
+     * "Hello" and "world" both match "Hello world", "ello" does not.
+     */
+    static boolean nameContains(final String name, final String lowerCaseTerm) {
+        if (name == null) {
+            return false;
+        }
+        final String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        for (int i = lowerCaseName.indexOf(lowerCaseTerm); i >= 0; i = lowerCaseName.indexOf(lowerCaseTerm, i + 1)) {
+            if (i == 0 || !Character.isLetterOrDigit(lowerCaseName.charAt(i - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesSize(final GoogleDriveFileResponse file) {
+        if (query.getMinSize() == null && query.getMaxSize() == null) {
+            return true;
+        }
+        return file.getSize() != null
+                && (query.getMinSize() == null || file.getSize() >= query.getMinSize())
+                && (query.getMaxSize() == null || file.getSize() <= query.getMaxSize());
+    }
+
+    private static Set<String> parseFields(final String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        final Set<String> projection = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            if (!DRIVE_FIELDS.containsKey(field.trim())) {
+                throw new IllegalArgumentException("Unsupported field: " + field.trim());
+            }
+            projection.add(field.trim());
+        }
+        return projection;
+    }
+
+    private static String buildDriveQuery(final GoogleDriveFileQuery query) {
+        final List<String> terms = new ArrayList<>();
+        if (query.getName() != null) {
+            terms.add("name contains " + literal(query.getName()));
+        }
+        if (query.getMimeType() != null) {
+            terms.add("mimeType = " + literal(query.getMimeType()));
+        }
+        if (query.getParent() != null) {
+            terms.add(literal(query.getParent()) + " in parents");
+        }
+        if (query.getModifiedAfter() != null) {
+            terms.add("modifiedTime > " + literal(query.getModifiedAfter().toString()));
+        }
+        if (query.getModifiedBefore() != null) {
+            terms.add("modifiedTime < " + literal(query.getModifiedBefore().toString()));
+        }
+        return terms.isEmpty() ? null : String.join(" and ", terms);
+    }
+
+    private static String literal(final String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+
+    private static Comparator<GoogleDriveFileResponse> comparator(final String field, final boolean descending) {
+        return switch (field) {
+            case "name" -> Comparator.comparing(GoogleDriveFileResponse::getName,
+                    Comparator.nullsLast(descending ? String.CASE_INSENSITIVE_ORDER.reversed() : String.CASE_INSENSITIVE_ORDER));
+            case "lastModifiedDateTime" -> Comparator.comparing(DriveFileQuery::modifiedTime,
+                    Comparator.nullsLast(descending ? Comparator.<Instant>reverseOrder() : Comparator.<Instant>naturalOrder()));
+            case "size" -> Comparator.comparing(GoogleDriveFileResponse::getQuotaBytesUsed,
+                    Comparator.nullsLast(descending ? Comparator.<Long>reverseOrder() : Comparator.<Long>naturalOrder()));
+            default -> throw new IllegalArgumentException("Unsupported orderBy: " + field);
+        };
+    }
+
+    private static boolean isAfter(final GoogleDriveFileResponse file, final Instant instant) {
+        final Instant modifiedTime = modifiedTime(file);
+        return modifiedTime != null && modifiedTime.isAfter(instant);
+    }
+
+    private static boolean isBefore(final GoogleDriveFileResponse file, final Instant instant) {
+        final Instant modifiedTime = modifiedTime(file);
+        return modifiedTime != null && modifiedTime.isBefore(instant);
+    }
+
+    private static Instant modifiedTime(final GoogleDriveFileResponse file) {
+        return file.getLastModifiedDateTime() != null ? Instant.parse(file.getLastModifiedDateTime()) : null;
+    }
+}
@@ -0,0 +1,74 @@
+package io.strac.gdrive.gdrive.services;
+
+import io.strac.gdrive.gdrive.clients.DriveUser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs at most one Drive call per key at a time. Callers arriving while it runs wait for its result, or its failure,
+ * instead of making the same call. Keys carry the user, so results are only ever shared between requests of that user.
+ */
+final class DriveSingleFlight {
+    private final boolean enabled;
+    private final GoogleDriveMetrics metrics;
+    private final ConcurrentHashMap<Key, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * @param operation Drive operation, also the {@code operation} tag of {@code gdrive.coalesced}
+     * @param request Value identifying the request, e.g. the file id, compared with {@code equals}
+     */
+    record Key(String operation, DriveUser user, Object request) {
+    }
+
+    DriveSingleFlight(final boolean enabled, final GoogleDriveMetrics metrics) {
+        this.enabled = enabled;
+        this.metrics = metrics;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T execute(final Key key, final GoogleDriveMetrics.DriveCall<T> call) throws IOException {
+        if (!enabled) {
+            return call.call();
+        }
+        final CompletableFuture<Object> flight = new CompletableFuture<>();
+        final CompletableFuture<Object> inFlight = calls.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            metrics.countCoalesced(key.operation());
+            return (T) await(inFlight);
+        }
+        try {
+            final T result = call.call();
+            flight.complete(result);
+            return result;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, flight);
+        }
+    }
+
+    /**
+     * A waiter that is interrupted stops waiting, the call itself carries on for the others.
+     */
+    private static Object await(final CompletableFuture<Object> flight) throws IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Google Drive");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
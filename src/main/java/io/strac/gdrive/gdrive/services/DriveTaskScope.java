@@ -0,0 +1,90 @@
+package io.strac.gdrive.gdrive.services;
+
+import lombok.NonNull;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs independent Drive calls of one request concurrently.
+ * When one call fails, its siblings are cancelled, and closing the scope cancels whatever is still running,
+ * so no call outlives the request that started it.
+ */
+public class DriveTaskScope implements AutoCloseable {
+    private final AsyncTaskExecutor taskExecutor;
+    private final List<Future<?>> tasks = new ArrayList<>();
+    private final List<CompletableFuture<?>> results = new ArrayList<>();
+    private final AtomicReference<Exception> firstFailure = new AtomicReference<>();
+
+    public DriveTaskScope(@NonNull final AsyncTaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Start a call on the Drive task executor.
+     * @return Result of the call, to be read with {@link #join(CompletableFuture)}
+     */
+    public <T> CompletableFuture<T> fork(@NonNull final Callable<T> call) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        synchronized (this) {
+            results.add(result);
+        }
+        final Future<?> task = taskExecutor.submit(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Exception e) {
+                firstFailure.compareAndSet(null, e);
+                result.completeExceptionally(e);
+                cancelAll();
+            }
+        });
+        synchronized (this) {
+            tasks.add(task);
+            if (firstFailure.get() != null) {
+                task.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Wait for a forked call. If it was cancelled because a sibling failed, the sibling's failure is thrown instead.
+     */
+    public <T> T join(@NonNull final CompletableFuture<T> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            cancelAll();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Google Drive");
+        } catch (CancellationException | ExecutionException e) {
+            final Exception cause = firstFailure.get() != null ? firstFailure.get() : e;
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(cause.getCause() != null ? cause.getCause() : cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+    }
+
+    private synchronized void cancelAll() {
+        results.forEach(result -> result.cancel(false));
+        tasks.forEach(task -> task.cancel(true));
+    }
+}
@@ -0,0 +1,317 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import io.strac.gdrive.gdrive.clients.DriveRateLimitedException;
+import io.strac.gdrive.gdrive.clients.DriveRetryPolicy;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveArchiveRequest;
+import io.strac.gdrive.gdrive.models.GoogleDriveBatchResult;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileListResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileQuery;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static io.strac.gdrive.gdrive.config.GoogleDriveExecutorConfiguration.DRIVE_ARCHIVE_EXECUTOR;
+
+/**
+ * Streams a folder or a selection of files as one ZIP archive.
+ * Files are downloaded concurrently by the archive workers, a few ahead of the one being written, within a memory budget,
+ * while a single {@link ZipOutputStream} writes them in order. Files over the budget are streamed straight
+ * into the archive when their turn comes. Content that is already compressed is not compressed again, see {@link #writeEntry}.
+ */
+@Service
+public class GoogleDriveArchiveService {
+    public static final String FOLDER_MIME_TYPE = "application/vnd.google-apps.folder";
+    private static final String GOOGLE_APPS_MIME_PREFIX = "application/vnd.google-apps.";
+    private static final String DEFAULT_ARCHIVE_NAME = "files";
+    /**
+     * Batch results do not carry Drive's Retry-After, so clients are asked to wait as long as the retry policy does without one
+     */
+    private static final Duration RATE_LIMIT_RETRY_AFTER = Duration.ofSeconds(1);
+    private static final Set<String> COMPRESSED_MIME_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2", "application/x-xz",
+            "application/x-7z-compressed", "application/vnd.rar", "application/x-rar-compressed", "application/zstd",
+            "application/pdf", "application/epub+zip", "application/java-archive",
+            "image/jpeg", "image/png", "image/gif", "image/webp", "image/heic", "image/avif");
+    private static final List<String> COMPRESSED_MIME_PREFIXES = List.of(
+            "video/", "audio/", "application/vnd.openxmlformats-officedocument.", "application/vnd.oasis.opendocument.");
+
+    private static final Logger log = LoggerFactory.getLogger(GoogleDriveArchiveService.class);
+
+    private final GoogleDriveService googleDriveService;
+    private final AsyncTaskExecutor archiveExecutor;
+    private final int concurrency;
+    private final long prefetchBudget;
+    private final int maxFiles;
+
+    /**
+     * A file and its path inside the archive
+     */
+    public record ArchiveEntry(String path, GoogleDriveFileResponse file) {
+    }
+
+    /**
+     * @param name Archive file name without the extension
+     */
+    public record Archive(String name, List<ArchiveEntry> entries) {
+    }
+
+    @Autowired
+    public GoogleDriveArchiveService(@NonNull final GoogleDriveService googleDriveService,
+                                     @NonNull @Qualifier(DRIVE_ARCHIVE_EXECUTOR) final AsyncTaskExecutor archiveExecutor,
+                                     @NonNull final GoogleDriveProperties properties) {
+        this.googleDriveService = googleDriveService;
+        this.archiveExecutor = archiveExecutor;
+        this.concurrency = Math.max(1, properties.getArchive().getConcurrency());
+        this.prefetchBudget = Math.clamp(properties.getArchive().getPrefetchBudget().toBytes(), 1024, Integer.MAX_VALUE - 8);
+        this.maxFiles = properties.getArchive().getMaxFiles();
+    }
+
+    /**
+     * Resolve the files of an archive, walking the folder and its subfolders page by page.
+     * Google Docs, Sheets and Slides have no binary content and are left out.
+     * @throws IllegalArgumentException When a file cannot be found, or the folder holds more than {@code gdrive.archive.max-files}
+     * @throws DriveRateLimitedException When Google Drive kept rate limiting the lookup of a file
+     * @throws HttpResponseException With Google Drive's status when a file could not be looked up for another reason
+     */
+    public Archive resolve(@NonNull final GoogleDriveArchiveRequest request) throws IOException {
+        final List<ArchiveEntry> entries = new ArrayList<>();
+        if (request.getFolderId() == null) {
+            final List<String> missing = new ArrayList<>();
+            for (GoogleDriveBatchResult result : googleDriveService.batchGetByIds(request.getIds())) {
+                if (result.getFile() == null && result.getStatus() == 404) {
+                    missing.add(result.getId());
+                } else if (result.getFile() == null) {
+                    throw lookupFailure(result);
+                } else if (isDownloadable(result.getFile())) {
+                    entries.add(new ArchiveEntry(entryName(result.getFile()), result.getFile()));
+                }
+            }
+            if (!missing.isEmpty()) {
+                throw new IllegalArgumentException("Files not found: " + missing);
+            }
+            return new Archive(request.getName() != null ? request.getName() : DEFAULT_ARCHIVE_NAME, entries);
+        }
+
+        final GoogleDriveFileResponse folder = googleDriveService.getById(request.getFolderId());
+        if (!FOLDER_MIME_TYPE.equals(folder.getMimeType())) {
+            throw new IllegalArgumentException("Not a folder: " + request.getFolderId());
+        }
+        final Deque<ArchiveEntry> folders = new ArrayDeque<>(List.of(new ArchiveEntry("", folder)));
+        while (!folders.isEmpty()) {
+            final ArchiveEntry parent = folders.poll();
+            String pageToken = null;
+            do {
+                final GoogleDriveFileListResponse page = googleDriveService.getFilesPaginated(
+                        GoogleDriveFileQuery.builder().parent(parent.file().getId()).build(), pageToken, GoogleDriveService.MAX_PAGE_SIZE);
+                for (GoogleDriveFileResponse file : page.getFiles()) {
+                    final String path = parent.path() + entryName(file);
+                    if (FOLDER_MIME_TYPE.equals(file.getMimeType())) {
+                        folders.add(new ArchiveEntry(path + "/", file));
+                    } else if (isDownloadable(file)) {
+                        entries.add(new ArchiveEntry(path, file));
+                    }
+                }
+                if (entries.size() > maxFiles) {
+                    throw new IllegalArgumentException("Folder holds more than " + maxFiles + " files: " + request.getFolderId());
+                }
+                pageToken = page.getNextPageToken();
+            } while (pageToken != null);
+        }
+        return new Archive(request.getName() != null ? request.getName() : folder.getName(), entries);
+    }
+
+    /**
+     * Failures other than a missing file are reported with Google Drive's status rather than as a bad request.
+     */
+    private static IOException lookupFailure(final GoogleDriveBatchResult result) {
+        final String message = "Cannot look up file %s: %s".formatted(result.getId(), result.getError());
+        if (result.getStatus() == 429 || (result.getStatus() == 403 && DriveRetryPolicy.RATE_LIMIT_REASONS.contains(result.getReason()))) {
+            return new DriveRateLimitedException(message, RATE_LIMIT_RETRY_AFTER);
+        }
+        return new HttpResponseException.Builder(result.getStatus(), result.getReason(), new HttpHeaders()).setMessage(message).build();
+    }
+
+    /**
+     * Write the files as a ZIP archive, flushing after every file so the client receives data from the start.
+     * The output stream is finished but not closed.
+     */
+    public void writeZip(@NonNull final List<ArchiveEntry> entries, @NonNull final OutputStream outputStream) throws IOException {
+        final int count = entries.size();
+        final AtomicReferenceArray<CompletableFuture<byte[]>> prefetched = new AtomicReferenceArray<>(count);
+        for (int i = 0; i < count; i++) {
+            prefetched.set(i, new CompletableFuture<>());
+        }
+        final Semaphore budget = new Semaphore(permits(prefetchBudget));
+        final Object claimLock = new Object();
+        final int[] next = {0};
+
+        final ZipOutputStream zip = new ZipOutputStream(outputStream);
+        try (DriveTaskScope scope = new DriveTaskScope(archiveExecutor)) {
+            for (int worker = 0; worker < Math.min(concurrency, count); worker++) {
+                scope.fork(() -> {
+                    try {
+                        while (true) {
+                            final int index;
+                            final GoogleDriveFileResponse file;
+                            // Files are claimed in order and their budget reserved before the next claim,
+                            // so the file written next never waits for budget held by files behind it
+                            synchronized (claimLock) {
+                                index = next[0]++;
+                                if (index >= count) {
+                                    return null;
+                                }
+                                file = entries.get(index).file();
+                                if (isPrefetched(file)) {
+                                    budget.acquire(permits(file.getSize()));
+                                }
+                            }
+                            if (!isPrefetched(file)) {
+                                prefetched.get(index).complete(null);
+                                continue;
+                            }
+                            final ByteArrayOutputStream content = new ByteArrayOutputStream(file.getSize().intValue());
+                            // A plain download, never parallel or shared, so a worker does not wait for other tasks
+                            googleDriveService.downloadById(file.getId(), content);
+                            prefetched.get(index).complete(content.toByteArray());
+                        }
+                    } catch (Exception e) {
+                        for (int i = 0; i < count; i++) {
+                            final CompletableFuture<byte[]> content = prefetched.get(i);
+                            if (content != null) {
+                                content.completeExceptionally(e);
+                            }
+                        }
+                        throw e;
+                    }
+                });
+            }
+
+            final Set<String> names = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                final ArchiveEntry entry = entries.get(i);
+                final byte[] content = scope.join(prefetched.get(i));
+                prefetched.set(i, null);
+                writeEntry(zip, uniqueName(names, entry.path()), entry.file(), content);
+                if (content != null) {
+                    budget.release(permits(entry.file().getSize()));
+                }
+                zip.flush();
+            }
+            zip.finish();
+        }
+    }
+
+    /**
+     * Compressed content is stored when it is already in memory. Streamed compressed content is written DEFLATED at
+     * level 0 instead: {@link ZipOutputStream} needs the CRC-32 of a STORED entry before its first byte, and Drive only
+     * reports the size and MD5, so storing it would mean buffering or downloading the file twice. Level 0 emits raw
+     * blocks, costing a few bytes per 64 KiB and next to no CPU, with the CRC written in the data descriptor afterwards.
+     */
+    private void writeEntry(final ZipOutputStream zip, final String name, final GoogleDriveFileResponse file,
+                            final byte[] content) throws IOException {
+        final ZipEntry zipEntry = new ZipEntry(name);
+        final Instant modified = modifiedTime(file);
+        if (modified != null) {
+            zipEntry.setLastModifiedTime(FileTime.from(modified));
+        }
+        final boolean compressed = isCompressed(file.getMimeType());
+        if (compressed && content != null) {
+            final CRC32 crc = new CRC32();
+            crc.update(content);
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(content.length);
+            zipEntry.setCompressedSize(content.length);
+            zipEntry.setCrc(crc.getValue());
+        } else {
+            zip.setLevel(compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+        }
+        zip.putNextEntry(zipEntry);
+        if (content != null) {
+            zip.write(content);
+        } else {
+            googleDriveService.downloadFile(file, zip);
+        }
+        zip.closeEntry();
+    }
+
+    private boolean isPrefetched(final GoogleDriveFileResponse file) {
+        return file.getSize() != null && file.getSize() <= prefetchBudget;
+    }
+
+    /**
+     * Budget is counted in KiB, so a semaphore can hold it
+     */
+    private static int permits(final long bytes) {
+        return (int) Math.max(1, (bytes + 1023) / 1024);
+    }
+
+    static boolean isCompressed(final String mimeType) {
+        return mimeType != null && (COMPRESSED_MIME_TYPES.contains(mimeType)
+                || COMPRESSED_MIME_PREFIXES.stream().anyMatch(mimeType::startsWith));
+    }
+
+    private static boolean isDownloadable(final GoogleDriveFileResponse file) {
+        if (file.getMimeType() != null && file.getMimeType().startsWith(GOOGLE_APPS_MIME_PREFIX)) {
+            log.debug("Leaving FileId={} of type {} out of the archive", file.getId(), file.getMimeType());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drive allows slashes in names, which would otherwise create directories in the archive
+     */
+    private static String entryName(final GoogleDriveFileResponse file) {
+        final String name = file.getName() != null && !file.getName().isBlank() ? file.getName() : file.getId();
+        return name.replace('/', '_').replace('\\', '_');
+    }
+
+    /**
+     * Drive allows several files of the same name in a folder; later ones get a counter, e.g. {@code report (1).pdf}
+     */
+    private static String uniqueName(final Set<String> names, final String path) {
+        String name = path;
+        final int extension = path.lastIndexOf('.') > path.lastIndexOf('/') + 1 ? path.lastIndexOf('.') : path.length();
+        for (int counter = 1; !names.add(name); counter++) {
+            name = path.substring(0, extension) + " (" + counter + ")" + path.substring(extension);
+        }
+        return name;
+    }
+
+    private static Instant modifiedTime(final GoogleDriveFileResponse file) {
+        try {
+            return file.getLastModifiedDateTime() != null ? Instant.parse(file.getLastModifiedDateTime()) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Disk cache of downloaded file content, shared by all users. Entries are keyed by file id and the file's
+ * {@code md5Checksum}, or {@code version} for files without one, so a changed file is never served from a stale entry.
+ * Exports of Google Workspace documents are keyed by file id, target format and {@code modifiedTime} instead.
+ * Callers must resolve the file's metadata for the current user first, which is what checks access to the file.
+ * The total size is bounded by {@code gdrive.content-cache.maximum-size}, evicting the least recently used files.
+ * Hit, miss and eviction counts are published as {@code cache.*} metrics tagged {@code cache=gdrive.content},
+ * together with {@code gdrive.content.hit.ratio} and {@code gdrive.content.disk.usage}.
+ * Hits are handed out as open channels, so an entry evicted while it is being served is only unlinked from disk.
+ */
+@Component
+public class GoogleDriveContentCache {
+    private static final Logger log = LoggerFactory.getLogger(GoogleDriveContentCache.class);
+    private static final String CONTENT_SUFFIX = ".content";
+    private static final String PART_SUFFIX = ".part";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maximumFileSize;
+    private final Cache<Key, Entry> cache;
+
+    /**
+     * Writes the content of a file, e.g. by downloading it from Google Drive.
+     */
+    @FunctionalInterface
+    public interface ContentSource {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    @Autowired
+    public GoogleDriveContentCache(@NonNull final GoogleDriveProperties properties, @NonNull final MeterRegistry meterRegistry) {
+        final GoogleDriveProperties.ContentCache cacheProperties = properties.getContentCache();
+        this.enabled = cacheProperties.isEnabled();
+        this.directory = cacheProperties.getDirectory() != null
+                ? Path.of(cacheProperties.getDirectory())
+                : Path.of(System.getProperty("java.io.tmpdir"), "gdrive-content");
+        this.maximumFileSize = cacheProperties.getMaximumFileSize().toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1, cacheProperties.getMaximumSize().toKilobytes()))
+                .weigher((Key key, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, Math.max(1, entry.size() / 1024)))
+                .removalListener((Key key, Entry entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        deleteQuietly(entry.path());
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, this.cache, "gdrive.content");
+        Gauge.builder("gdrive.content.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Share of content cache lookups served from disk")
+                .register(meterRegistry);
+        Gauge.builder("gdrive.content.disk.usage", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L) * 1024d).orElse(0d))
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        if (enabled) {
+            prepareDirectory();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Channel reading the cached content of this exact file version, or null when it is not cached.
+     * The caller closes it; it stays readable when the entry is evicted meanwhile.
+     */
+    public FileChannel open(@NonNull final GoogleDriveFileResponse file) throws IOException {
+        return open(key(file));
+    }
+
+    /**
+     * @return Channel reading the cached export of this document version to the MIME type, or null when it is not cached.
+     * The caller closes it; it stays readable when the entry is evicted meanwhile.
+     */
+    public FileChannel openExport(@NonNull final GoogleDriveFileResponse file, @NonNull final String mimeType) throws IOException {
+        return open(exportKey(file, mimeType));
+    }
+
+    /**
+     * Write the file's content to the output stream, keeping a copy on disk when the file is cacheable.
+     * The copy is only added to the cache once the whole file has been written.
+     */
+    public void fill(@NonNull final GoogleDriveFileResponse file, @NonNull final ContentSource source,
+                     @NonNull final OutputStream outputStream) throws IOException {
+        if (file.getSize() == null || file.getSize() > maximumFileSize) {
+            source.writeTo(outputStream);
+            return;
+        }
+        fill(file.getId(), key(file), file.getSize(), source, outputStream);
+    }
+
+    /**
+     * Write the export of a document to the output stream, keeping a copy on disk unless it grows beyond
+     * {@code gdrive.content-cache.maximum-file-size}. Its size is not known up front.
+     */
+    public void fillExport(@NonNull final GoogleDriveFileResponse file, @NonNull final String mimeType,
+                           @NonNull final ContentSource source, @NonNull final OutputStream outputStream) throws IOException {
+        fill(file.getId(), exportKey(file, mimeType), null, source, outputStream);
+    }
+
+    private FileChannel open(final Key key) throws IOException {
+        if (!enabled || key == null) {
+            return null;
+        }
+        final Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return FileChannel.open(entry.path(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // Evicted and deleted since the lookup
+            return null;
+        }
+    }
+
+    private void fill(final String fileId, final Key key, final Long expectedSize, final ContentSource source,
+                      final OutputStream outputStream) throws IOException {
+        if (!enabled || key == null) {
+            source.writeTo(outputStream);
+            return;
+        }
+        final Path part = Files.createTempFile(directory, key.fileName() + "-", PART_SUFFIX);
+        try {
+            final TeeOutputStream tee;
+            try (OutputStream fileStream = Files.newOutputStream(part)) {
+                tee = new TeeOutputStream(outputStream, fileStream, maximumFileSize);
+                source.writeTo(tee);
+            }
+            if (tee.overflowed) {
+                log.debug("Not caching FileId={}: larger than {} bytes", fileId, maximumFileSize);
+                return;
+            }
+            final long size = Files.size(part);
+            if (expectedSize != null && size != expectedSize) {
+                log.warn("Not caching FileId={}: expected {} bytes but received {}", fileId, expectedSize, size);
+                return;
+            }
+            final String name = part.getFileName().toString();
+            final Path content = part.resolveSibling(name.substring(0, name.length() - PART_SUFFIX.length()) + CONTENT_SUFFIX);
+            Files.move(part, content, StandardCopyOption.ATOMIC_MOVE);
+            if (cache.asMap().putIfAbsent(key, new Entry(content, size)) != null) {
+                deleteQuietly(content);
+            }
+        } finally {
+            deleteQuietly(part);
+        }
+    }
+
+    /**
+     * Copy part of a cached file to the output stream. This is a buffered copy through the heap, not zero-copy:
+     * the stream is wrapped in a plain channel, which {@link FileChannel#transferTo} can only fill by reading the file
+     * into a buffer and writing that to the stream.
+     */
+    public static void transferTo(@NonNull final FileChannel channel, final long position, final long count,
+                                  @NonNull final OutputStream outputStream) throws IOException {
+        final WritableByteChannel target = Channels.newChannel(outputStream);
+        long transferred = 0;
+        while (transferred < count) {
+            final long sent = channel.transferTo(position + transferred, count - transferred, target);
+            if (sent <= 0) {
+                throw new IOException("Cached content ended early");
+            }
+            transferred += sent;
+        }
+    }
+
+    private void prepareDirectory() {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*{" + CONTENT_SUFFIX + "," + PART_SUFFIX + "}")) {
+                leftovers.forEach(GoogleDriveContentCache::deleteQuietly);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prepare content cache directory " + directory, e);
+        }
+    }
+
+    private static Key key(final GoogleDriveFileResponse file) {
+        if (file.getId() == null) {
+            return null;
+        }
+        if (file.getMd5Checksum() != null) {
+            return new Key(file.getId(), "md5:" + file.getMd5Checksum());
+        }
+        return file.getVersion() != null ? new Key(file.getId(), "version:" + file.getVersion()) : null;
+    }
+
+    private static Key exportKey(final GoogleDriveFileResponse file, final String mimeType) {
+        if (file.getId() == null || file.getLastModifiedDateTime() == null) {
+            return null;
+        }
+        return new Key(file.getId(), "export:" + mimeType + "@" + file.getLastModifiedDateTime());
+    }
+
+    private static void deleteQuietly(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cached content {}", path, e);
+        }
+    }
+
+    private record Key(String fileId, String validator) {
+        /**
+         * File ids are hashed, so that any id maps to a safe file name.
+         */
+        private String fileName() {
+            try {
+                final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return HexFormat.of().formatHex(digest.digest((fileId + "\n" + validator).getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private record Entry(Path path, long size) {
+    }
+
+    /**
+     * Copies everything written to a second stream, until the copy would exceed the limit.
+     */
+    private static final class TeeOutputStream extends FilterOutputStream {
+        private final OutputStream copy;
+        private final long limit;
+        private long copied;
+        private boolean overflowed;
+
+        private TeeOutputStream(final OutputStream out, final OutputStream copy, final long limit) {
+            super(out);
+            this.copy = copy;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            if (!overflowed && copied + len > limit) {
+                overflowed = true;
+            }
+            if (!overflowed) {
+                copy.write(b, off, len);
+                copied += len;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            if (!overflowed) {
+                copy.flush();
+            }
+        }
+
+        /**
+         * Both streams are closed by their owners.
+         */
+        @Override
+        public void close() {
+        }
+    }
+}
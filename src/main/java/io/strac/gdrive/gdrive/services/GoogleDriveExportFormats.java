@@ -0,0 +1,127 @@
+package io.strac.gdrive.gdrive.services;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formats Google Workspace documents can be exported to with Drive {@code files.export}, per document type.
+ * The first format of each type is the default.
+ */
+public final class GoogleDriveExportFormats {
+    private static final String WORKSPACE_MIME_PREFIX = "application/vnd.google-apps.";
+
+    /**
+     * @param extension File name extension, also accepted as the requested format
+     */
+    public record ExportFormat(String extension, String mimeType) {
+    }
+
+    private static final Map<String, List<ExportFormat>> FORMATS = Map.of(
+            "application/vnd.google-apps.document", List.of(
+                    new ExportFormat("pdf", "application/pdf"),
+                    new ExportFormat("docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document"),
+                    new ExportFormat("odt", "application/vnd.oasis.opendocument.text"),
+                    new ExportFormat("rtf", "application/rtf"),
+                    new ExportFormat("txt", "text/plain"),
+                    new ExportFormat("md", "text/markdown"),
+                    new ExportFormat("epub", "application/epub+zip"),
+                    new ExportFormat("zip", "application/zip")),
+            "application/vnd.google-apps.spreadsheet", List.of(
+                    new ExportFormat("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+                    new ExportFormat("pdf", "application/pdf"),
+                    new ExportFormat("csv", "text/csv"),
+                    new ExportFormat("tsv", "text/tab-separated-values"),
+                    new ExportFormat("ods", "application/vnd.oasis.opendocument.spreadsheet")),
+            "application/vnd.google-apps.presentation", List.of(
+                    new ExportFormat("pptx", "application/vnd.openxmlformats-officedocument.presentationml.presentation"),
+                    new ExportFormat("pdf", "application/pdf"),
+                    new ExportFormat("odp", "application/vnd.oasis.opendocument.presentation"),
+                    new ExportFormat("txt", "text/plain")),
+            "application/vnd.google-apps.drawing", List.of(
+                    new ExportFormat("pdf", "application/pdf"),
+                    new ExportFormat("png", "image/png"),
+                    new ExportFormat("jpg", "image/jpeg"),
+                    new ExportFormat("svg", "image/svg+xml")),
+            "application/vnd.google-apps.script", List.of(
+                    new ExportFormat("json", "application/vnd.google-apps.script+json")));
+
+    private GoogleDriveExportFormats() {
+    }
+
+    /**
+     * @return Whether the MIME type is a Google Workspace type without binary content, other than a folder
+     */
+    public static boolean isWorkspaceDocument(final String mimeType) {
+        return mimeType != null && mimeType.startsWith(WORKSPACE_MIME_PREFIX)
+                && !GoogleDriveArchiveService.FOLDER_MIME_TYPE.equals(mimeType);
+    }
+
+    /**
+     * Pick the export format of a document: the requested format by extension or MIME type, else the supported type
+     * the Accept header prefers, by quality and then specificity, else the default for the document type.
+     * Types refused with {@code q=0} are never picked from the Accept header, nor as the default when another format is not refused.
+     * @throws IllegalArgumentException When the document cannot be exported, or not to the requested format
+     */
+    public static ExportFormat resolve(final String documentMimeType, final String format, final String accept) {
+        final List<ExportFormat> formats = FORMATS.get(documentMimeType);
+        if (formats == null) {
+            throw new IllegalArgumentException("Google Drive cannot export files of type " + documentMimeType);
+        }
+        if (format != null) {
+            return formats.stream()
+                    .filter(candidate -> candidate.extension().equalsIgnoreCase(format) || candidate.mimeType().equalsIgnoreCase(format))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Cannot export %s as %s, supported formats are %s"
+                            .formatted(documentMimeType, format, formats.stream().map(ExportFormat::extension).toList())));
+        }
+        if (accept == null) {
+            return formats.getFirst();
+        }
+        final List<MediaType> bySpecificity;
+        try {
+            bySpecificity = new ArrayList<>(MediaType.parseMediaTypes(accept));
+            MimeTypeUtils.sortBySpecificity(bySpecificity);
+        } catch (InvalidMediaTypeException | InvalidMimeTypeException e) {
+            // An unparseable or oversized Accept header gets the default format
+            return formats.getFirst();
+        }
+        // Stable, so ranges of equal quality stay most specific first
+        final List<MediaType> byPreference = new ArrayList<>(bySpecificity);
+        byPreference.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType mediaType : byPreference) {
+            if (mediaType.isWildcardType() || mediaType.getQualityValue() == 0) {
+                continue;
+            }
+            for (ExportFormat candidate : formats) {
+                // A more specific range may give the candidate a lower quality, it is then picked at that range
+                if (mediaType.includes(MediaType.parseMediaType(candidate.mimeType()))
+                        && quality(candidate, bySpecificity) >= mediaType.getQualityValue()) {
+                    return candidate;
+                }
+            }
+        }
+        return formats.stream()
+                .filter(candidate -> quality(candidate, bySpecificity) != 0)
+                .findFirst()
+                .orElse(formats.getFirst());
+    }
+
+    /**
+     * @return Quality of the most specific range including the format, or -1 when no range includes it
+     */
+    private static double quality(final ExportFormat format, final List<MediaType> bySpecificity) {
+        final MediaType mediaType = MediaType.parseMediaType(format.mimeType());
+        return bySpecificity.stream()
+                .filter(range -> range.includes(mediaType))
+                .mapToDouble(MediaType::getQualityValue)
+                .findFirst()
+                .orElse(-1);
+    }
+}
@@ -0,0 +1,231 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
+import com.google.api.services.drive.model.FileList;
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static io.strac.gdrive.gdrive.services.GoogleDriveService.FILE_FIELDS;
+import static io.strac.gdrive.gdrive.services.GoogleDriveService.MAX_PAGE_SIZE;
+
+/**
+ * Local per-user index of Google Drive file metadata.
+ * A user's index is bootstrapped once with a full listing, then kept current by applying the Drive changes feed
+ * from the stored start page token whenever it is older than {@code gdrive.index.max-staleness}.
+ */
+@Component
+public class GoogleDriveFileIndex {
+    private static final Logger log = LoggerFactory.getLogger(GoogleDriveFileIndex.class);
+    private static final String CHANGE_FIELDS =
+            "nextPageToken, newStartPageToken, changes(changeType, fileId, removed, file(%s))".formatted(FILE_FIELDS);
+
+    private final boolean enabled;
+    private final Duration maxStaleness;
+    private final GoogleDriveIndexStore store;
+    private final GoogleDriveMetrics metrics;
+    private final Cache<DriveUser, UserIndex> indexes;
+
+    @Autowired
+    public GoogleDriveFileIndex(@NonNull final GoogleDriveProperties properties, @NonNull final GoogleDriveIndexStore store,
+                                @NonNull final GoogleDriveMetrics metrics) {
+        this.enabled = properties.getIndex().isEnabled();
+        this.maxStaleness = properties.getIndex().getMaxStaleness();
+        this.store = store;
+        this.metrics = metrics;
+        this.indexes = Caffeine.newBuilder()
+                .maximumSize(properties.getIndex().getMaximumUsers())
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return All indexed files of the user, no older than the configured staleness
+     */
+    public Collection<GoogleDriveFileResponse> files(@NonNull final DriveUser user, @NonNull final Drive client) throws IOException {
+        return sync(user, client).files.values();
+    }
+
+    /**
+     * @return The indexed file, or null when the user's index does not contain it
+     */
+    public GoogleDriveFileResponse get(@NonNull final DriveUser user, @NonNull final Drive client,
+                                       @NonNull final String fileId) throws IOException {
+        return sync(user, client).files.get(fileId);
+    }
+
+    /**
+     * @return An indexed file of the user with this content, or null when the user's index has none
+     */
+    public GoogleDriveFileResponse findByContent(@NonNull final DriveUser user, @NonNull final Drive client,
+                                                @NonNull final String md5Checksum, final long size) throws IOException {
+        final UserIndex index = sync(user, client);
+        final Set<String> fileIds = index.filesByChecksum.get(md5Checksum);
+        if (fileIds == null) {
+            return null;
+        }
+        for (String fileId : fileIds) {
+            final GoogleDriveFileResponse file = index.files.get(fileId);
+            if (file != null && file.getSize() != null && file.getSize() == size) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record a file the user has just created, ahead of the changes feed.
+     */
+    public void put(@NonNull final DriveUser user, @NonNull final GoogleDriveFileResponse file) {
+        final UserIndex index = indexes.getIfPresent(user);
+        if (index != null && file.getId() != null) {
+            index.put(file);
+        }
+    }
+
+    /**
+     * Drop a deleted file from every index, ahead of the changes feed.
+     */
+    public void remove(@NonNull final String fileId) {
+        indexes.asMap().values().forEach(index -> index.remove(fileId));
+    }
+
+    private UserIndex sync(final DriveUser user, final Drive client) throws IOException {
+        final UserIndex index = indexes.get(user, this::loadIndex);
+        if (index.isFresh(maxStaleness)) {
+            return index;
+        }
+        index.lock.lock();
+        try {
+            if (index.isFresh(maxStaleness)) {
+                return index;
+            }
+            final boolean changed = index.startPageToken == null ? bootstrap(client, index) : applyChanges(client, index);
+            index.syncedAt = Instant.now();
+            if (changed) {
+                store.save(user, new GoogleDriveIndexStore.Snapshot(index.startPageToken, new ArrayList<>(index.files.values())));
+            }
+            return index;
+        } finally {
+            index.lock.unlock();
+        }
+    }
+
+    private UserIndex loadIndex(final DriveUser user) {
+        final UserIndex index = new UserIndex();
+        store.load(user).ifPresent(snapshot -> {
+            index.startPageToken = snapshot.startPageToken();
+            snapshot.files().forEach(file -> index.put(file));
+        });
+        return index;
+    }
+
+    /**
+     * The start page token is taken before listing, so changes made during the listing are replayed afterwards.
+     */
+    private boolean bootstrap(final Drive client, final UserIndex index) throws IOException {
+        final String startPageToken = metrics.observe("changes.getStartPageToken",
+                client.changes().getStartPageToken()::execute).getStartPageToken();
+        String pageToken = null;
+        do {
+            final FileList page = metrics.observe("list", client.files()
+                    .list()
+                    .setPageSize(MAX_PAGE_SIZE)
+                    .setFields("nextPageToken, files(%s)".formatted(FILE_FIELDS))
+                    .setPageToken(pageToken)::execute);
+            page.getFiles().forEach(file -> index.put(new GoogleDriveFileResponse(file)));
+            pageToken = page.getNextPageToken();
+        } while (pageToken != null);
+        index.startPageToken = startPageToken;
+        log.info("Bootstrapped file index with {} files", index.files.size());
+        return true;
+    }
+
+    private boolean applyChanges(final Drive client, final UserIndex index) throws IOException {
+        final String startPageToken = index.startPageToken;
+        int applied = 0;
+        String pageToken = startPageToken;
+        while (pageToken != null) {
+            final ChangeList changes = metrics.observe("changes.list", client.changes()
+                    .list(pageToken)
+                    .setPageSize(MAX_PAGE_SIZE)
+                    .setFields(CHANGE_FIELDS)::execute);
+            for (Change change : changes.getChanges()) {
+                if ("drive".equals(change.getChangeType())) {
+                    continue;
+                }
+                if (Boolean.TRUE.equals(change.getRemoved()) || change.getFile() == null) {
+                    index.remove(change.getFileId());
+                } else {
+                    index.put(new GoogleDriveFileResponse(change.getFile()));
+                }
+                applied++;
+            }
+            if (changes.getNewStartPageToken() != null) {
+                index.startPageToken = changes.getNewStartPageToken();
+            }
+            pageToken = changes.getNextPageToken();
+        }
+        return applied > 0 || !startPageToken.equals(index.startPageToken);
+    }
+
+    private static final class UserIndex {
+        private final Map<String, GoogleDriveFileResponse> files = new ConcurrentHashMap<>();
+        private final Map<String, Set<String>> filesByChecksum = new ConcurrentHashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile String startPageToken;
+        private volatile Instant syncedAt;
+
+        private void put(final GoogleDriveFileResponse file) {
+            final GoogleDriveFileResponse previous = files.put(file.getId(), file);
+            unlinkChecksum(previous);
+            if (file.getMd5Checksum() != null) {
+                filesByChecksum.compute(file.getMd5Checksum(), (checksum, fileIds) -> {
+                    final Set<String> ids = fileIds != null ? fileIds : ConcurrentHashMap.newKeySet();
+                    ids.add(file.getId());
+                    return ids;
+                });
+            }
+        }
+
+        private void remove(final String fileId) {
+            unlinkChecksum(files.remove(fileId));
+        }
+
+        private void unlinkChecksum(final GoogleDriveFileResponse file) {
+            if (file == null || file.getMd5Checksum() == null) {
+                return;
+            }
+            filesByChecksum.computeIfPresent(file.getMd5Checksum(), (checksum, fileIds) -> {
+                fileIds.remove(file.getId());
+                return fileIds.isEmpty() ? null : fileIds;
+            });
+        }
+
+        private boolean isFresh(final Duration maxStaleness) {
+            return syncedAt != null && syncedAt.plus(maxStaleness).isAfter(Instant.now());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package io.strac.gdrive.gdrive.services;
+
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the pages of a listing that is walked server-side, in order.
+ */
+@FunctionalInterface
+public interface GoogleDriveFilePageHandler {
+    void onPage(List<GoogleDriveFileResponse> files) throws IOException;
+}
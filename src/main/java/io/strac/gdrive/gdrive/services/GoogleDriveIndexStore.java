@@ -0,0 +1,84 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Persists each user's file index together with the Drive changes start page token it is current up to,
+ * one JSON file per user under {@code gdrive.index.storage-directory}.
+ * The index is a cache of Drive, so read and write failures are logged and otherwise ignored.
+ */
+@Component
+public class GoogleDriveIndexStore {
+    private static final Logger log = LoggerFactory.getLogger(GoogleDriveIndexStore.class);
+
+    private static final String SNAPSHOT_SUFFIX = "-v2.json";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+
+    public record Snapshot(String startPageToken, List<GoogleDriveFileResponse> files) {
+    }
+
+    @Autowired
+    public GoogleDriveIndexStore(@NonNull final GoogleDriveProperties properties, @NonNull final ObjectMapper objectMapper) {
+        final String storageDirectory = properties.getIndex().getStorageDirectory();
+        this.directory = storageDirectory != null ? Path.of(storageDirectory) : null;
+        this.objectMapper = objectMapper;
+    }
+
+    public Optional<Snapshot> load(@NonNull final DriveUser user) {
+        if (directory == null || !Files.exists(path(user))) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(path(user).toFile(), Snapshot.class));
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable file index {}", path(user), e);
+            return Optional.empty();
+        }
+    }
+
+    public void save(@NonNull final DriveUser user, @NonNull final Snapshot snapshot) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            final Path temporary = Files.createTempFile(directory, "index", ".tmp");
+            objectMapper.writeValue(temporary.toFile(), snapshot);
+            Files.move(temporary, path(user), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not persist file index {}", path(user), e);
+        }
+    }
+
+    private Path path(final DriveUser user) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((user.registrationId() + "\n" + user.principalName()).getBytes(StandardCharsets.UTF_8));
+            // Versioned, so indexes saved before files carried quotaBytesUsed are rebuilt rather than sorted on nulls
+            return directory.resolve(HexFormat.of().formatHex(digest) + SNAPSHOT_SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of Google Drive file metadata, kept per user so that one user's view of a file is never served to another.
+ * Entries expire after {@code gdrive.metadata-cache.time-to-live}; hit, miss and eviction counts are published
+ * as {@code cache.*} metrics tagged {@code cache=gdrive.metadata}.
+ * Cached keys are indexed by file id, so that invalidating a file does not scan the cache.
+ */
+@Component
+public class GoogleDriveMetadataCache {
+    private final Cache<Key, GoogleDriveFileResponse> cache;
+    private final Map<String, Set<Key>> keysByFileId = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GoogleDriveMetadataCache(@NonNull final GoogleDriveProperties properties, @NonNull final MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMetadataCache().getMaximumSize())
+                .expireAfterWrite(properties.getMetadataCache().getTimeToLive())
+                .recordStats()
+                // Runs atomically with the eviction, so it cannot interleave with a put of the same key
+                .evictionListener((Key key, GoogleDriveFileResponse file, RemovalCause cause) -> {
+                    if (key != null) {
+                        unlink(key);
+                    }
+                })
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, this.cache, "gdrive.metadata");
+    }
+
+    /**
+     * @return Cached metadata, or null when the file is not cached for this user
+     */
+    public GoogleDriveFileResponse get(final DriveUser user, @NonNull final String fileId) {
+        return cache.getIfPresent(new Key(user, fileId));
+    }
+
+    public void put(final DriveUser user, @NonNull final GoogleDriveFileResponse file) {
+        if (file.getId() != null) {
+            cache.asMap().compute(new Key(user, file.getId()), (key, previous) -> {
+                link(key);
+                return file;
+            });
+        }
+    }
+
+    /**
+     * Drop a file for every user, e.g. after it has been deleted.
+     */
+    public void invalidate(@NonNull final String fileId) {
+        final Set<Key> keys = keysByFileId.remove(fileId);
+        if (keys != null) {
+            cache.invalidateAll(keys);
+        }
+    }
+
+    private void link(final Key key) {
+        keysByFileId.compute(key.fileId(), (fileId, keys) -> {
+            final Set<Key> linked = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            linked.add(key);
+            return linked;
+        });
+    }
+
+    private void unlink(final Key key) {
+        keysByFileId.computeIfPresent(key.fileId(), (fileId, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private record Key(DriveUser user, String fileId) {
+    }
+}
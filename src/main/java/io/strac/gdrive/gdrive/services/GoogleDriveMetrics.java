@@ -0,0 +1,216 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.strac.gdrive.gdrive.clients.DriveRateLimitedException;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Instrumentation of Google Drive operations. Each operation is an observation named {@code gdrive.operation},
+ * tagged with {@code operation} and the Drive error {@code reason} ({@code none} on success). It is recorded
+ * as a timer, and as a tracing span nested in the HTTP request span, which separates Drive latency from our own.
+ * Failures are also counted in {@code gdrive.errors}, transferred content in {@code gdrive.transfer.bytes},
+ * and running transfers are gauged in {@code gdrive.transfers.active}, all tagged by {@code direction}.
+ * Requests served by joining an identical Drive call already in flight are counted in {@code gdrive.coalesced}.
+ */
+@Component
+public class GoogleDriveMetrics {
+    private static final String DOWNLOAD = "download";
+    private static final String UPLOAD = "upload";
+
+    private final ObservationRegistry observationRegistry;
+    private final MeterRegistry meterRegistry;
+    private final Counter downloadedBytes;
+    private final Counter uploadedBytes;
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+    private final AtomicInteger activeUploads = new AtomicInteger();
+
+    /**
+     * A Drive call to observe
+     */
+    @FunctionalInterface
+    public interface DriveCall<T> {
+        T call() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface DownloadCall {
+        void download(OutputStream outputStream) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface UploadCall<T> {
+        T upload(InputStream inputStream) throws IOException;
+    }
+
+    @Autowired
+    public GoogleDriveMetrics(@NonNull final ObservationRegistry observationRegistry, @NonNull final MeterRegistry meterRegistry) {
+        this.observationRegistry = observationRegistry;
+        this.meterRegistry = meterRegistry;
+        this.downloadedBytes = Counter.builder("gdrive.transfer.bytes")
+                .tag("direction", DOWNLOAD)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.uploadedBytes = Counter.builder("gdrive.transfer.bytes")
+                .tag("direction", UPLOAD)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        meterRegistry.gauge("gdrive.transfers.active", Tags.of("direction", DOWNLOAD), activeDownloads);
+        meterRegistry.gauge("gdrive.transfers.active", Tags.of("direction", UPLOAD), activeUploads);
+    }
+
+    public <T> T observe(@NonNull final String operation, @NonNull final DriveCall<T> call) throws IOException {
+        final Observation observation = Observation.createNotStarted("gdrive.operation", observationRegistry)
+                .contextualName("gdrive " + operation)
+                .lowCardinalityKeyValue("operation", operation)
+                .start();
+        String reason = "none";
+        try (Observation.Scope ignored = observation.openScope()) {
+            return call.call();
+        } catch (IOException | RuntimeException e) {
+            reason = reason(e);
+            observation.error(e);
+            meterRegistry.counter("gdrive.errors", "operation", operation, "reason", reason).increment();
+            throw e;
+        } finally {
+            observation.lowCardinalityKeyValue("reason", reason);
+            observation.stop();
+        }
+    }
+
+    /**
+     * Observe a download, counting the bytes written to the output stream while it runs.
+     */
+    public void observeDownload(@NonNull final String operation, @NonNull final OutputStream outputStream,
+                                @NonNull final DownloadCall call) throws IOException {
+        activeDownloads.incrementAndGet();
+        try {
+            observe(operation, () -> {
+                call.download(new CountingOutputStream(outputStream, downloadedBytes));
+                return null;
+            });
+        } finally {
+            activeDownloads.decrementAndGet();
+        }
+    }
+
+    /**
+     * Observe an upload, counting the bytes read from the input stream while it runs.
+     */
+    public <T> T observeUpload(@NonNull final InputStream inputStream, @NonNull final UploadCall<T> call) throws IOException {
+        activeUploads.incrementAndGet();
+        try {
+            return observe(UPLOAD, () -> call.upload(new CountingInputStream(inputStream, uploadedBytes)));
+        } finally {
+            activeUploads.decrementAndGet();
+        }
+    }
+
+    /**
+     * Count a failure reported for a single item of a batch request.
+     */
+    public void countError(@NonNull final String operation, @NonNull final GoogleJsonError error) {
+        final String reason = error.getErrors() != null && !error.getErrors().isEmpty()
+                ? error.getErrors().getFirst().getReason()
+                : "http" + error.getCode();
+        meterRegistry.counter("gdrive.errors", "operation", operation, "reason", reason).increment();
+    }
+
+    /**
+     * Count a request that was answered by a Drive call made for another request.
+     */
+    public void countCoalesced(@NonNull final String operation) {
+        meterRegistry.counter("gdrive.coalesced", "operation", operation).increment();
+    }
+
+    /**
+     * Count an upload whose content was already in Drive and was not sent, by what it resulted in.
+     */
+    public void countDeduplicated(@NonNull final String mode) {
+        meterRegistry.counter("gdrive.upload.deduplicated", "mode", mode).increment();
+    }
+
+    /**
+     * @return Low-cardinality reason of a failure, preferring the reason reported by Google Drive
+     */
+    static String reason(final Exception e) {
+        if (e instanceof DriveRateLimitedException) {
+            return "rateLimited";
+        }
+        if (e instanceof GoogleJsonResponseException jsonException && jsonException.getDetails() != null
+                && jsonException.getDetails().getErrors() != null && !jsonException.getDetails().getErrors().isEmpty()) {
+            return jsonException.getDetails().getErrors().getFirst().getReason();
+        }
+        if (e instanceof HttpResponseException responseException) {
+            return "http" + responseException.getStatusCode();
+        }
+        if (e instanceof InterruptedIOException) {
+            return "interrupted";
+        }
+        return e instanceof IOException ? "io" : "internal";
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final Counter counter;
+
+        private CountingOutputStream(final OutputStream out, final Counter counter) {
+            super(out);
+            this.counter = counter;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            counter.increment();
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            counter.increment(len);
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final Counter counter;
+
+        private CountingInputStream(final InputStream in, final Counter counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b >= 0) {
+                counter.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = in.read(b, off, len);
+            if (read > 0) {
+                counter.increment(read);
+            }
+            return read;
+        }
+    }
+}
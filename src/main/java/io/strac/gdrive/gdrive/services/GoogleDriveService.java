@@ -1,78 +1,454 @@
 package io.strac.gdrive.gdrive.services;
 
-import com.google.api.client.http.FileContent;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClientRequest;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.InputStreamContent;
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
+import io.strac.gdrive.gdrive.clients.DriveRetryPolicy;
+import io.strac.gdrive.gdrive.clients.DriveUser;
 import io.strac.gdrive.gdrive.clients.GoogleDriveClientFactory;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveBatchResult;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileQuery;
 import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
 import io.strac.gdrive.gdrive.models.GoogleDriveFileListResponse;
 import lombok.NonNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static io.strac.gdrive.gdrive.config.GoogleDriveExecutorConfiguration.DRIVE_SHARED_DOWNLOAD_EXECUTOR;
+import static io.strac.gdrive.gdrive.config.GoogleDriveExecutorConfiguration.DRIVE_TASK_EXECUTOR;
 
 @Service
 public class GoogleDriveService {
-    public static final String FILE_FIELDS = "id, name, mimeType, size, modifiedTime";
+    public static final String FILE_FIELDS = "id, name, mimeType, size, modifiedTime, md5Checksum, version, quotaBytesUsed, capabilities/canDownload";
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 100;
+    private static final String INDEX_PAGE_TOKEN_PREFIX = "index:";
 
     private final GoogleDriveClientFactory driveClientFactory;
+    private final GoogleDriveMetadataCache metadataCache;
+    private final GoogleDriveFileIndex fileIndex;
+    private final GoogleDriveMetrics metrics;
+    private final AsyncTaskExecutor taskExecutor;
+    private final int defaultPageSize;
+    private final int uploadChunkSize;
+    private final GoogleDriveProperties.Retry retryProperties;
+    private final GoogleDriveProperties.Download.Parallel parallelProperties;
+    private final ParallelRangeDownload parallelDownload;
+    private final DriveSingleFlight singleFlight;
+    private final SharedDownloads sharedDownloads;
+    private final GoogleDriveProperties.Upload.Dedup dedupProperties;
 
     private static final Logger log = LoggerFactory.getLogger(GoogleDriveService.class);
-    private static final int MAX_PAGE_SIZE = 5;
 
     @Autowired
-    public GoogleDriveService(@NonNull final GoogleDriveClientFactory driveClientFactory) {
+    public GoogleDriveService(@NonNull final GoogleDriveClientFactory driveClientFactory,
+                              @NonNull final GoogleDriveMetadataCache metadataCache,
+                              @NonNull final GoogleDriveFileIndex fileIndex,
+                              @NonNull final GoogleDriveMetrics metrics,
+                              @NonNull @Qualifier(DRIVE_TASK_EXECUTOR) final AsyncTaskExecutor taskExecutor,
+                              @NonNull @Qualifier(DRIVE_SHARED_DOWNLOAD_EXECUTOR) final AsyncTaskExecutor sharedDownloadExecutor,
+                              @NonNull final GoogleDriveProperties properties) {
         this.driveClientFactory = driveClientFactory;
+        this.metadataCache = metadataCache;
+        this.fileIndex = fileIndex;
+        this.metrics = metrics;
+        this.taskExecutor = taskExecutor;
+        this.defaultPageSize = properties.getListing().getDefaultPageSize();
+        this.retryProperties = properties.getRetry();
+        this.parallelProperties = properties.getDownload().getParallel();
+        this.parallelDownload = new ParallelRangeDownload(taskExecutor, parallelProperties, retryProperties.getInitialInterval());
+        this.singleFlight = new DriveSingleFlight(properties.getCoalescing().isEnabled(), metrics);
+        final GoogleDriveProperties.Download.Shared sharedProperties = properties.getDownload().getShared();
+        this.sharedDownloads = sharedProperties.isEnabled()
+                ? new SharedDownloads(sharedDownloadExecutor, sharedProperties.getBufferSize().toBytes(), metrics)
+                : null;
+        this.dedupProperties = properties.getUpload().getDedup();
+        final int chunkSize = (int) properties.getUpload().getChunkSize().toBytes();
+        this.uploadChunkSize = Math.max(MediaHttpUploader.MINIMUM_CHUNK_SIZE,
+                chunkSize / MediaHttpUploader.MINIMUM_CHUNK_SIZE * MediaHttpUploader.MINIMUM_CHUNK_SIZE);
     }
 
     /**
-     * @implNote Add querying, pagination support.
+     * Listed files are added to the metadata cache, so that following downloads can skip the metadata request.
+     * With {@code gdrive.index.enabled}, files are served from the local index instead of Google Drive.
+     * @param pageSize Files per page, up to {@link #MAX_PAGE_SIZE}. Defaults to {@code gdrive.listing.default-page-size}.
      * @return List of Google Drive Files
      */
-    public GoogleDriveFileListResponse getFilesPaginated(final String nextPageToken) throws IOException {
-        FileList result = this.driveClientFactory.createClient()
-                .files()
+    public GoogleDriveFileListResponse getFilesPaginated(final String nextPageToken, final Integer pageSize) throws IOException {
+        return findFiles(DriveFileQuery.ALL, nextPageToken, pageSize);
+    }
+
+    /**
+     * Filters, order and field projection are passed to Google Drive, so only matching files and requested fields
+     * are transferred. Size bounds are applied to each page afterwards, so pages may hold fewer files than requested.
+     * @param pageSize Files per page, up to {@link #MAX_PAGE_SIZE}. Defaults to {@code gdrive.listing.default-page-size}.
+     * @return List of matching Google Drive Files
+     * @throws IllegalArgumentException When the query names unsupported fields or sort keys, or the page token is invalid
+     */
+    public GoogleDriveFileListResponse getFilesPaginated(final GoogleDriveFileQuery query, final String nextPageToken,
+                                                         final Integer pageSize) throws IOException {
+        return findFiles(DriveFileQuery.of(query), nextPageToken, pageSize);
+    }
+
+    /**
+     * Search the current user's files by name
+     * @param name Case-insensitive part of the file name
+     * @return Matching Google Drive Files
+     * @throws IllegalArgumentException When the page token is invalid
+     */
+    public GoogleDriveFileListResponse searchByName(@NonNull final String name, final String nextPageToken,
+                                                    final Integer pageSize) throws IOException {
+        return findFiles(DriveFileQuery.of(GoogleDriveFileQuery.builder().name(name).build()), nextPageToken, pageSize);
+    }
+
+    private GoogleDriveFileListResponse findFiles(final DriveFileQuery query, final String nextPageToken,
+                                                  final Integer pageSize) throws IOException {
+        final DriveUser user = this.driveClientFactory.currentUser();
+        final Drive client = this.driveClientFactory.createClient(user);
+        if (fileIndex.isEnabled() && query.isIndexable()) {
+            final int offset = indexOffset(nextPageToken);
+            return indexPage(indexedFiles(user, client, query), query, offset, resolvePageSize(pageSize));
+        }
+        if (nextPageToken != null && nextPageToken.startsWith(INDEX_PAGE_TOKEN_PREFIX)) {
+            throw new IllegalArgumentException("Page token was issued by the file index, which does not serve this query");
+        }
+        final int resolvedPageSize = resolvePageSize(pageSize);
+        final DriveSingleFlight.Key key = new DriveSingleFlight.Key("list", user,
+                Arrays.asList(query.driveQuery(), query.driveOrderBy(), query.driveFields(), nextPageToken, resolvedPageSize));
+        final FileList result = singleFlight.execute(key, () -> listPage(client, query, nextPageToken, resolvedPageSize));
+        final List<GoogleDriveFileResponse> files = toFileModels(user, result, query)
+                .stream()
+                .filter(query.driveFilter())
+                .map(query.projection())
+                .toList();
+        return new GoogleDriveFileListResponse(files, result.getNextPageToken());
+    }
+
+    /**
+     * Walk every page of the current user's files, handing each page to the handler in order.
+     * The next page is requested while the current one is being handled, so Drive round trips overlap
+     * with writing results, and no more than two pages are held in memory at a time.
+     * @param pageSize Files per page, up to {@link #MAX_PAGE_SIZE}. Defaults to {@code gdrive.listing.default-page-size}.
+     */
+    public void listAllFiles(final Integer pageSize, @NonNull final GoogleDriveFilePageHandler handler) throws IOException {
+        final DriveUser user = this.driveClientFactory.currentUser();
+        final Drive client = this.driveClientFactory.createClient(user);
+        final int resolvedPageSize = resolvePageSize(pageSize);
+
+        if (fileIndex.isEnabled()) {
+            final List<GoogleDriveFileResponse> files = indexedFiles(user, client, DriveFileQuery.ALL);
+            for (int from = 0; from < files.size(); from += resolvedPageSize) {
+                handler.onPage(files.subList(from, Math.min(from + resolvedPageSize, files.size())));
+            }
+            return;
+        }
+
+        FileList page = listPage(client, DriveFileQuery.ALL, null, resolvedPageSize);
+        while (true) {
+            final String nextPageToken = page.getNextPageToken();
+            final Future<FileList> nextPage = nextPageToken != null
+                    ? taskExecutor.submit(() -> listPage(client, DriveFileQuery.ALL, nextPageToken, resolvedPageSize))
+                    : null;
+            try {
+                handler.onPage(toFileModels(user, page, DriveFileQuery.ALL));
+            } catch (IOException | RuntimeException e) {
+                if (nextPage != null) {
+                    nextPage.cancel(true);
+                }
+                throw e;
+            }
+            if (nextPage == null) {
+                return;
+            }
+            page = await(nextPage);
+        }
+    }
+
+    private FileList listPage(final Drive client, final DriveFileQuery query, final String pageToken,
+                              final int pageSize) throws IOException {
+        final Drive.Files.List request = client.files()
                 .list()
-                .setPageSize(MAX_PAGE_SIZE)
-                .setFields("nextPageToken, files(%s)".formatted(FILE_FIELDS))
-                .setPageToken(nextPageToken)
-                .execute();
-        final List<GoogleDriveFileResponse> fileModels = result.getFiles()
+                .setPageSize(pageSize)
+                .setFields("nextPageToken, files(%s)".formatted(query.driveFields()))
+                .setPageToken(pageToken);
+        if (query.driveQuery() != null) {
+            request.setQ(query.driveQuery());
+        }
+        if (query.driveOrderBy() != null) {
+            request.setOrderBy(query.driveOrderBy());
+        }
+        return metrics.observe("list", request::execute);
+    }
+
+    private List<GoogleDriveFileResponse> indexedFiles(final DriveUser user, final Drive client,
+                                                       final DriveFileQuery query) throws IOException {
+        return fileIndex.files(user, client)
+                .stream()
+                .filter(query.indexFilter())
+                .sorted(query.indexOrder())
+                .toList();
+    }
+
+    /**
+     * Index pages are addressed by offset into the sorted matching files, in tokens of the form {@code index:<offset>}.
+     * Drive page tokens are refused rather than restarting from the first page, so a client cannot loop on them.
+     * @return Offset of the page, 0 without a token
+     * @throws IllegalArgumentException When the token was not issued by the index, or its offset is malformed
+     */
+    static int indexOffset(final String pageToken) {
+        if (pageToken == null) {
+            return 0;
+        }
+        if (!pageToken.startsWith(INDEX_PAGE_TOKEN_PREFIX)) {
+            throw new IllegalArgumentException("Page token was not issued by the file index: " + pageToken);
+        }
+        final int offset;
+        try {
+            offset = Integer.parseInt(pageToken.substring(INDEX_PAGE_TOKEN_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed page token: " + pageToken, e);
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("Malformed page token: " + pageToken);
+        }
+        return offset;
+    }
+
+    private static GoogleDriveFileListResponse indexPage(final List<GoogleDriveFileResponse> files, final DriveFileQuery query,
+                                                         final int from, final int pageSize) {
+        final int to = (int) Math.min((long) from + pageSize, files.size());
+        final String nextPageToken = to < files.size() ? INDEX_PAGE_TOKEN_PREFIX + to : null;
+        return new GoogleDriveFileListResponse(
+                files.subList(Math.min(from, to), to).stream().map(query.projection()).toList(), nextPageToken);
+    }
+
+    /**
+     * Only files carrying every field are added to the metadata cache.
+     */
+    private List<GoogleDriveFileResponse> toFileModels(final DriveUser user, final FileList fileList, final DriveFileQuery query) {
+        final List<GoogleDriveFileResponse> fileModels = fileList.getFiles()
                 .stream()
                 .map(GoogleDriveFileResponse::new)
                 .toList();
-        return new GoogleDriveFileListResponse(fileModels, result.getNextPageToken());
+        if (query.isFullProjection()) {
+            fileModels.forEach(file -> metadataCache.put(user, file));
+        }
+        return fileModels;
+    }
+
+    private int resolvePageSize(final Integer pageSize) {
+        return Math.clamp(pageSize != null ? pageSize : defaultPageSize, 1, MAX_PAGE_SIZE);
+    }
+
+    private static <T> T await(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Google Drive");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(e.getCause());
+        }
     }
 
     /**
-     * @return Returns a single Google Drive File
+     * Concurrent lookups of the same file by the same user share one Drive request.
+     * @return Returns a single Google Drive File, from the metadata cache or the local index when possible
      */
     public GoogleDriveFileResponse getById(@NonNull String fileId) throws IOException {
-        final File file = this.driveClientFactory.createClient()
-                .files()
-                .get(fileId)
-                .setFields(FILE_FIELDS)
-                .execute();
-        return new GoogleDriveFileResponse(file);
+        final DriveUser user = this.driveClientFactory.currentUser();
+        final GoogleDriveFileResponse cached = metadataCache.get(user, fileId);
+        if (cached != null) {
+            return cached;
+        }
+        final Drive client = this.driveClientFactory.createClient(user);
+        if (fileIndex.isEnabled()) {
+            final GoogleDriveFileResponse indexed = fileIndex.get(user, client, fileId);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+        return singleFlight.execute(new DriveSingleFlight.Key("get", user, fileId), () -> {
+            final File file = metrics.observe("get", client
+                    .files()
+                    .get(fileId)
+                    .setFields(FILE_FIELDS)::execute);
+            final GoogleDriveFileResponse fileModel = new GoogleDriveFileResponse(file);
+            metadataCache.put(user, fileModel);
+            return fileModel;
+        });
     }
 
     /**
      * Download a Google Drive File to an OutputStream
      *
-     * @implNote This does not support Google Docs/Sheets/Slides. Only user uploaded content.
+     * @implNote This does not support Google Docs/Sheets/Slides, see {@link #exportFile}. Only user uploaded content.
      */
     public void downloadById(@NonNull String fileId, final OutputStream outputStream) throws IOException {
         log.info("Download File {}", fileId);
-        this.driveClientFactory.createClient()
+        final Drive.Files.Get request = this.driveClientFactory.createClient()
                 .files()
                 .get(fileId)
-                .setFields(FILE_FIELDS)
-                .executeMediaAndDownloadTo(outputStream);
+                .setFields(FILE_FIELDS);
+        metrics.observeDownload("download", outputStream, request::executeMediaAndDownloadTo);
+    }
+
+    /**
+     * Export a Google Docs/Sheets/Slides document to an OutputStream, converted to the MIME type.
+     * Google Drive limits exported content to 10MB.
+     */
+    public void exportFile(@NonNull GoogleDriveFileResponse file, @NonNull String mimeType,
+                           final OutputStream outputStream) throws IOException {
+        log.info("Export File {} as {}", file.getId(), mimeType);
+        final Drive.Files.Export request = this.driveClientFactory.createClient()
+                .files()
+                .export(file.getId(), mimeType);
+        metrics.observeDownload("export", outputStream, request::executeMediaAndDownloadTo);
+    }
+
+    /**
+     * Download a Google Drive File whose metadata is already known to an OutputStream.
+     * With {@code gdrive.download.parallel.enabled}, files of at least {@code gdrive.download.parallel.threshold}
+     * are fetched as several byte ranges at once and written in order.
+     * With {@code gdrive.download.shared.enabled}, concurrent downloads of the same file version share one download
+     * from Google Drive, as long as the metadata of each says its user may download the file.
+     *
+     * @implNote This does not support Google Docs/Sheets/Slides, see {@link #exportFile}. Only user uploaded content.
+     */
+    public void downloadFile(@NonNull GoogleDriveFileResponse file, final OutputStream outputStream) throws IOException {
+        final String contentKey = sharedDownloads != null ? sharedContentKey(file) : null;
+        if (contentKey != null) {
+            sharedDownloads.copyTo(contentKey, content -> fetchFile(file, content), outputStream);
+            return;
+        }
+        fetchFile(file, outputStream);
+    }
+
+    private void fetchFile(final GoogleDriveFileResponse file, final OutputStream outputStream) throws IOException {
+        if (!isParallelDownload(file)) {
+            downloadById(file.getId(), outputStream);
+            return;
+        }
+        log.info("Download File {} in parallel ranges", file.getId());
+        final ParallelRangeDownload.RangeSource source = rangeSource(this.driveClientFactory.createClient(), file.getId());
+        metrics.observe("downloadParallel", () -> {
+            parallelDownload.copyTo(file.getSize(), source, outputStream);
+            return null;
+        });
+    }
+
+    /**
+     * Content is only shared for files the user may download, and only for an exact version of the content.
+     * @return Key of the file's content, or null when it must not be shared
+     */
+    private static String sharedContentKey(final GoogleDriveFileResponse file) {
+        if (file.getId() == null || !Boolean.TRUE.equals(file.getCanDownload())) {
+            return null;
+        }
+        if (file.getMd5Checksum() != null) {
+            return file.getId() + "@md5:" + file.getMd5Checksum();
+        }
+        return file.getVersion() != null ? file.getId() + "@version:" + file.getVersion() : null;
+    }
+
+    /**
+     * Download a Google Drive File whose metadata is already known into a local file, replacing its content.
+     * Large files are fetched as parallel byte ranges, each written at its position in the file.
+     *
+     * @implNote This does not support Google Docs/Sheets/Slides, see {@link #exportFile}. Only user uploaded content.
+     */
+    public void downloadToFile(@NonNull GoogleDriveFileResponse file, @NonNull Path destination) throws IOException {
+        try (FileChannel channel = FileChannel.open(destination,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (!isParallelDownload(file)) {
+                downloadById(file.getId(), Channels.newOutputStream(channel));
+                return;
+            }
+            log.info("Download File {} in parallel ranges to {}", file.getId(), destination);
+            final ParallelRangeDownload.RangeSource source = rangeSource(this.driveClientFactory.createClient(), file.getId());
+            metrics.observe("downloadParallel", () -> {
+                parallelDownload.copyTo(file.getSize(), source, channel);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Download an inclusive byte range of a Google Drive File to an OutputStream.
+     * The range is passed through to Google Drive, so only the requested bytes are transferred.
+     *
+     * @implNote This does not support Google Docs/Sheets/Slides, see {@link #exportFile}. Only user uploaded content.
+     */
+    public void downloadRangeById(@NonNull String fileId, final long firstBytePos, final long lastBytePos,
+                                  final OutputStream outputStream) throws IOException {
+        log.info("Download File {} bytes={}-{}", fileId, firstBytePos, lastBytePos);
+        rangeSource(this.driveClientFactory.createClient(), fileId).download(firstBytePos, lastBytePos, outputStream);
+    }
+
+    private boolean isParallelDownload(final GoogleDriveFileResponse file) {
+        return parallelProperties.isEnabled() && file.getSize() != null
+                && file.getSize() >= parallelProperties.getThreshold().toBytes();
+    }
+
+    /**
+     * Ranges are requested with the client of the user who started the download, so they can be fetched on any thread.
+     */
+    private ParallelRangeDownload.RangeSource rangeSource(final Drive client, final String fileId) {
+        return (firstBytePos, lastBytePos, outputStream) -> {
+            final Drive.Files.Get request = client
+                    .files()
+                    .get(fileId);
+            request.getMediaHttpDownloader()
+                    .setDirectDownloadEnabled(true)
+                    .setContentRange(firstBytePos, lastBytePos);
+            metrics.observeDownload("downloadRange", outputStream, request::executeMediaAndDownloadTo);
+        };
     }
 
     /**
@@ -80,26 +456,285 @@ public class GoogleDriveService {
      */
     public void deleteFile(@NonNull String fileId) throws IOException {
         log.info("Delete File {}", fileId);
-        this.driveClientFactory.createClient()
+        final Drive.Files.Delete request = this.driveClientFactory.createClient()
                 .files()
-                .delete(fileId)
-                .execute();
+                .delete(fileId);
+        metrics.observe("delete", request::execute);
+        metadataCache.invalidate(fileId);
+        fileIndex.remove(fileId);
+    }
+
+    /**
+     * Upload a file to Google Drive by streaming its content into a resumable upload session, one chunk at a time.
+     * Content of known length that fits in a single chunk is sent in one request instead.
+     * With {@code gdrive.upload.dedup.enabled}, content the user already has in Drive is not sent again, see
+     * {@link #uploadDeduplicated}.
+     * @param contentLength Length of the content in bytes, or -1 when unknown
+     * @return Uploaded file metadata from Google Drive
+     */
+    public GoogleDriveFileResponse uploadFile(@NonNull String name, String mimeType,
+                                              @NonNull InputStream content, long contentLength) throws IOException {
+        log.info("Upload File {} length={}", name, contentLength);
+        final DriveUser user = this.driveClientFactory.currentUser();
+        final Drive client = this.driveClientFactory.createClient(user);
+        if (dedupProperties.isEnabled() && fileIndex.isEnabled()) {
+            return uploadDeduplicated(user, client, name, mimeType, content);
+        }
+        return upload(user, client, name, mimeType, content, contentLength);
     }
 
     /**
-     * Upload a file to Google Drive
+     * Upload content whose MD5 is already known, e.g. because an upload job hashed it while spooling it to disk.
+     * With {@code gdrive.upload.dedup.enabled}, the checksum is matched against the user's index up front,
+     * so the content is not spooled again and is only read when it has to be sent.
+     * @param contentLength Length of the content in bytes
+     * @param md5Checksum Hex MD5 of the content
      * @return Uploaded file metadata from Google Drive
      */
-    public GoogleDriveFileResponse uploadFile(java.io.File filePath, String mimeType) throws IOException {
+    public GoogleDriveFileResponse uploadFile(@NonNull String name, String mimeType, @NonNull InputStream content,
+                                              long contentLength, @NonNull String md5Checksum) throws IOException {
+        log.info("Upload File {} length={}", name, contentLength);
+        final DriveUser user = this.driveClientFactory.currentUser();
+        final Drive client = this.driveClientFactory.createClient(user);
+        if (dedupProperties.isEnabled() && fileIndex.isEnabled()) {
+            final GoogleDriveFileResponse deduplicated = deduplicate(user, client, name, md5Checksum, contentLength);
+            if (deduplicated != null) {
+                return deduplicated;
+            }
+        }
+        return upload(user, client, name, mimeType, content, contentLength);
+    }
+
+    /**
+     * The MD5 of the content is only known once all of it has arrived, so the content is spooled to a temp file while
+     * it is hashed, and nothing is sent to Drive before the whole upload has been received.
+     * When the user already has the content, the spooled copy is never sent, see {@link #deduplicate}.
+     */
+    private GoogleDriveFileResponse uploadDeduplicated(final DriveUser user, final Drive client, final String name,
+                                                       final String mimeType, final InputStream content) throws IOException {
+        final Path spool = Files.createTempFile("gdrive-upload-", ".tmp");
+        try {
+            final MessageDigest md5 = newMd5();
+            final long size = Files.copy(new DigestInputStream(content, md5), spool, StandardCopyOption.REPLACE_EXISTING);
+            final GoogleDriveFileResponse deduplicated = deduplicate(user, client, name, HexFormat.of().formatHex(md5.digest()), size);
+            if (deduplicated != null) {
+                return deduplicated;
+            }
+            try (InputStream spooled = Files.newInputStream(spool)) {
+                return upload(user, client, name, mimeType, spooled, size);
+            }
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /**
+     * When the user's index has a file with the same MD5 and size, Drive copies that file
+     * (or it is returned as is, per {@code gdrive.upload.dedup.mode}) instead of the content being sent.
+     * A matching file that can no longer be copied is ignored.
+     * @return The copy or the matching file, or null when the content has to be uploaded
+     */
+    private GoogleDriveFileResponse deduplicate(final DriveUser user, final Drive client, final String name,
+                                                final String md5Checksum, final long size) throws IOException {
+        final GoogleDriveFileResponse existing = fileIndex.findByContent(user, client, md5Checksum, size);
+        if (existing == null) {
+            return null;
+        }
+        try {
+            final GoogleDriveFileResponse deduplicated = dedupProperties.getMode() == GoogleDriveProperties.Upload.Dedup.Mode.EXISTING
+                    ? existing
+                    : copyFile(user, client, existing.getId(), name);
+            log.info("Upload File {} matches File {}, skipped {} bytes", name, existing.getId(), size);
+            metrics.countDeduplicated(dedupProperties.getMode().name().toLowerCase());
+            return deduplicated;
+        } catch (HttpResponseException e) {
+            if (e.getStatusCode() != 403 && e.getStatusCode() != 404) {
+                throw e;
+            }
+            log.warn("Cannot copy matching File {}, uploading File {}: {}", existing.getId(), name, e.getMessage());
+            return null;
+        }
+    }
+
+    private GoogleDriveFileResponse upload(final DriveUser user, final Drive client, final String name, final String mimeType,
+                                           final InputStream content, final long contentLength) throws IOException {
         File fileMetadata = new File();
-        fileMetadata.setName(filePath.getName());
+        fileMetadata.setName(name);
+
+        final File file = metrics.observeUpload(content, countedContent -> {
+            InputStreamContent mediaContent = new InputStreamContent(mimeType, countedContent);
+            if (contentLength >= 0) {
+                mediaContent.setLength(contentLength);
+            }
+            final Drive.Files.Create request = client
+                    .files()
+                    .create(fileMetadata, mediaContent)
+                    .setFields(FILE_FIELDS);
+            final MediaHttpUploader uploader = request.getMediaHttpUploader();
+            uploader.setChunkSize(uploadChunkSize);
+            uploader.setDirectUploadEnabled(contentLength >= 0 && contentLength <= uploadChunkSize);
+            return request.execute();
+        });
+        return created(user, new GoogleDriveFileResponse(file));
+    }
 
-        FileContent mediaContent = new FileContent(mimeType, filePath);
-        final File file = this.driveClientFactory.createClient()
+    /**
+     * Copy a file within Google Drive, which transfers no content through this service
+     */
+    private GoogleDriveFileResponse copyFile(final DriveUser user, final Drive client, final String fileId,
+                                             final String name) throws IOException {
+        final Drive.Files.Copy request = client
                 .files()
-                .create(fileMetadata, mediaContent)
-                .setFields(FILE_FIELDS)
-                .execute();
-        return new GoogleDriveFileResponse(file);
+                .copy(fileId, new File().setName(name))
+                .setFields(FILE_FIELDS);
+        return created(user, new GoogleDriveFileResponse(metrics.observe("copy", request::execute)));
+    }
+
+    private GoogleDriveFileResponse created(final DriveUser user, final GoogleDriveFileResponse file) {
+        metadataCache.put(user, file);
+        fileIndex.put(user, file);
+        return file;
+    }
+
+    static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * Fetch metadata of several files using Google Drive batch requests of up to {@link #MAX_BATCH_SIZE} files each.
+     * @return One result per distinct id, in request order
+     */
+    public List<GoogleDriveBatchResult> batchGetByIds(@NonNull final List<String> fileIds) throws IOException {
+        final DriveUser user = this.driveClientFactory.currentUser();
+        return executeBatch(this.driveClientFactory.createClient(user), "batchGet", fileIds, new BatchOperation<File>() {
+            @Override
+            public AbstractGoogleJsonClientRequest<File> request(Drive client, String fileId) throws IOException {
+                return client.files().get(fileId).setFields(FILE_FIELDS);
+            }
+
+            @Override
+            public GoogleDriveBatchResult onSuccess(String fileId, File result) {
+                final GoogleDriveFileResponse file = new GoogleDriveFileResponse(result);
+                metadataCache.put(user, file);
+                return GoogleDriveBatchResult.builder().id(fileId).status(200).file(file).build();
+            }
+        });
+    }
+
+    /**
+     * Delete several files using Google Drive batch requests of up to {@link #MAX_BATCH_SIZE} files each.
+     * @return One result per distinct id, in request order
+     */
+    public List<GoogleDriveBatchResult> batchDelete(@NonNull final List<String> fileIds) throws IOException {
+        log.info("Batch Delete {} files", fileIds.size());
+        return executeBatch(this.driveClientFactory.createClient(), "batchDelete", fileIds, new BatchOperation<Void>() {
+            @Override
+            public AbstractGoogleJsonClientRequest<Void> request(Drive client, String fileId) throws IOException {
+                return client.files().delete(fileId);
+            }
+
+            @Override
+            public GoogleDriveBatchResult onSuccess(String fileId, Void result) {
+                metadataCache.invalidate(fileId);
+                fileIndex.remove(fileId);
+                return GoogleDriveBatchResult.builder().id(fileId).status(204).build();
+            }
+        });
+    }
+
+    private interface BatchOperation<T> {
+        AbstractGoogleJsonClientRequest<T> request(Drive client, String fileId) throws IOException;
+
+        GoogleDriveBatchResult onSuccess(String fileId, T result);
+    }
+
+    /**
+     * Queue one request per id into batches. Ids that fail with a rate limit or server error are sent again
+     * with exponential backoff, up to {@code gdrive.retry.batch-max-attempts}; ids that already succeeded are not resent.
+     * Every request in a batch takes its own permit from the user's rate limiter, so a batch of 100 counts as 100 requests.
+     */
+    private <T> List<GoogleDriveBatchResult> executeBatch(final Drive client, final String operationName, final List<String> fileIds,
+                                                          final BatchOperation<T> operation) throws IOException {
+        final Map<String, GoogleDriveBatchResult> results = new LinkedHashMap<>();
+        fileIds.forEach(fileId -> results.put(fileId, null));
+        final BackOff backOff = new ExponentialBackOff.Builder()
+                .setInitialIntervalMillis((int) retryProperties.getInitialInterval().toMillis())
+                .setMaxElapsedTimeMillis((int) retryProperties.getMaxElapsedTime().toMillis())
+                .build();
+
+        List<String> pending = new ArrayList<>(results.keySet());
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            final List<String> retryable = new ArrayList<>();
+            final Set<String> answered = new HashSet<>();
+            for (int from = 0; from < pending.size(); from += MAX_BATCH_SIZE) {
+                final List<String> chunk = pending.subList(from, Math.min(from + MAX_BATCH_SIZE, pending.size()));
+                final BatchRequest batch = client.batch();
+                for (String fileId : chunk) {
+                    operation.request(client, fileId).queue(batch, new JsonBatchCallback<T>() {
+                        @Override
+                        public void onSuccess(T result, HttpHeaders responseHeaders) {
+                            answered.add(fileId);
+                            results.put(fileId, operation.onSuccess(fileId, result));
+                        }
+
+                        @Override
+                        public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                            answered.add(fileId);
+                            metrics.countError(operationName, error);
+                            results.put(fileId, GoogleDriveBatchResult.builder()
+                                    .id(fileId)
+                                    .status(error.getCode())
+                                    .error(error.getMessage())
+                                    .reason(error.getErrors() != null && !error.getErrors().isEmpty()
+                                            ? error.getErrors().getFirst().getReason() : null)
+                                    .build());
+                            if (isRetryable(error)) {
+                                retryable.add(fileId);
+                            }
+                        }
+                    });
+                }
+                try {
+                    metrics.observe(operationName, () -> {
+                        batch.execute();
+                        return null;
+                    });
+                } catch (IOException e) {
+                    log.warn("Batch request of {} files failed", chunk.size(), e);
+                    for (String fileId : chunk) {
+                        if (!answered.contains(fileId)) {
+                            results.put(fileId, GoogleDriveBatchResult.builder().id(fileId).status(502).error(e.getMessage()).build());
+                            retryable.add(fileId);
+                        }
+                    }
+                }
+            }
+
+            final long backOffMillis = backOff.nextBackOffMillis();
+            if (retryable.isEmpty() || attempt >= retryProperties.getBatchMaxAttempts() || backOffMillis == BackOff.STOP) {
+                break;
+            }
+            log.info("Retrying {} of {} batched files, attempt {}", retryable.size(), results.size(), attempt + 1);
+            sleep(backOffMillis);
+            pending = retryable;
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    private static boolean isRetryable(final GoogleJsonError error) {
+        return error.getCode() >= 500 || DriveRetryPolicy.isRateLimited(error);
+    }
+
+    private static void sleep(final long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
     }
 }
@@ -0,0 +1,322 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.google.api.client.http.HttpResponseException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.strac.gdrive.gdrive.clients.DriveRateLimitedException;
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.clients.GoogleDriveClientFactory;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveUploadJobResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveUploadJobResponse.State;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.strac.gdrive.gdrive.config.GoogleDriveExecutorConfiguration.DRIVE_UPLOAD_EXECUTOR;
+
+/**
+ * Background uploads to Google Drive. Accepted content is spooled to local disk, so the client can go away,
+ * and hashed, so deduplication does not spool it a second time. Multipart files already on disk are moved into the spool. It is pushed to Drive by a fixed pool of {@code gdrive.upload.jobs.workers}. At most {@code gdrive.upload.jobs.queue-capacity}
+ * jobs wait for a worker; uploads beyond that are refused before their content is read.
+ * A job failing with a transient Drive error is uploaded again from the spooled copy, backing off between attempts.
+ * Jobs can only be seen by the user who submitted them, and are forgotten {@code gdrive.upload.jobs.retention} after they finish.
+ * Their status is saved to the {@link UploadJobStore} as they are queued, start an attempt and finish, so that with the
+ * jdbc store any node can report them; only the node running a job reports its progress between those points.
+ */
+@Service
+public class GoogleDriveUploadService {
+    private static final Logger log = LoggerFactory.getLogger(GoogleDriveUploadService.class);
+
+    private final GoogleDriveService googleDriveService;
+    private final GoogleDriveClientFactory driveClientFactory;
+    private final AsyncTaskExecutor uploadExecutor;
+    private final Path spoolDirectory;
+    private final int maxAttempts;
+    private final Duration retryInterval;
+    private final Duration retryAfter;
+    private final Semaphore slots;
+    private final UploadJobStore jobStore;
+    private final ConcurrentMap<String, Job> running = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GoogleDriveUploadService(@NonNull final GoogleDriveService googleDriveService,
+                                    @NonNull final GoogleDriveClientFactory driveClientFactory,
+                                    @NonNull @Qualifier(DRIVE_UPLOAD_EXECUTOR) final AsyncTaskExecutor uploadExecutor,
+                                    @NonNull final UploadJobStore jobStore,
+                                    @NonNull final GoogleDriveProperties properties,
+                                    @NonNull final MeterRegistry meterRegistry) {
+        final GoogleDriveProperties.Upload.Jobs jobProperties = properties.getUpload().getJobs();
+        this.googleDriveService = googleDriveService;
+        this.driveClientFactory = driveClientFactory;
+        this.uploadExecutor = uploadExecutor;
+        this.jobStore = jobStore;
+        this.spoolDirectory = jobProperties.getSpoolDirectory() != null
+                ? Path.of(jobProperties.getSpoolDirectory())
+                : Path.of(System.getProperty("java.io.tmpdir"), "gdrive-uploads");
+        this.maxAttempts = Math.max(1, jobProperties.getMaxAttempts());
+        this.retryInterval = properties.getRetry().getInitialInterval();
+        this.retryAfter = jobProperties.getRetryAfter();
+        this.slots = new Semaphore(Math.max(1, jobProperties.getWorkers()) + Math.max(0, jobProperties.getQueueCapacity()));
+        meterRegistry.gauge("gdrive.upload.jobs.pending", slots, semaphore ->
+                Math.max(1, jobProperties.getWorkers()) + Math.max(0, jobProperties.getQueueCapacity()) - semaphore.availablePermits());
+        try {
+            Files.createDirectories(spoolDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create upload spool directory " + spoolDirectory, e);
+        }
+    }
+
+    /**
+     * Spool the content to disk and queue it for upload as the current user.
+     * @return The queued job
+     * @throws UploadQueueFullException When the queue is full, before any content has been read
+     */
+    public GoogleDriveUploadJobResponse submit(@NonNull final String name, final String mimeType,
+                                               @NonNull final InputStream content) throws IOException {
+        return submit(name, mimeType, spool -> {
+            final MessageDigest md5 = GoogleDriveService.newMd5();
+            final long size = Files.copy(new DigestInputStream(content, md5), spool, StandardCopyOption.REPLACE_EXISTING);
+            return new Spooled(size, HexFormat.of().formatHex(md5.digest()));
+        });
+    }
+
+    /**
+     * Queue a multipart file for upload as the current user. The file the servlet container already spooled it to is
+     * moved into the job spool where possible, rather than copied, and only read back to hash it.
+     * @return The queued job
+     * @throws UploadQueueFullException When the queue is full, before any content has been read
+     */
+    public GoogleDriveUploadJobResponse submit(@NonNull final MultipartFile file) throws IOException {
+        return submit(file.getOriginalFilename(), file.getContentType(), spool -> {
+            // transferTo(File) lets the container rename its temporary file, transferTo(Path) always copies
+            file.transferTo(spool.toFile());
+            final MessageDigest md5 = GoogleDriveService.newMd5();
+            try (InputStream content = new DigestInputStream(Files.newInputStream(spool), md5)) {
+                content.transferTo(OutputStream.nullOutputStream());
+            }
+            return new Spooled(Files.size(spool), HexFormat.of().formatHex(md5.digest()));
+        });
+    }
+
+    private GoogleDriveUploadJobResponse submit(final String name, final String mimeType, final Spooler spooler) throws IOException {
+        if (!slots.tryAcquire()) {
+            throw new UploadQueueFullException("Upload queue is full", retryAfter);
+        }
+        final Job job = new Job(UUID.randomUUID().toString(), driveClientFactory.currentUser(), name, mimeType);
+        try {
+            job.spool = Files.createTempFile(spoolDirectory, job.id + "-", ".upload");
+            final Spooled spooled = spooler.spool(job.spool);
+            job.size = spooled.size();
+            job.md5Checksum = spooled.md5Checksum();
+            running.put(job.id, job);
+            jobStore.save(job.user, job.toResponse());
+            uploadExecutor.execute(() -> run(job));
+        } catch (IOException | RuntimeException e) {
+            running.remove(job.id);
+            deleteSpool(job);
+            slots.release();
+            throw e;
+        }
+        log.info("Queued upload job {} for File {} length={}", job.id, name, job.size);
+        return job.toResponse();
+    }
+
+    /**
+     * Writes the accepted content to the job spool, hashing it on the way or afterwards.
+     */
+    private interface Spooler {
+        Spooled spool(Path spool) throws IOException;
+    }
+
+    private record Spooled(long size, String md5Checksum) {
+    }
+
+    /**
+     * @return The job, with its current progress when this node is running it, or null when there is no such job of the current user
+     */
+    public GoogleDriveUploadJobResponse get(@NonNull final String jobId) {
+        final DriveUser user = driveClientFactory.currentUser();
+        final Job job = running.get(jobId);
+        if (job != null) {
+            return job.user.equals(user) ? job.toResponse() : null;
+        }
+        return jobStore.find(user, jobId);
+    }
+
+    private void run(final Job job) {
+        State outcome = State.FAILED;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                job.state = State.RUNNING;
+                job.attempts = attempt;
+                job.bytesSent.set(0);
+                publish(job);
+                try (InputStream content = new ProgressInputStream(Files.newInputStream(job.spool), job.bytesSent)) {
+                    job.file = googleDriveService.uploadFile(job.name, job.mimeType, content, job.size, job.md5Checksum);
+                    outcome = State.SUCCEEDED;
+                    log.info("Upload job {} created File {}", job.id, job.file.getId());
+                    return;
+                } catch (IOException e) {
+                    if (attempt >= maxAttempts || !isTransient(e)) {
+                        log.error("Upload job {} failed after {} attempts", job.id, attempt, e);
+                        job.error = e.getMessage();
+                        return;
+                    }
+                    log.warn("Retrying upload job {} after attempt {} failed: {}", job.id, attempt, e.getMessage());
+                    job.state = State.QUEUED;
+                    publish(job);
+                    Thread.sleep(backOff(e, attempt).toMillis());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.error = "Interrupted";
+        } catch (RuntimeException e) {
+            log.error("Upload job {} failed", job.id, e);
+            job.error = e.getMessage();
+        } finally {
+            // Clean up before the outcome is visible, so a client seeing it can submit again right away
+            deleteSpool(job);
+            slots.release();
+            job.state = outcome;
+            publish(job);
+            running.remove(job.id);
+        }
+    }
+
+    /**
+     * Save the job's status for other nodes. A store failure leaves them with an older status rather than failing the upload.
+     */
+    private void publish(final Job job) {
+        try {
+            jobStore.save(job.user, job.toResponse());
+        } catch (RuntimeException e) {
+            log.warn("Cannot save status {} of upload job {}", job.state, job.id, e);
+        }
+    }
+
+    /**
+     * Client errors other than rate limiting will fail the same way again.
+     */
+    static boolean isTransient(final IOException e) {
+        if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+            return false;
+        }
+        if (e instanceof HttpResponseException responseException) {
+            final int status = responseException.getStatusCode();
+            return status >= 500 || status == 429 || status == 408
+                    || (status == 403 && GoogleDriveMetrics.reason(e).toLowerCase().contains("ratelimitexceeded"));
+        }
+        return true;
+    }
+
+    private Duration backOff(final IOException e, final int attempt) {
+        final Duration backOff = retryInterval.multipliedBy(1L << Math.min(attempt - 1, 10));
+        if (e instanceof DriveRateLimitedException rateLimited && rateLimited.getRetryAfter().compareTo(backOff) > 0) {
+            return rateLimited.getRetryAfter();
+        }
+        return backOff;
+    }
+
+    private static void deleteSpool(final Job job) {
+        if (job.spool == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(job.spool);
+        } catch (IOException e) {
+            log.warn("Cannot delete spooled upload {}", job.spool, e);
+        }
+    }
+
+    private static final class Job {
+        private final String id;
+        private final DriveUser user;
+        private final String name;
+        private final String mimeType;
+        private final AtomicLong bytesSent = new AtomicLong();
+        private Path spool;
+        private long size;
+        private String md5Checksum;
+        private volatile State state = State.QUEUED;
+        private volatile int attempts;
+        private volatile GoogleDriveFileResponse file;
+        private volatile String error;
+
+        private Job(final String id, final DriveUser user, final String name, final String mimeType) {
+            this.id = id;
+            this.user = user;
+            this.name = name;
+            this.mimeType = mimeType;
+        }
+
+        private GoogleDriveUploadJobResponse toResponse() {
+            return GoogleDriveUploadJobResponse.builder()
+                    .id(id)
+                    .state(state)
+                    .name(name)
+                    .size(size)
+                    .bytesSent(bytesSent.get())
+                    .attempts(attempts)
+                    .file(file)
+                    .error(error)
+                    .build();
+        }
+    }
+
+    /**
+     * Counts the bytes read from the spooled copy, which the resumable upload sends right after reading them.
+     */
+    private static final class ProgressInputStream extends FilterInputStream {
+        private final AtomicLong read;
+
+        private ProgressInputStream(final InputStream in, final AtomicLong read) {
+            super(in);
+            this.read = read;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b >= 0) {
+                read.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int count = in.read(b, off, len);
+            if (count > 0) {
+                read.addAndGet(count);
+            }
+            return count;
+        }
+    }
+}
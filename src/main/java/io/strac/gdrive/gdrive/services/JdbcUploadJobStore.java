@@ -0,0 +1,81 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveUploadJobResponse;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Upload jobs as JSON in the {@code gdrive_upload_job} table, shared by all nodes, so any node can report a job
+ * whichever node runs it. Rows of jobs finished longer than the retention ago are deleted as other jobs finish.
+ */
+@Component
+@ConditionalOnProperty(name = "gdrive.store.type", havingValue = "jdbc")
+public class JdbcUploadJobStore implements UploadJobStore {
+    private final JdbcOperations jdbcOperations;
+    private final ObjectMapper objectMapper;
+    private final Duration retention;
+
+    @Autowired
+    public JdbcUploadJobStore(@NonNull final JdbcOperations jdbcOperations,
+                              @NonNull final ObjectMapper objectMapper,
+                              @NonNull final GoogleDriveProperties properties) {
+        this.jdbcOperations = jdbcOperations;
+        this.objectMapper = objectMapper;
+        this.retention = properties.getUpload().getJobs().getRetention();
+    }
+
+    @Override
+    public void save(@NonNull final DriveUser user, @NonNull final GoogleDriveUploadJobResponse job) {
+        final String json = toJson(job);
+        final Instant now = Instant.now();
+        final Timestamp finishedAt = UploadJobStore.isFinished(job) ? Timestamp.from(now) : null;
+        // A job is only ever written by the node running it, so update-then-insert does not race
+        final int updated = jdbcOperations.update(
+                "UPDATE gdrive_upload_job SET job = ?, finished_at = ? WHERE id = ?", json, finishedAt, job.getId());
+        if (updated == 0) {
+            jdbcOperations.update("INSERT INTO gdrive_upload_job (id, client_registration_id, principal_name, job, finished_at)"
+                    + " VALUES (?, ?, ?, ?, ?)", job.getId(), user.registrationId(), user.principalName(), json, finishedAt);
+        }
+        if (finishedAt != null) {
+            jdbcOperations.update("DELETE FROM gdrive_upload_job WHERE finished_at < ?", Timestamp.from(now.minus(retention)));
+        }
+    }
+
+    @Override
+    public GoogleDriveUploadJobResponse find(@NonNull final DriveUser user, @NonNull final String jobId) {
+        final List<String> jobs = jdbcOperations.queryForList(
+                "SELECT job FROM gdrive_upload_job WHERE id = ? AND client_registration_id = ? AND principal_name = ?"
+                        + " AND (finished_at IS NULL OR finished_at >= ?)",
+                String.class, jobId, user.registrationId(), user.principalName(), Timestamp.from(Instant.now().minus(retention)));
+        return jobs.isEmpty() ? null : fromJson(jobs.get(0));
+    }
+
+    private String toJson(final GoogleDriveUploadJobResponse job) {
+        try {
+            return objectMapper.writeValueAsString(job);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private GoogleDriveUploadJobResponse fromJson(final String json) {
+        try {
+            return objectMapper.readValue(json, GoogleDriveUploadJobResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveUploadJobResponse;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Upload jobs kept in memory, so they can only be reported by the node that accepted them.
+ */
+@Component
+@ConditionalOnProperty(name = "gdrive.store.type", havingValue = "memory", matchIfMissing = true)
+public class MemoryUploadJobStore implements UploadJobStore {
+    private final Cache<String, Entry> jobs;
+
+    private record Entry(DriveUser user, GoogleDriveUploadJobResponse job) {
+    }
+
+    @Autowired
+    public MemoryUploadJobStore(@NonNull final GoogleDriveProperties properties) {
+        this.jobs = Caffeine.newBuilder()
+                .expireAfter(new FinishedJobExpiry(properties.getUpload().getJobs().getRetention()))
+                .build();
+    }
+
+    @Override
+    public void save(@NonNull final DriveUser user, @NonNull final GoogleDriveUploadJobResponse job) {
+        // Put again on every change, so the retention of a finished job starts when it finishes
+        jobs.put(job.getId(), new Entry(user, job));
+    }
+
+    @Override
+    public GoogleDriveUploadJobResponse find(@NonNull final DriveUser user, @NonNull final String jobId) {
+        final Entry entry = jobs.getIfPresent(jobId);
+        return entry != null && entry.user().equals(user) ? entry.job() : null;
+    }
+
+    /**
+     * Jobs are kept while they run, and for the retention period once they have finished.
+     */
+    private record FinishedJobExpiry(Duration retention) implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(final String id, final Entry entry, final long currentTime) {
+            return UploadJobStore.isFinished(entry.job()) ? retention.toNanos() : Long.MAX_VALUE;
+        }
+
+        @Override
+        public long expireAfterUpdate(final String id, final Entry entry, final long currentTime, final long currentDuration) {
+            return expireAfterCreate(id, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(final String id, final Entry entry, final long currentTime, final long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.google.api.client.http.HttpResponseException;
+import io.strac.gdrive.gdrive.clients.DriveRateLimitedException;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Downloads a file as consecutive byte ranges over several connections at once, to get past the throughput
+ * of a single Drive connection. Ranges are either reassembled in order into a stream, holding at most
+ * {@code gdrive.download.parallel.buffer-budget} of ranges that arrived ahead of their turn,
+ * or written straight into a file at their position.
+ * A range that fails is requested again from the first byte not yet received, so one failure does not
+ * restart the whole transfer; errors that retrying cannot fix fail the download straight away.
+ * The calling thread fetches ranges too, so a download completes even when every executor thread is taken,
+ * e.g. when it is itself called from a task on the same executor.
+ */
+public class ParallelRangeDownload {
+    private static final Logger log = LoggerFactory.getLogger(ParallelRangeDownload.class);
+
+    private final AsyncTaskExecutor taskExecutor;
+    private final int rangeSize;
+    private final int connections;
+    private final int bufferedRanges;
+    private final int maxAttempts;
+    private final Duration retryInterval;
+
+    /**
+     * Downloads the inclusive byte range of a file to the output stream.
+     */
+    @FunctionalInterface
+    public interface RangeSource {
+        void download(long firstBytePos, long lastBytePos, OutputStream outputStream) throws IOException;
+    }
+
+    public ParallelRangeDownload(@NonNull final AsyncTaskExecutor taskExecutor,
+                                 @NonNull final GoogleDriveProperties.Download.Parallel properties,
+                                 @NonNull final Duration retryInterval) {
+        this.taskExecutor = taskExecutor;
+        this.rangeSize = (int) Math.clamp(properties.getRangeSize().toBytes(), 1, Integer.MAX_VALUE - 8);
+        this.connections = Math.max(1, properties.getConnections());
+        this.bufferedRanges = (int) Math.max(1, properties.getBufferBudget().toBytes() / rangeSize);
+        this.maxAttempts = Math.max(1, properties.getMaxAttempts());
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Write the file to the output stream in order. Ranges are fetched ahead of the one being written
+     * only while the buffer budget allows, so a slow client slows down the download rather than filling memory.
+     */
+    public void copyTo(final long size, @NonNull final RangeSource source, @NonNull final OutputStream outputStream) throws IOException {
+        final int ranges = rangeCount(size);
+        final AtomicReferenceArray<CompletableFuture<byte[]>> parts = new AtomicReferenceArray<>(ranges);
+        for (int range = 0; range < ranges; range++) {
+            parts.set(range, new CompletableFuture<>());
+        }
+        final Semaphore buffers = new Semaphore(bufferedRanges);
+        final AtomicInteger nextRange = new AtomicInteger();
+
+        try (DriveTaskScope scope = new DriveTaskScope(taskExecutor)) {
+            for (int connection = 0; connection < Math.min(connections, ranges); connection++) {
+                scope.fork(() -> {
+                    try {
+                        // Ranges are taken in order after a buffer is reserved, so the range written next always has one
+                        while (true) {
+                            buffers.acquire();
+                            final int range = nextRange.getAndIncrement();
+                            if (range >= ranges) {
+                                buffers.release();
+                                return null;
+                            }
+                            final ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) length(range, size));
+                            fetch(source, range, size, buffer, buffer::size);
+                            parts.get(range).complete(buffer.toByteArray());
+                        }
+                    } catch (Exception e) {
+                        for (int i = 0; i < ranges; i++) {
+                            final CompletableFuture<byte[]> part = parts.get(i);
+                            if (part != null) {
+                                part.completeExceptionally(e);
+                            }
+                        }
+                        throw e;
+                    }
+                });
+            }
+            for (int range = 0; range < ranges; range++) {
+                final byte[] part;
+                if (nextRange.get() == range && buffers.tryAcquire()) {
+                    if (nextRange.compareAndSet(range, range + 1)) {
+                        // No connection has got to this range yet, e.g. while they wait for an executor thread
+                        final ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) length(range, size));
+                        fetch(source, range, size, buffer, buffer::size);
+                        part = buffer.toByteArray();
+                    } else {
+                        buffers.release();
+                        part = scope.join(parts.get(range));
+                    }
+                } else {
+                    part = scope.join(parts.get(range));
+                }
+                parts.set(range, null);
+                outputStream.write(part);
+                buffers.release();
+            }
+        }
+    }
+
+    /**
+     * Write the file into the channel, each range at its own position, with no reordering needed.
+     * The calling thread is one of the connections.
+     */
+    public void copyTo(final long size, @NonNull final RangeSource source, @NonNull final FileChannel channel) throws IOException {
+        final int ranges = rangeCount(size);
+        final List<CompletableFuture<Void>> written = new ArrayList<>(ranges);
+        for (int range = 0; range < ranges; range++) {
+            written.add(new CompletableFuture<>());
+        }
+        final AtomicInteger nextRange = new AtomicInteger();
+        final Callable<Void> connection = () -> {
+            try {
+                for (int range = nextRange.getAndIncrement(); range < ranges; range = nextRange.getAndIncrement()) {
+                    final PositionalOutputStream rangeStream = new PositionalOutputStream(channel, (long) range * rangeSize);
+                    fetch(source, range, size, rangeStream, rangeStream::written);
+                    written.get(range).complete(null);
+                }
+                return null;
+            } catch (Exception e) {
+                written.forEach(part -> part.completeExceptionally(e));
+                throw e;
+            }
+        };
+
+        try (DriveTaskScope scope = new DriveTaskScope(taskExecutor)) {
+            for (int forked = 1; forked < Math.min(connections, ranges); forked++) {
+                scope.fork(connection);
+            }
+            try {
+                connection.call();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            // Every range has been taken by now, so this only waits for connections that are running,
+            // never for one still queued for an executor thread
+            for (CompletableFuture<Void> range : written) {
+                scope.join(range);
+            }
+        }
+    }
+
+    private int rangeCount(final long size) {
+        final long ranges = (size + rangeSize - 1) / rangeSize;
+        if (ranges > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("File too large for range size " + rangeSize + ": " + size);
+        }
+        return (int) ranges;
+    }
+
+    private long length(final int range, final long size) {
+        return Math.min(rangeSize, size - (long) range * rangeSize);
+    }
+
+    /**
+     * Fetch one range, resuming after the bytes already received when an attempt fails part way.
+     */
+    private void fetch(final RangeSource source, final int range, final long size, final OutputStream target,
+                       final LongSupplier received) throws IOException {
+        final long firstBytePos = (long) range * rangeSize;
+        final long lastBytePos = firstBytePos + length(range, size) - 1;
+        for (int attempt = 1; ; attempt++) {
+            IOException failure;
+            try {
+                source.download(firstBytePos + received.getAsLong(), lastBytePos, target);
+                if (received.getAsLong() == lastBytePos - firstBytePos + 1) {
+                    return;
+                }
+                failure = new IOException("Range %d-%d ended after %d bytes".formatted(firstBytePos, lastBytePos, received.getAsLong()));
+            } catch (InterruptedIOException | DriveRateLimitedException e) {
+                throw e;
+            } catch (HttpResponseException e) {
+                if (e.getStatusCode() < 500) {
+                    throw e;
+                }
+                failure = e;
+            } catch (IOException e) {
+                failure = e;
+            }
+            if (attempt >= maxAttempts) {
+                throw failure;
+            }
+            log.warn("Retrying range {}-{} from byte {} after attempt {} failed: {}",
+                    firstBytePos, lastBytePos, firstBytePos + received.getAsLong(), attempt, failure.getMessage());
+            try {
+                Thread.sleep(retryInterval.multipliedBy(1L << Math.min(attempt - 1, 10)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while retrying range " + firstBytePos + "-" + lastBytePos);
+            }
+        }
+    }
+
+    private static final class PositionalOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private final long start;
+        private long written;
+
+        private PositionalOutputStream(final FileChannel channel, final long start) {
+            this.channel = channel;
+            this.start = start;
+        }
+
+        private long written() {
+            return written;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer, start + written);
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package io.strac.gdrive.gdrive.services;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Feeds concurrent downloads of the same content from one Drive download through a bounded shared buffer.
+ * The Drive download runs on the executor and is paced by the slowest reader, which may fall at most
+ * {@code gdrive.download.shared.buffer-size} behind. The start of the content is kept until it outgrows the buffer,
+ * and readers may join until then; later ones start a download of their own. A reader that goes away is dropped,
+ * and the Drive download is cancelled once no reader is left.
+ * Callers are responsible for checking that each reader may access the content, the key only identifies it.
+ */
+public class SharedDownloads {
+    private static final Logger log = LoggerFactory.getLogger(SharedDownloads.class);
+
+    private final AsyncTaskExecutor taskExecutor;
+    private final long bufferSize;
+    private final GoogleDriveMetrics metrics;
+    private final ConcurrentHashMap<Object, Flight> flights = new ConcurrentHashMap<>();
+
+    public SharedDownloads(@NonNull final AsyncTaskExecutor taskExecutor, final long bufferSize,
+                           @NonNull final GoogleDriveMetrics metrics) {
+        this.taskExecutor = taskExecutor;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Write the content to the output stream, joining a download of the same key already under way when possible.
+     * @param key Identifies the exact content, e.g. file id and checksum
+     * @param source Downloads the content, only called when no download can be joined
+     */
+    public void copyTo(@NonNull final Object key, @NonNull final GoogleDriveContentCache.ContentSource source,
+                       @NonNull final OutputStream outputStream) throws IOException {
+        final Reader reader = new Reader();
+        final Flight flight = flights.compute(key, (k, running) -> running != null && running.join(reader) ? running : new Flight(k, reader));
+        if (flight.owner == reader) {
+            flight.start(source);
+        } else {
+            metrics.countCoalesced("download");
+        }
+        flight.read(reader, outputStream);
+    }
+
+    /**
+     * Position is guarded by the lock of the flight read from.
+     */
+    private static final class Reader {
+        private long position;
+    }
+
+    private record Chunk(long offset, byte[] data) {
+        long end() {
+            return offset + data.length;
+        }
+    }
+
+    private final class Flight {
+        private final Object key;
+        private final Reader owner;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final List<Reader> readers = new ArrayList<>();
+        private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+        private long buffered;
+        private long end;
+        private boolean joinable = true;
+        private boolean done;
+        private Throwable failure;
+        private Future<?> download;
+
+        private Flight(final Object key, final Reader owner) {
+            this.key = key;
+            this.owner = owner;
+            this.readers.add(owner);
+        }
+
+        /**
+         * @return Whether the reader joined, which is only possible while the whole content so far is buffered
+         */
+        private boolean join(final Reader reader) {
+            lock.lock();
+            try {
+                if (!joinable || done || readers.isEmpty()) {
+                    return false;
+                }
+                readers.add(reader);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void start(final GoogleDriveContentCache.ContentSource source) {
+            final Future<?> submitted = taskExecutor.submit(() -> {
+                Throwable error = null;
+                try {
+                    source.writeTo(new BroadcastOutputStream(this));
+                } catch (Throwable e) {
+                    error = e;
+                } finally {
+                    flights.remove(key, this);
+                    finish(error);
+                }
+            });
+            lock.lock();
+            try {
+                download = submitted;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void finish(final Throwable error) {
+            lock.lock();
+            try {
+                done = true;
+                failure = error;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Append content for every reader, waiting while the slowest reader is a buffer's worth behind.
+         */
+        private void write(final byte[] b, final int off, final int len) throws IOException {
+            lock.lock();
+            try {
+                if (joinable && buffered + len > bufferSize) {
+                    joinable = false;
+                    release();
+                }
+                while (!readers.isEmpty() && buffered > 0 && buffered + len > bufferSize) {
+                    changed.await();
+                }
+                if (readers.isEmpty()) {
+                    throw new InterruptedIOException("Every reader of the shared download has gone");
+                }
+                chunks.addLast(new Chunk(end, Arrays.copyOfRange(b, off, off + len)));
+                buffered += len;
+                end += len;
+                changed.signalAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for readers of the shared download");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void read(final Reader reader, final OutputStream outputStream) throws IOException {
+            try {
+                while (true) {
+                    final List<Chunk> pending = new ArrayList<>();
+                    lock.lock();
+                    try {
+                        while (reader.position == end && !done) {
+                            changed.await();
+                        }
+                        if (reader.position == end) {
+                            rethrowFailure();
+                            return;
+                        }
+                        for (Chunk chunk : chunks) {
+                            if (chunk.end() > reader.position) {
+                                pending.add(chunk);
+                            }
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    // Chunks are never modified, so they are written to the client without holding the lock
+                    long position = reader.position;
+                    for (Chunk chunk : pending) {
+                        final int skip = (int) (position - chunk.offset());
+                        outputStream.write(chunk.data(), skip, chunk.data().length - skip);
+                        position = chunk.end();
+                    }
+                    lock.lock();
+                    try {
+                        reader.position = position;
+                        release();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch (InterruptedException e) {
+                leave(reader);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the shared download");
+            } catch (IOException | RuntimeException e) {
+                leave(reader);
+                throw e;
+            }
+        }
+
+        private void leave(final Reader reader) {
+            final Future<?> running;
+            lock.lock();
+            try {
+                if (!readers.remove(reader)) {
+                    return;
+                }
+                release();
+                running = readers.isEmpty() && !done ? download : null;
+            } finally {
+                lock.unlock();
+            }
+            if (running != null) {
+                log.debug("Cancelling shared download {}, every reader has gone", key);
+                running.cancel(true);
+            }
+        }
+
+        /**
+         * Drop chunks that every reader has written, once no more readers can join. Must hold the lock.
+         */
+        private void release() {
+            changed.signalAll();
+            if (joinable) {
+                return;
+            }
+            long slowest = end;
+            for (Reader reader : readers) {
+                slowest = Math.min(slowest, reader.position);
+            }
+            while (!chunks.isEmpty() && chunks.peekFirst().end() <= slowest) {
+                buffered -= chunks.removeFirst().data().length;
+            }
+        }
+
+        private void rethrowFailure() throws IOException {
+            if (failure instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (failure instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+        }
+    }
+
+    private static final class BroadcastOutputStream extends OutputStream {
+        private final Flight flight;
+
+        private BroadcastOutputStream(final Flight flight) {
+            this.flight = flight;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (len > 0) {
+                flight.write(b, off, len);
+            }
+        }
+    }
+}
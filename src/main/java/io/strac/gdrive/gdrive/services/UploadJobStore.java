@@ -0,0 +1,25 @@
+package io.strac.gdrive.gdrive.services;
+
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.models.GoogleDriveUploadJobResponse;
+
+/**
+ * Status of upload jobs, selected by {@code gdrive.store.type}, so that the job can be reported by any node and not
+ * only by the one running it. Finished jobs are forgotten {@code gdrive.upload.jobs.retention} after they finish.
+ */
+public interface UploadJobStore {
+    /**
+     * Save the latest status of a job of the user, replacing any earlier one.
+     */
+    void save(DriveUser user, GoogleDriveUploadJobResponse job);
+
+    /**
+     * @return The job, or null when there is no such job of the user
+     */
+    GoogleDriveUploadJobResponse find(DriveUser user, String jobId);
+
+    static boolean isFinished(final GoogleDriveUploadJobResponse job) {
+        return job.getState() == GoogleDriveUploadJobResponse.State.SUCCEEDED
+                || job.getState() == GoogleDriveUploadJobResponse.State.FAILED;
+    }
+}
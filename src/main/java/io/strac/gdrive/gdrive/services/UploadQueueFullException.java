@@ -0,0 +1,20 @@
+package io.strac.gdrive.gdrive.services;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * An upload job was refused because every worker is busy and the job queue is full.
+ * Callers should answer with 503 and ask the client to retry after {@link #getRetryAfter()}.
+ */
+@Getter
+public class UploadQueueFullException extends IOException {
+    private final Duration retryAfter;
+
+    public UploadQueueFullException(final String message, final Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,10 @@
+-- Table of JdbcUploadJobStore, safe to run on every startup. The same on PostgreSQL and H2.
+CREATE TABLE IF NOT EXISTS gdrive_upload_job (
+    id varchar(36) NOT NULL,
+    client_registration_id varchar(100) NOT NULL,
+    principal_name varchar(200) NOT NULL,
+    job text NOT NULL,
+    finished_at timestamp DEFAULT NULL,
+    PRIMARY KEY (id)
+);
+CREATE INDEX IF NOT EXISTS gdrive_upload_job_finished_at ON gdrive_upload_job (finished_at);
@@ -0,0 +1,53 @@
+package io.strac.gdrive.gdrive.clients;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DriveRateLimiterTest {
+    private static final DriveUser USER = new DriveUser("google", "user-1");
+
+    private GoogleDriveProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setup() {
+        properties = new GoogleDriveProperties();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    public void test_acquire_waitsForRefillBeyondBurst() throws IOException {
+        properties.getRateLimit().setPermitsPerSecond(20);
+        properties.getRateLimit().setBurst(2);
+        final DriveRateLimiter rateLimiter = new DriveRateLimiter(properties, meterRegistry);
+
+        rateLimiter.acquire(USER);
+        rateLimiter.acquire(USER);
+        assertEquals(0, meterRegistry.get("gdrive.ratelimit.wait").timer().count());
+        rateLimiter.acquire(USER);
+
+        assertEquals(1, meterRegistry.get("gdrive.ratelimit.wait").timer().count());
+    }
+
+    @Test
+    public void test_acquire_rejectsBeyondMaxWait() throws IOException {
+        properties.getRateLimit().setPermitsPerSecond(1);
+        properties.getRateLimit().setBurst(1);
+        properties.getRateLimit().setMaxWait(Duration.ofMillis(100));
+        final DriveRateLimiter rateLimiter = new DriveRateLimiter(properties, meterRegistry);
+
+        rateLimiter.acquire(USER);
+        final DriveRateLimitedException e = assertThrows(DriveRateLimitedException.class, () -> rateLimiter.acquire(USER));
+        rateLimiter.acquire(new DriveUser("google", "user-2"));
+
+        assertTrue(e.getRetryAfter().compareTo(Duration.ofMillis(900)) > 0);
+        assertEquals(1.0, meterRegistry.get("gdrive.ratelimit.rejected").counter().count());
+    }
+}
@@ -0,0 +1,105 @@
+package io.strac.gdrive.gdrive.clients;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.json.Json;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.client.util.ExponentialBackOff;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DriveRetryPolicyTest {
+    private static final String USER_RATE_LIMIT = """
+            {"error": {"code": 403, "message": "User rate limit exceeded",
+             "errors": [{"reason": "userRateLimitExceeded", "message": "User rate limit exceeded"}]}}""";
+    private static final String INSUFFICIENT_PERMISSIONS = """
+            {"error": {"code": 403, "message": "Insufficient permissions",
+             "errors": [{"reason": "insufficientFilePermissions", "message": "Insufficient permissions"}]}}""";
+
+    private final Queue<MockLowLevelHttpResponse> responses = new LinkedList<>();
+    private final List<Long> sleeps = new ArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    public void test_retriesRateLimitHonouringRetryAfter() throws IOException {
+        responses.add(response(429, "{}").addHeader("Retry-After", "3"));
+        responses.add(response(403, USER_RATE_LIMIT));
+        responses.add(response(200, "{}"));
+
+        assertEquals(200, request().execute().getStatusCode());
+
+        assertEquals(2, sleeps.size());
+        assertTrue(sleeps.getFirst() >= 3000);
+        assertEquals(1.0, meterRegistry.get("gdrive.requests.retries").tag("reason", "429").counter().count());
+        assertEquals(1.0, meterRegistry.get("gdrive.requests.retries").tag("reason", "403").counter().count());
+    }
+
+    @Test
+    public void test_doesNotRetryOtherForbidden() {
+        responses.add(response(403, INSUFFICIENT_PERMISSIONS));
+
+        final GoogleJsonResponseException e = assertThrows(GoogleJsonResponseException.class, () -> request().execute());
+
+        assertEquals("insufficientFilePermissions", e.getDetails().getErrors().getFirst().getReason());
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    public void test_retryAfterBeyondLimit_failsRateLimited() {
+        responses.add(response(429, "{}").addHeader("Retry-After", "120"));
+
+        final DriveRateLimitedException e = assertThrows(DriveRateLimitedException.class, () -> request().execute());
+
+        assertEquals(Duration.ofSeconds(120), e.getRetryAfter());
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    public void test_retryAfter_parsesSecondsAndDates() {
+        assertEquals(Duration.ofSeconds(5), DriveRetryPolicy.retryAfter("5"));
+        assertEquals(Duration.ZERO, DriveRetryPolicy.retryAfter("Thu, 01 Jan 1970 00:00:00 GMT"));
+        assertNull(DriveRetryPolicy.retryAfter("soon"));
+    }
+
+    private HttpRequest request() throws IOException {
+        final MockHttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest(url).setResponse(responses.remove());
+            }
+        };
+        final DriveRetryPolicy retryPolicy = new DriveRetryPolicy(
+                new ExponentialBackOff.Builder().setInitialIntervalMillis(1).build(),
+                Duration.ofSeconds(30), meterRegistry, sleeps::add);
+        return transport.createRequestFactory(request -> {
+            request.setUnsuccessfulResponseHandler(retryPolicy);
+            request.setIOExceptionHandler(retryPolicy);
+        }).buildGetRequest(new GenericUrl("https://www.googleapis.com/drive/v3/files"));
+    }
+
+    private static MockLowLevelHttpResponse response(int status, String content) {
+        return new MockLowLevelHttpResponse()
+                .setStatusCode(status)
+                .setContentType(Json.MEDIA_TYPE)
+                .setContent(content);
+    }
+}
@@ -0,0 +1,195 @@
+package io.strac.gdrive.gdrive.clients;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DriveTokenManagerTest {
+    private static final DriveUser USER = new DriveUser("google", "user-1");
+    private static final Instant NOW = Instant.parse("2024-01-01T12:00:00Z");
+    private static final ClientRegistration REGISTRATION = ClientRegistration.withRegistrationId("google")
+            .clientId("client")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("http://localhost/login/oauth2/code/google")
+            .authorizationUri("http://localhost/authorize")
+            .tokenUri("http://localhost/token")
+            .build();
+
+    @Mock
+    private OAuth2AuthorizedClientManager authorizedClientManager;
+
+    private DriveTokenManager tokenManager;
+
+    @BeforeEach
+    public void setup() {
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        properties.getToken().setRefreshAhead(Duration.ofMinutes(5));
+        tokenManager = new DriveTokenManager(authorizedClientManager, new SimpleAsyncTaskExecutor(), properties,
+                new SimpleMeterRegistry(), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void test_accessToken_cachedPerUser() throws IOException {
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(authorizedClient("token-1", Duration.ofHours(1)));
+
+        assertEquals("token-1", tokenManager.accessToken(USER));
+        assertEquals("token-1", tokenManager.accessToken(USER));
+
+        verify(authorizedClientManager, times(1)).authorize(any(OAuth2AuthorizeRequest.class));
+    }
+
+    @Test
+    public void test_accessToken_refreshedAheadOfExpiryInBackground() throws Exception {
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(authorizedClient("token-1", Duration.ofMinutes(2)), authorizedClient("token-2", Duration.ofHours(1)));
+
+        assertEquals("token-1", tokenManager.accessToken(USER));
+        // Still valid, so it is used while the refresh runs
+        assertEquals("token-1", tokenManager.accessToken(USER));
+
+        verify(authorizedClientManager, timeout(5_000).times(2)).authorize(any(OAuth2AuthorizeRequest.class));
+        awaitToken("token-2");
+    }
+
+    @Test
+    public void test_refreshExpiring_refreshesCachedTokens() throws Exception {
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(authorizedClient("token-1", Duration.ofMinutes(2)), authorizedClient("token-2", Duration.ofHours(1)));
+        tokenManager.accessToken(USER);
+
+        tokenManager.refreshExpiring();
+
+        verify(authorizedClientManager, timeout(5_000).times(2)).authorize(any(OAuth2AuthorizeRequest.class));
+        awaitToken("token-2");
+    }
+
+    @Test
+    public void test_accessToken_concurrentRefreshesShareOneRequest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class))).thenAnswer(invocation -> {
+            started.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return authorizedClient("token-1", Duration.ofHours(1));
+        });
+
+        final CompletableFuture<String> first = CompletableFuture.supplyAsync(this::accessToken);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final CompletableFuture<String> second = CompletableFuture.supplyAsync(this::accessToken);
+        Thread.sleep(50);
+        release.countDown();
+
+        assertEquals("token-1", first.get(5, TimeUnit.SECONDS));
+        assertEquals("token-1", second.get(5, TimeUnit.SECONDS));
+        verify(authorizedClientManager, times(1)).authorize(any(OAuth2AuthorizeRequest.class));
+    }
+
+    @Test
+    public void test_accessToken_refreshedOnCallingThreadWhenExecutorIsBusy() throws IOException {
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        // Tasks are never run, as when every executor thread waits for a token
+        final AsyncTaskExecutor busyExecutor = mock(AsyncTaskExecutor.class);
+        final DriveTokenManager busyTokenManager = new DriveTokenManager(authorizedClientManager, busyExecutor, properties,
+                new SimpleMeterRegistry(), Clock.fixed(NOW, ZoneOffset.UTC));
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(authorizedClient("token-1", Duration.ofHours(1)));
+
+        assertEquals("token-1", busyTokenManager.accessToken(USER));
+        verifyNoInteractions(busyExecutor);
+    }
+
+    @Test
+    public void test_accessToken_waitForRunningRefreshTimesOut() throws Exception {
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        properties.getToken().setRefreshTimeout(Duration.ofMillis(50));
+        final DriveTokenManager impatientTokenManager = new DriveTokenManager(authorizedClientManager, new SimpleAsyncTaskExecutor(),
+                properties, new SimpleMeterRegistry(), Clock.fixed(NOW, ZoneOffset.UTC));
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class))).thenAnswer(invocation -> {
+            started.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return authorizedClient("token-1", Duration.ofHours(1));
+        });
+
+        final CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+            try {
+                impatientTokenManager.accessToken(USER);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        try {
+            assertThrows(IOException.class, () -> impatientTokenManager.accessToken(USER));
+        } finally {
+            release.countDown();
+        }
+        first.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void test_accessToken_missingAuthorizedClient() {
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class))).thenReturn(null);
+
+        assertThrows(IOException.class, () -> tokenManager.accessToken(USER));
+    }
+
+    @Test
+    public void test_accessToken_expiredTokenWaitsForRefresh() throws IOException {
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(authorizedClient("token-1", Duration.ofSeconds(10)), authorizedClient("token-2", Duration.ofHours(1)));
+
+        assertEquals("token-1", tokenManager.accessToken(USER));
+        assertEquals("token-2", tokenManager.accessToken(USER));
+    }
+
+    private String accessToken() {
+        try {
+            return tokenManager.accessToken(USER);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void awaitToken(final String expected) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!expected.equals(tokenManager.accessToken(USER)) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, tokenManager.accessToken(USER));
+    }
+
+    private static OAuth2AuthorizedClient authorizedClient(final String token, final Duration validFor) {
+        final OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, token,
+                NOW.minusSeconds(60), NOW.plus(validFor));
+        return new OAuth2AuthorizedClient(REGISTRATION, USER.principalName(), accessToken, new OAuth2RefreshToken("refresh", NOW));
+    }
+}
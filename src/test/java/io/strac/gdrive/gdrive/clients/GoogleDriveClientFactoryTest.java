@@ -0,0 +1,104 @@
+package io.strac.gdrive.gdrive.clients;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GoogleDriveClientFactoryTest {
+
+    @Mock
+    private DriveTokenManager tokenManager;
+
+    private GoogleDriveProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private GoogleDriveClientFactory clientFactory;
+
+    @BeforeEach
+    public void setup() {
+        properties = new GoogleDriveProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        clientFactory = new GoogleDriveClientFactory(tokenManager, new MockHttpTransport(),
+                new DriveRateLimiter(properties, meterRegistry), properties, meterRegistry);
+    }
+
+    @Test
+    public void test_createClient_cachedPerUser() {
+        final DriveUser user = new DriveUser("google", "user-1");
+
+        final Drive client = clientFactory.createClient(user);
+
+        assertSame(client, clientFactory.createClient(new DriveUser("google", "user-1")));
+        assertNotSame(client, clientFactory.createClient(new DriveUser("google", "user-2")));
+    }
+
+    @Test
+    public void test_createClient_usesLatestAccessToken() throws IOException {
+        final DriveUser user = new DriveUser("google", "user-1");
+        when(tokenManager.accessToken(user)).thenReturn("token-1", "token-2");
+
+        final Drive client = clientFactory.createClient(user);
+
+        assertEquals("Bearer token-1", buildRequest(client).getHeaders().getAuthorization());
+        assertEquals("Bearer token-2", buildRequest(client).getHeaders().getAuthorization());
+    }
+
+    @Test
+    public void test_createClient_missingAuthorizedClient() throws IOException {
+        when(tokenManager.accessToken(any())).thenThrow(new IOException("No authorized client for registration=google"));
+        final Drive client = clientFactory.createClient(new DriveUser("google", "user-1"));
+
+        assertThrows(IOException.class, () -> buildRequest(client));
+    }
+
+    @Test
+    public void test_createClient_batchTakesPermitPerRequest() throws IOException {
+        final DriveUser user = new DriveUser("google", "user-1");
+        final DriveRateLimiter rateLimiter = mock(DriveRateLimiter.class);
+        // A client error is not retried, so the batch is sent exactly once
+        final MockHttpTransport transport = new MockHttpTransport.Builder()
+                .setLowLevelHttpResponse(new MockLowLevelHttpResponse().setStatusCode(400))
+                .build();
+        final Drive client = new GoogleDriveClientFactory(tokenManager, transport, rateLimiter, properties, meterRegistry).createClient(user);
+
+        final BatchRequest batch = client.batch();
+        for (int i = 0; i < 3; i++) {
+            client.files().get("file-" + i).queue(batch, new JsonBatchCallback<File>() {
+                @Override
+                public void onSuccess(File file, HttpHeaders responseHeaders) {
+                }
+
+                @Override
+                public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                }
+            });
+        }
+        assertThrows(HttpResponseException.class, batch::execute);
+
+        verify(rateLimiter, times(3)).acquire(user);
+    }
+
+    private static HttpRequest buildRequest(Drive client) throws IOException {
+        return client.getRequestFactory().buildGetRequest(new GenericUrl(client.getBaseUrl() + "files"));
+    }
+}
@@ -1,21 +1,38 @@
 package io.strac.gdrive.gdrive.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.util.DateTime;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.strac.gdrive.gdrive.clients.DriveRateLimitedException;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveArchiveRequest;
+import io.strac.gdrive.gdrive.models.GoogleDriveBatchResult;
 import io.strac.gdrive.gdrive.models.GoogleDriveFileListResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileQuery;
 import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import io.strac.gdrive.gdrive.services.GoogleDriveArchiveService;
+import io.strac.gdrive.gdrive.services.GoogleDriveContentCache;
+import io.strac.gdrive.gdrive.services.GoogleDriveFilePageHandler;
 import io.strac.gdrive.gdrive.services.GoogleDriveService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.http.HttpHeaders;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 import static org.mockito.Mockito.*;
@@ -28,13 +45,18 @@ public class FilesControllerTests {
     @Mock
     private GoogleDriveService googleDriveService;
 
-    @InjectMocks
-    private FilesController filesController;
+    @Mock
+    private GoogleDriveArchiveService archiveService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     private MockMvc mockMvc;
 
     @BeforeEach
     public void setup() {
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        final FilesController filesController = new FilesController(googleDriveService, archiveService,
+                new GoogleDriveContentCache(properties, new SimpleMeterRegistry()), properties, objectMapper, new SimpleAsyncTaskExecutor());
         mockMvc = MockMvcBuilders.standaloneSetup(filesController).build();
     }
 
@@ -44,13 +66,105 @@ public class FilesControllerTests {
         final GoogleDriveFileResponse file = new GoogleDriveFileResponse();
         file.setId("test-file-id");
         file.setLastModifiedDateTime(modifiedDateTime.toString());
-        when(googleDriveService.getFilesPaginated(null)).thenReturn(new GoogleDriveFileListResponse(List.of(file), null));
+        when(googleDriveService.getFilesPaginated(any(GoogleDriveFileQuery.class), isNull(), isNull()))
+                .thenReturn(new GoogleDriveFileListResponse(List.of(file), null));
 
         mockMvc.perform(get(FilesController.API_RESOURCE_NAME))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.files[0].id").value("test-file-id"));
 
-        verify(googleDriveService, times(1)).getFilesPaginated(null);
+        verify(googleDriveService, times(1)).getFilesPaginated(any(GoogleDriveFileQuery.class), isNull(), isNull());
+    }
+
+    @Test
+    public void test_getFilesPaginated_pageSize() throws Exception {
+        when(googleDriveService.getFilesPaginated(any(GoogleDriveFileQuery.class), eq("token"), eq(500)))
+                .thenReturn(new GoogleDriveFileListResponse(List.of(), null));
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME)
+                        .param("nextPageToken", "token")
+                        .param("pageSize", "500"))
+                .andExpect(status().isOk());
+
+        verify(googleDriveService, times(1)).getFilesPaginated(any(GoogleDriveFileQuery.class), eq("token"), eq(500));
+    }
+
+    @Test
+    public void test_getFilesPaginated_query() throws Exception {
+        final GoogleDriveFileQuery expected = GoogleDriveFileQuery.builder()
+                .mimeType("application/pdf")
+                .modifiedAfter(Instant.parse("2024-01-01T00:00:00Z"))
+                .minSize(1024L)
+                .orderBy("name")
+                .fields("id,name")
+                .build();
+        when(googleDriveService.getFilesPaginated(eq(expected), isNull(), isNull()))
+                .thenReturn(new GoogleDriveFileListResponse(List.of(GoogleDriveFileResponse.builder().id("file-1").build()), null));
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME)
+                        .param("mimeType", "application/pdf")
+                        .param("modifiedAfter", "2024-01-01T00:00:00Z")
+                        .param("minSize", "1024")
+                        .param("orderBy", "name")
+                        .param("fields", "id,name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.files[0].id").value("file-1"))
+                .andExpect(jsonPath("$.files[0].name").doesNotExist());
+    }
+
+    @Test
+    public void test_getFilesPaginated_invalidQuery() throws Exception {
+        when(googleDriveService.getFilesPaginated(any(GoogleDriveFileQuery.class), isNull(), isNull()))
+                .thenThrow(new IllegalArgumentException("Unsupported orderBy: owner"));
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME).param("orderBy", "owner"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void test_getFilesPaginated_rateLimited() throws Exception {
+        when(googleDriveService.getFilesPaginated(any(GoogleDriveFileQuery.class), isNull(), isNull()))
+                .thenThrow(new DriveRateLimitedException("Too many requests", Duration.ofMillis(1500)));
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"));
+    }
+
+    @Test
+    public void test_searchFiles_success() throws Exception {
+        final GoogleDriveFileResponse file = GoogleDriveFileResponse.builder().id("file-1").name("report.pdf").build();
+        when(googleDriveService.searchByName("report", null, null)).thenReturn(new GoogleDriveFileListResponse(List.of(file), null));
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME + ":search").param("name", "report"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.files[0].name").value("report.pdf"));
+    }
+
+    @Test
+    public void test_searchFiles_invalidPageToken() throws Exception {
+        when(googleDriveService.searchByName("report", "index:-1", null)).thenThrow(new IllegalArgumentException("Invalid page token"));
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME + ":search").param("name", "report").param("nextPageToken", "index:-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void test_streamFiles_success() throws Exception {
+        final GoogleDriveFileResponse first = GoogleDriveFileResponse.builder().id("file-1").build();
+        final GoogleDriveFileResponse second = GoogleDriveFileResponse.builder().id("file-2").build();
+        doAnswer(invocation -> {
+            final GoogleDriveFilePageHandler handler = invocation.getArgument(1);
+            handler.onPage(List.of(first));
+            handler.onPage(List.of(second));
+            return null;
+        }).when(googleDriveService).listAllFiles(eq(1000), any());
+
+        final String expected = objectMapper.writeValueAsString(first) + "\n" + objectMapper.writeValueAsString(second) + "\n";
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME + ":stream").param("pageSize", "1000"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(expected));
     }
 
     @Test
@@ -68,9 +182,9 @@ public class FilesControllerTests {
 
         when(googleDriveService.getById(fileId)).thenReturn(file);
         doAnswer(invocation -> {
-            ((ByteArrayOutputStream) invocation.getArgument(1)).write("Test content".getBytes());
+            ((OutputStream) invocation.getArgument(1)).write("Test content".getBytes());
             return null;
-        }).when(googleDriveService).downloadById(eq(fileId), any(ByteArrayOutputStream.class));
+        }).when(googleDriveService).downloadById(eq(fileId), any(OutputStream.class));
 
         mockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId))
                 .andExpect(status().isOk())
@@ -79,7 +193,189 @@ public class FilesControllerTests {
                 .andExpect(content().bytes("Test content".getBytes()));
 
         verify(googleDriveService, times(1)).getById(fileId);
-        verify(googleDriveService, times(1)).downloadById(eq(fileId), any(ByteArrayOutputStream.class));
+        verify(googleDriveService, times(1)).downloadById(eq(fileId), any(OutputStream.class));
+    }
+
+    @Test
+    public void test_downloadFile_metadataFailure() throws Exception {
+        String fileId = "test-file-id";
+
+        when(googleDriveService.getById(fileId)).thenThrow(new IOException("Not Found"));
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write("Test content".getBytes());
+            return null;
+        }).when(googleDriveService).downloadById(eq(fileId), any(OutputStream.class));
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId))
+                .andExpect(status().isInternalServerError())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    public void test_downloadFile_range_success() throws Exception {
+        final DateTime modifiedDateTime = new DateTime(System.currentTimeMillis());
+        String fileId = "test-file-id";
+
+        GoogleDriveFileResponse file = new GoogleDriveFileResponse();
+        file.setId(fileId);
+        file.setName("test.txt");
+        file.setMimeType("text/plain");
+        file.setSize(12L);
+        file.setLastModifiedDateTime(modifiedDateTime.toString());
+
+        when(googleDriveService.getById(fileId)).thenReturn(file);
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(3)).write("content".getBytes());
+            return null;
+        }).when(googleDriveService).downloadRangeById(eq(fileId), eq(5L), eq(11L), any(OutputStream.class));
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId)
+                        .header(HttpHeaders.RANGE, "bytes=5-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 5-11/12"))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().bytes("content".getBytes()));
+
+        verify(googleDriveService, never()).downloadById(any(), any());
+    }
+
+    @Test
+    public void test_downloadFile_staleIfRange_returnsWholeFile() throws Exception {
+        String fileId = "test-file-id";
+
+        GoogleDriveFileResponse file = new GoogleDriveFileResponse();
+        file.setId(fileId);
+        file.setName("test.txt");
+        file.setMimeType("text/plain");
+        file.setSize(12L);
+        file.setLastModifiedDateTime("2024-11-01T10:00:00.000Z");
+
+        when(googleDriveService.getById(fileId)).thenReturn(file);
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId)
+                        .header(HttpHeaders.RANGE, "bytes=5-")
+                        .header(HttpHeaders.IF_RANGE, "Thu, 31 Oct 2024 10:00:00 GMT"))
+                .andExpect(status().isOk());
+
+        verify(googleDriveService, times(1)).downloadFile(eq(file), any(OutputStream.class));
+        verify(googleDriveService, never()).downloadRangeById(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void test_downloadFile_unsatisfiableRange() throws Exception {
+        String fileId = "test-file-id";
+
+        GoogleDriveFileResponse file = new GoogleDriveFileResponse();
+        file.setId(fileId);
+        file.setName("test.txt");
+        file.setSize(12L);
+
+        when(googleDriveService.getById(fileId)).thenReturn(file);
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId)
+                        .header(HttpHeaders.RANGE, "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */12"));
+    }
+
+    @Test
+    public void test_downloadFile_ifNoneMatch_notModified() throws Exception {
+        String fileId = "test-file-id";
+        GoogleDriveFileResponse file = GoogleDriveFileResponse.builder().id(fileId).name("test.txt").size(12L).md5Checksum("abc123").build();
+
+        when(googleDriveService.getById(fileId)).thenReturn(file);
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"old\", W/\"abc123\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc123\""));
+
+        verify(googleDriveService, never()).downloadById(any(), any());
+    }
+
+    @Test
+    public void test_downloadFile_servedFromContentCache(@TempDir Path cacheDirectory) throws Exception {
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        properties.getContentCache().setEnabled(true);
+        properties.getContentCache().setDirectory(cacheDirectory.toString());
+        final MockMvc cachingMockMvc = MockMvcBuilders.standaloneSetup(new FilesController(googleDriveService, archiveService,
+                new GoogleDriveContentCache(properties, new SimpleMeterRegistry()), properties, objectMapper,
+                new SimpleAsyncTaskExecutor())).build();
+        String fileId = "test-file-id";
+        GoogleDriveFileResponse file = GoogleDriveFileResponse.builder().id(fileId).name("test.txt").size(12L).md5Checksum("abc123").build();
+
+        when(googleDriveService.getById(fileId)).thenReturn(file);
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write("Test content".getBytes());
+            return null;
+        }).when(googleDriveService).downloadFile(eq(file), any(OutputStream.class));
+
+        for (int i = 0; i < 2; i++) {
+            cachingMockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.ETAG, "\"abc123\""))
+                    .andExpect(content().bytes("Test content".getBytes()));
+        }
+        cachingMockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId)
+                        .header(HttpHeaders.RANGE, "bytes=5-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes("content".getBytes()));
+
+        verify(googleDriveService, times(1)).downloadFile(eq(file), any(OutputStream.class));
+        verify(googleDriveService, never()).downloadRangeById(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void test_downloadFile_exportsWorkspaceDocument(@TempDir Path cacheDirectory) throws Exception {
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        properties.getContentCache().setEnabled(true);
+        properties.getContentCache().setDirectory(cacheDirectory.toString());
+        final MockMvc cachingMockMvc = MockMvcBuilders.standaloneSetup(new FilesController(googleDriveService, archiveService,
+                new GoogleDriveContentCache(properties, new SimpleMeterRegistry()), properties, objectMapper,
+                new SimpleAsyncTaskExecutor())).build();
+        String fileId = "doc-id";
+        GoogleDriveFileResponse file = GoogleDriveFileResponse.builder().id(fileId).name("Notes")
+                .mimeType("application/vnd.google-apps.document").lastModifiedDateTime("2024-01-01T00:00:00.000Z").build();
+
+        when(googleDriveService.getById(fileId)).thenReturn(file);
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(2)).write("%PDF".getBytes());
+            return null;
+        }).when(googleDriveService).exportFile(eq(file), eq("application/pdf"), any(OutputStream.class));
+
+        for (int i = 0; i < 2; i++) {
+            cachingMockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=Notes.pdf"))
+                    .andExpect(content().contentType("application/pdf"))
+                    .andExpect(content().bytes("%PDF".getBytes()));
+        }
+
+        verify(googleDriveService, times(1)).exportFile(eq(file), eq("application/pdf"), any(OutputStream.class));
+        verify(googleDriveService, never()).downloadFile(any(), any());
+    }
+
+    @Test
+    public void test_downloadFile_exportFormat() throws Exception {
+        String fileId = "sheet-id";
+        GoogleDriveFileResponse file = GoogleDriveFileResponse.builder().id(fileId).name("Budget")
+                .mimeType("application/vnd.google-apps.spreadsheet").build();
+
+        when(googleDriveService.getById(fileId)).thenReturn(file);
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(2)).write("a,b".getBytes());
+            return null;
+        }).when(googleDriveService).exportFile(eq(file), eq("text/csv"), any(OutputStream.class));
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId).param("format", "csv"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=Budget.csv"))
+                .andExpect(content().bytes("a,b".getBytes()));
+
+        mockMvc.perform(get(FilesController.API_RESOURCE_NAME + "/{fileId}", fileId).param("format", "docx"))
+                .andExpect(status().isBadRequest());
+
+        verify(googleDriveService, never()).downloadById(any(), any());
     }
 
     @Test
@@ -95,12 +391,32 @@ public class FilesControllerTests {
         uploadedFile.setId("file-id");
         uploadedFile.setLastModifiedDateTime(modifiedDateTime.toString());
 
-        when(googleDriveService.uploadFile(any(), any())).thenReturn(uploadedFile);
+        when(googleDriveService.uploadFile(eq("test.txt"), eq("text/plain"), any(InputStream.class), eq(12L)))
+                .thenReturn(uploadedFile);
         mockMvc.perform(multipart(FilesController.API_RESOURCE_NAME).file(multipartFile))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value("file-id"));
 
-        verify(googleDriveService, times(1)).uploadFile(any(), any());
+        verify(googleDriveService, times(1)).uploadFile(eq("test.txt"), eq("text/plain"), any(InputStream.class), eq(12L));
+    }
+
+    @Test
+    public void test_uploadFileStream_success() throws Exception {
+        final DateTime modifiedDateTime = new DateTime(System.currentTimeMillis());
+        GoogleDriveFileResponse uploadedFile = new GoogleDriveFileResponse();
+        uploadedFile.setId("file-id");
+        uploadedFile.setLastModifiedDateTime(modifiedDateTime.toString());
+
+        when(googleDriveService.uploadFile(eq("video.mp4"), eq("video/mp4"), any(InputStream.class), eq(12L)))
+                .thenReturn(uploadedFile);
+        mockMvc.perform(post(FilesController.API_RESOURCE_NAME)
+                        .param("name", "video.mp4")
+                        .contentType("video/mp4")
+                        .content("Test content".getBytes()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value("file-id"));
+
+        verify(googleDriveService, times(1)).uploadFile(eq("video.mp4"), eq("video/mp4"), any(InputStream.class), eq(12L));
     }
 
     @Test
@@ -114,4 +430,59 @@ public class FilesControllerTests {
 
         verify(googleDriveService, times(1)).deleteFile(fileId);
     }
+
+    @Test
+    public void test_batchDeleteFiles_success() throws Exception {
+        when(googleDriveService.batchDelete(List.of("file-1", "file-2"))).thenReturn(List.of(
+                GoogleDriveBatchResult.builder().id("file-1").status(204).build(),
+                GoogleDriveBatchResult.builder().id("file-2").status(404).error("File not found").build()));
+
+        mockMvc.perform(post(FilesController.API_RESOURCE_NAME + ":batchDelete")
+                        .contentType("application/json")
+                        .content("{\"ids\": [\"file-1\", \"file-2\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].status").value(204))
+                .andExpect(jsonPath("$.results[1].id").value("file-2"))
+                .andExpect(jsonPath("$.results[1].status").value(404));
+    }
+
+    @Test
+    public void test_batchGetFiles_emptyIds() throws Exception {
+        mockMvc.perform(post(FilesController.API_RESOURCE_NAME + ":batchGet")
+                        .contentType("application/json")
+                        .content("{\"ids\": []}"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(googleDriveService);
+    }
+
+    @Test
+    public void test_downloadArchive_success() throws Exception {
+        final GoogleDriveFileResponse file = GoogleDriveFileResponse.builder().id("file-1").name("a.txt").size(4L).build();
+        final List<GoogleDriveArchiveService.ArchiveEntry> entries = List.of(new GoogleDriveArchiveService.ArchiveEntry("a.txt", file));
+
+        when(archiveService.resolve(any(GoogleDriveArchiveRequest.class))).thenReturn(new GoogleDriveArchiveService.Archive("Reports", entries));
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write("PK".getBytes());
+            return null;
+        }).when(archiveService).writeZip(eq(entries), any(OutputStream.class));
+
+        mockMvc.perform(post(FilesController.API_RESOURCE_NAME + ":zip")
+                        .contentType("application/json")
+                        .content("{\"folderId\": \"folder-1\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=Reports.zip"))
+                .andExpect(content().contentType("application/zip"))
+                .andExpect(content().bytes("PK".getBytes()));
+    }
+
+    @Test
+    public void test_downloadArchive_folderAndIds() throws Exception {
+        mockMvc.perform(post(FilesController.API_RESOURCE_NAME + ":zip")
+                        .contentType("application/json")
+                        .content("{\"folderId\": \"folder-1\", \"ids\": [\"file-1\"]}"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(archiveService);
+    }
 }
@@ -0,0 +1,108 @@
+package io.strac.gdrive.gdrive.controllers;
+
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveUploadJobResponse;
+import io.strac.gdrive.gdrive.services.GoogleDriveUploadService;
+import io.strac.gdrive.gdrive.services.UploadQueueFullException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.time.Duration;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UploadsControllerTests {
+
+    @Mock
+    private GoogleDriveUploadService uploadService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setup() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new UploadsController(uploadService)).build();
+    }
+
+    @Test
+    public void test_submitUpload_accepted() throws Exception {
+        final MockMultipartFile file = new MockMultipartFile("file", "test.txt", "text/plain", "Hello, Drive".getBytes());
+        when(uploadService.submit(argThat((MultipartFile multipartFile) -> "test.txt".equals(multipartFile.getOriginalFilename()))))
+                .thenReturn(job("job-1", GoogleDriveUploadJobResponse.State.QUEUED));
+
+        mockMvc.perform(multipart(UploadsController.API_RESOURCE_NAME).file(file))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/uploads/job-1"))
+                .andExpect(jsonPath("$.id").value("job-1"))
+                .andExpect(jsonPath("$.state").value("QUEUED"));
+    }
+
+    @Test
+    public void test_submitUploadStream_accepted() throws Exception {
+        when(uploadService.submit(eq("video.mp4"), eq("video/mp4"), any(InputStream.class)))
+                .thenReturn(job("job-1", GoogleDriveUploadJobResponse.State.QUEUED));
+
+        mockMvc.perform(post(UploadsController.API_RESOURCE_NAME)
+                        .param("name", "video.mp4")
+                        .contentType("video/mp4")
+                        .content("Hello, Drive".getBytes()))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/uploads/job-1"));
+    }
+
+    @Test
+    public void test_submitUpload_queueFull() throws Exception {
+        when(uploadService.submit(eq("video.mp4"), eq("video/mp4"), any(InputStream.class)))
+                .thenThrow(new UploadQueueFullException("Upload queue is full", Duration.ofSeconds(5)));
+
+        mockMvc.perform(post(UploadsController.API_RESOURCE_NAME)
+                        .param("name", "video.mp4")
+                        .contentType("video/mp4")
+                        .content("Hello, Drive".getBytes()))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"));
+    }
+
+    @Test
+    public void test_getUpload_success() throws Exception {
+        final GoogleDriveUploadJobResponse job = job("job-1", GoogleDriveUploadJobResponse.State.SUCCEEDED);
+        final GoogleDriveFileResponse file = new GoogleDriveFileResponse();
+        file.setId("file-id");
+        job.setFile(file);
+        when(uploadService.get("job-1")).thenReturn(job);
+
+        mockMvc.perform(get(UploadsController.API_RESOURCE_NAME + "/job-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("SUCCEEDED"))
+                .andExpect(jsonPath("$.file.id").value("file-id"));
+    }
+
+    @Test
+    public void test_getUpload_notFound() throws Exception {
+        when(uploadService.get("job-1")).thenReturn(null);
+
+        mockMvc.perform(get(UploadsController.API_RESOURCE_NAME + "/job-1"))
+                .andExpect(status().isNotFound());
+    }
+
+    private static GoogleDriveUploadJobResponse job(final String id, final GoogleDriveUploadJobResponse.State state) {
+        return GoogleDriveUploadJobResponse.builder()
+                .id(id)
+                .state(state)
+                .name("test.txt")
+                .size(12L)
+                .bytesSent(0L)
+                .build();
+    }
+}
@@ -0,0 +1,363 @@
+package io.strac.gdrive.gdrive.fakes;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.ChangeList;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import com.google.api.services.drive.model.StartPageToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the Google Drive v3 REST API, for tests that exercise real HTTP traffic.
+ * Serves file listings and lookups from an in-memory set of files, and change pages queued by the test.
+ * Content added with {@link #addContent} is served for {@code alt=media}, honouring a single {@code Range}.
+ * Multipart and resumable uploads are accepted; their content is checksummed and discarded.
+ * Every response can be delayed, and a share of requests failed with 503, to simulate a slow or flaky Drive.
+ */
+public class FakeDriveServer implements AutoCloseable {
+    private static final String API_PATH = "/drive/v3/";
+    private static final String UPLOAD_PATH = "/upload/drive/v3/files";
+
+    private final HttpServer server;
+    private final Map<String, File> files = new ConcurrentSkipListMap<>();
+    private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final Queue<ChangeList> changePages = new ConcurrentLinkedQueue<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private volatile String startPageToken = "1";
+    private volatile Duration latency = Duration.ZERO;
+    private volatile double errorRate;
+
+    private FakeDriveServer(final HttpServer server) {
+        this.server = server;
+    }
+
+    public static FakeDriveServer start() throws IOException {
+        final FakeDriveServer fake = new FakeDriveServer(
+                HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0));
+        fake.server.createContext("/", fake::handle);
+        fake.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        fake.server.start();
+        return fake;
+    }
+
+    public String rootUrl() {
+        return "http://localhost:%d/".formatted(server.getAddress().getPort());
+    }
+
+    /**
+     * @return Drive client without authorization that talks to this server
+     */
+    public Drive client() {
+        return new Drive.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance(), null)
+                .setRootUrl(rootUrl())
+                .setApplicationName("fake-drive")
+                .build();
+    }
+
+    public void addFile(final File file) {
+        files.put(file.getId(), file);
+    }
+
+    /**
+     * Add a file together with its content, setting its size and checksum.
+     */
+    public void addContent(final File file, final byte[] content) {
+        addFile(file.setSize((long) content.length).setMd5Checksum(md5(content)));
+        contents.put(file.getId(), content);
+    }
+
+    /**
+     * Delay every response by this much.
+     */
+    public void setLatency(final Duration latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Share of requests, between 0 and 1, answered with a retryable {@code 503 backendError}.
+     */
+    public void setErrorRate(final double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public void setStartPageToken(final String startPageToken) {
+        this.startPageToken = startPageToken;
+    }
+
+    /**
+     * Queue a page for the next {@code changes.list} call. Without queued pages, an empty page is returned.
+     */
+    public void enqueueChanges(final ChangeList changes) {
+        changePages.add(changes);
+    }
+
+    /**
+     * @return Requests received so far, as {@code METHOD path}
+     */
+    public List<String> requests() {
+        return requests;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final String path = exchange.getRequestURI().getPath();
+            final Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            final String fileId = path.startsWith(API_PATH + "files/") ? path.substring((API_PATH + "files/").length()) : null;
+            requests.add(exchange.getRequestMethod() + " " + path);
+
+            if (!latency.isZero()) {
+                sleep(latency);
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                sendError(exchange, 503, "backendError");
+            } else if (path.equals(UPLOAD_PATH)) {
+                upload(exchange, query);
+            } else if (!path.startsWith(API_PATH)) {
+                exchange.sendResponseHeaders(404, -1);
+            } else if (path.equals(API_PATH + "changes/startPageToken")) {
+                sendJson(exchange, new StartPageToken().setStartPageToken(startPageToken));
+            } else if (path.equals(API_PATH + "changes")) {
+                final ChangeList page = changePages.poll();
+                sendJson(exchange, page != null ? page : new ChangeList()
+                        .setChanges(List.of())
+                        .setNewStartPageToken(query.get("pageToken")));
+            } else if (path.equals(API_PATH + "files")) {
+                sendJson(exchange, listFiles(query));
+            } else if (fileId != null && "DELETE".equals(exchange.getRequestMethod())) {
+                contents.remove(fileId);
+                exchange.sendResponseHeaders(files.remove(fileId) != null ? 204 : 404, -1);
+            } else if (fileId != null && "media".equals(query.get("alt")) && contents.containsKey(fileId)) {
+                sendContent(exchange, contents.get(fileId));
+            } else if (fileId != null && files.containsKey(fileId)) {
+                sendJson(exchange, files.get(fileId));
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        }
+    }
+
+    /**
+     * Multipart uploads arrive in one request. Resumable uploads first open a session, then send
+     * chunks with {@code Content-Range} until the last one, which is answered with the created file.
+     */
+    private void upload(final HttpExchange exchange, final Map<String, String> query) throws IOException {
+        final String uploadType = query.get("uploadType");
+        if ("resumable".equals(uploadType) && query.containsKey("upload_id")) {
+            final Upload upload = uploads.get(query.get("upload_id"));
+            if (upload == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final long received = upload.append(exchange.getRequestBody());
+            final String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+            final String total = contentRange != null ? contentRange.substring(contentRange.lastIndexOf('/') + 1) : "*";
+            if (!"*".equals(total) && Long.parseLong(total) == received) {
+                uploads.remove(query.get("upload_id"));
+                sendJson(exchange, created(upload.metadata, received, upload.md5()));
+                return;
+            }
+            if (received > 0) {
+                exchange.getResponseHeaders().add("Range", "bytes=0-" + (received - 1));
+            }
+            exchange.sendResponseHeaders(308, -1);
+        } else if ("resumable".equals(uploadType)) {
+            final File metadata = GsonFactory.getDefaultInstance().fromInputStream(exchange.getRequestBody(), File.class);
+            final String uploadId = String.valueOf(ids.incrementAndGet());
+            uploads.put(uploadId, new Upload(metadata));
+            exchange.getResponseHeaders().add("Location", rootUrl() + UPLOAD_PATH.substring(1) + "?uploadType=resumable&upload_id=" + uploadId);
+            exchange.sendResponseHeaders(200, -1);
+        } else {
+            final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            final byte[] body = exchange.getRequestBody().readAllBytes();
+            final MultipartBody multipart = MultipartBody.parse(contentType, body);
+            sendJson(exchange, created(multipart.metadata(), multipart.content().length, md5(multipart.content())));
+        }
+    }
+
+    private File created(final File metadata, final long size, final String md5Checksum) {
+        final File file = new File()
+                .setId("uploaded-" + ids.incrementAndGet())
+                .setName(metadata.getName())
+                .setMimeType(metadata.getMimeType())
+                .setSize(size)
+                .setMd5Checksum(md5Checksum)
+                .setVersion(1L)
+                .setModifiedTime(new DateTime(System.currentTimeMillis()));
+        addFile(file);
+        return file;
+    }
+
+    private static void sendContent(final HttpExchange exchange, final byte[] content) throws IOException {
+        final String range = exchange.getRequestHeaders().getFirst("Range");
+        int from = 0;
+        int to = content.length - 1;
+        if (range != null && range.startsWith("bytes=")) {
+            final String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            from = Integer.parseInt(bounds[0]);
+            to = bounds[1].isEmpty() ? to : Math.min(to, Integer.parseInt(bounds[1]));
+            exchange.getResponseHeaders().add("Content-Range", "bytes %d-%d/%d".formatted(from, to, content.length));
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(range != null ? 206 : 200, to - from + 1);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(content, from, to - from + 1);
+        }
+    }
+
+    private FileList listFiles(final Map<String, String> query) {
+        final List<File> all = new ArrayList<>(files.values());
+        final int pageSize = Integer.parseInt(query.getOrDefault("pageSize", "100"));
+        final int from = Integer.parseInt(query.getOrDefault("pageToken", "0"));
+        final int to = Math.min(from + pageSize, all.size());
+        return new FileList()
+                .setFiles(all.subList(from, to))
+                .setNextPageToken(to < all.size() ? String.valueOf(to) : null);
+    }
+
+    private static void sendError(final HttpExchange exchange, final int status, final String reason) throws IOException {
+        final byte[] json = ("{\"error\":{\"code\":%d,\"message\":\"%s\",\"errors\":[{\"reason\":\"%s\"}]}}")
+                .formatted(status, reason, reason)
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(json);
+        }
+    }
+
+    private static void sleep(final Duration duration) throws IOException {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static void sendJson(final HttpExchange exchange, final Object body) throws IOException {
+        final byte[] json = GsonFactory.getDefaultInstance().toString(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(200, json.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(json);
+        }
+    }
+
+    private static String md5(final byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, String> query(final String rawQuery) {
+        final Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                final int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    query.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                            URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static final class Upload {
+        private final File metadata;
+        private final MessageDigest digest;
+        private long received;
+
+        private Upload(final File metadata) {
+            this.metadata = metadata;
+            try {
+                this.digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private synchronized long append(final InputStream chunk) throws IOException {
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = chunk.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                received += read;
+            }
+            return received;
+        }
+
+        private synchronized String md5() {
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
+    /**
+     * Body of a {@code multipart/related} upload: the file metadata as JSON, then the content.
+     */
+    private record MultipartBody(File metadata, byte[] content) {
+        private static MultipartBody parse(final String contentType, final byte[] body) throws IOException {
+            final String boundary = "--" + contentType.substring(contentType.indexOf("boundary=") + "boundary=".length()).replace("\"", "");
+            final byte[] delimiter = ("\r\n" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+            final int metadataStart = indexOf(body, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1), 0) + 4;
+            final int metadataEnd = indexOf(body, delimiter, metadataStart);
+            final int contentStart = indexOf(body, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1), metadataEnd) + 4;
+            final int contentEnd = indexOf(body, delimiter, contentStart);
+            final File metadata = GsonFactory.getDefaultInstance().fromString(
+                    new String(body, metadataStart, metadataEnd - metadataStart, StandardCharsets.UTF_8), File.class);
+            return new MultipartBody(metadata, Arrays.copyOfRange(body, contentStart, contentEnd));
+        }
+
+        private static int indexOf(final byte[] body, final byte[] target, final int from) {
+            outer:
+            for (int i = from; i <= body.length - target.length; i++) {
+                for (int j = 0; j < target.length; j++) {
+                    if (body[i + j] != target[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            throw new IllegalArgumentException("Malformed multipart body");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.strac.gdrive.gdrive.oauth;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CachingOAuth2AuthorizedClientServiceTest {
+    private static final ClientRegistration REGISTRATION = ClientRegistration.withRegistrationId("google")
+            .clientId("client")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("http://localhost/login/oauth2/code/google")
+            .authorizationUri("http://localhost/authorize")
+            .tokenUri("http://localhost/token")
+            .build();
+
+    @Mock
+    private OAuth2AuthorizedClientService delegate;
+
+    private CachingOAuth2AuthorizedClientService clientService;
+
+    @BeforeEach
+    public void setup() {
+        clientService = new CachingOAuth2AuthorizedClientService(delegate, 100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void test_loadAuthorizedClient_cached() {
+        final OAuth2AuthorizedClient client = authorizedClient("user-1", "token-1");
+        when(delegate.loadAuthorizedClient("google", "user-1")).thenReturn(client);
+
+        assertSame(client, clientService.loadAuthorizedClient("google", "user-1"));
+        assertSame(client, clientService.loadAuthorizedClient("google", "user-1"));
+
+        verify(delegate, times(1)).loadAuthorizedClient("google", "user-1");
+    }
+
+    @Test
+    public void test_loadAuthorizedClient_missingNotCached() {
+        final OAuth2AuthorizedClient client = authorizedClient("user-1", "token-1");
+        when(delegate.loadAuthorizedClient("google", "user-1")).thenReturn(null, client);
+
+        assertNull(clientService.loadAuthorizedClient("google", "user-1"));
+        assertSame(client, clientService.loadAuthorizedClient("google", "user-1"));
+    }
+
+    @Test
+    public void test_saveAuthorizedClient_writesThrough() {
+        final OAuth2AuthorizedClient client = authorizedClient("user-1", "token-2");
+        final TestingAuthenticationToken principal = new TestingAuthenticationToken("user-1", null);
+
+        clientService.saveAuthorizedClient(client, principal);
+
+        verify(delegate).saveAuthorizedClient(client, principal);
+        assertSame(client, clientService.loadAuthorizedClient("google", "user-1"));
+        verify(delegate, never()).loadAuthorizedClient("google", "user-1");
+    }
+
+    @Test
+    public void test_removeAuthorizedClient_invalidates() {
+        when(delegate.loadAuthorizedClient("google", "user-1")).thenReturn(authorizedClient("user-1", "token-1"), null);
+        clientService.loadAuthorizedClient("google", "user-1");
+
+        clientService.removeAuthorizedClient("google", "user-1");
+
+        verify(delegate).removeAuthorizedClient("google", "user-1");
+        assertNull(clientService.loadAuthorizedClient("google", "user-1"));
+    }
+
+    private static OAuth2AuthorizedClient authorizedClient(final String principalName, final String token) {
+        final Instant now = Instant.now();
+        return new OAuth2AuthorizedClient(REGISTRATION, principalName,
+                new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, token, now, now.plus(Duration.ofHours(1))));
+    }
+}
@@ -0,0 +1,101 @@
+package io.strac.gdrive.gdrive.oauth;
+
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveUploadJobResponse;
+import io.strac.gdrive.gdrive.services.JdbcUploadJobStore;
+import io.strac.gdrive.gdrive.services.UploadJobStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.oauth2.client.JdbcOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.session.jdbc.JdbcIndexedSessionRepository;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The jdbc profile against embedded H2, standing in for the database shared by all nodes.
+ */
+@SpringBootTest(properties = {"spring.datasource.url=jdbc:h2:mem:gdrive;DB_CLOSE_DELAY=-1", "spring.sql.init.platform=h2"})
+@ActiveProfiles("jdbc")
+class JdbcAuthorizedClientStoreTests {
+
+    @Autowired
+    private OAuth2AuthorizedClientService authorizedClientService;
+
+    @Autowired
+    private ClientRegistrationRepository clientRegistrations;
+
+    @Autowired
+    private JdbcOperations jdbcOperations;
+
+    @Autowired
+    private JdbcIndexedSessionRepository sessionRepository;
+
+    @Autowired
+    private UploadJobStore uploadJobStore;
+
+    @Test
+    void test_authorizedClient_sharedThroughDatabase() {
+        assertInstanceOf(CachingOAuth2AuthorizedClientService.class, authorizedClientService);
+        final Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        final OAuth2AuthorizedClient client = new OAuth2AuthorizedClient(clientRegistrations.findByRegistrationId("google"), "user-1",
+                new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "token-1", now, now.plus(Duration.ofHours(1))),
+                new OAuth2RefreshToken("refresh-1", now));
+
+        authorizedClientService.saveAuthorizedClient(client, new TestingAuthenticationToken("user-1", null));
+
+        // As another node would see it, without the near-cache
+        final OAuth2AuthorizedClient stored = new JdbcOAuth2AuthorizedClientService(jdbcOperations, clientRegistrations)
+                .loadAuthorizedClient("google", "user-1");
+        assertEquals("token-1", stored.getAccessToken().getTokenValue());
+        assertEquals("refresh-1", stored.getRefreshToken().getTokenValue());
+    }
+
+    @Test
+    void test_session_sharedThroughDatabase() {
+        assertSessionRoundTrip(sessionRepository);
+    }
+
+    @Test
+    void test_uploadJob_sharedThroughDatabase() {
+        assertInstanceOf(JdbcUploadJobStore.class, uploadJobStore);
+        final DriveUser user = new DriveUser("google", "user-1");
+        final GoogleDriveUploadJobResponse job = GoogleDriveUploadJobResponse.builder()
+                .id("job-1").state(GoogleDriveUploadJobResponse.State.RUNNING).name("hello.txt").size(12).attempts(1).build();
+        uploadJobStore.save(user, job);
+
+        assertEquals(GoogleDriveUploadJobResponse.State.RUNNING, uploadJobStore.find(user, "job-1").getState());
+        assertNull(uploadJobStore.find(new DriveUser("google", "user-2"), "job-1"));
+
+        job.setState(GoogleDriveUploadJobResponse.State.SUCCEEDED);
+        job.setFile(GoogleDriveFileResponse.builder().id("file-1").build());
+        uploadJobStore.save(user, job);
+
+        final GoogleDriveUploadJobResponse stored = uploadJobStore.find(user, "job-1");
+        assertEquals(GoogleDriveUploadJobResponse.State.SUCCEEDED, stored.getState());
+        assertEquals("file-1", stored.getFile().getId());
+    }
+
+    private static <S extends Session> void assertSessionRoundTrip(final SessionRepository<S> repository) {
+        final S session = repository.createSession();
+        session.setAttribute("attribute", "value");
+        repository.save(session);
+
+        assertEquals("value", repository.findById(session.getId()).getAttribute("attribute"));
+    }
+}
@@ -0,0 +1,122 @@
+package io.strac.gdrive.gdrive.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DriveSingleFlightTest {
+    private static final DriveUser ALICE = new DriveUser("google", "alice");
+    private static final DriveUser BOB = new DriveUser("google", "bob");
+
+    private SimpleMeterRegistry meterRegistry;
+    private DriveSingleFlight singleFlight;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new DriveSingleFlight(true, new GoogleDriveMetrics(ObservationRegistry.NOOP, meterRegistry));
+    }
+
+    @Test
+    public void test_execute_sharesCallInFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final GoogleDriveMetrics.DriveCall<String> call = () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "file";
+        };
+
+        final CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> execute(ALICE, call));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> execute(ALICE, call));
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertEquals("file", first.get(5, TimeUnit.SECONDS));
+        assertEquals("file", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void test_execute_neverSharesBetweenUsers() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<String> alice = CompletableFuture.supplyAsync(() -> execute(ALICE, () -> {
+            started.countDown();
+            await(release);
+            return "alice";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertEquals("bob", singleFlight.execute(new DriveSingleFlight.Key("get", BOB, "file-1"), () -> "bob"));
+        release.countDown();
+        assertEquals("alice", alice.get(5, TimeUnit.SECONDS));
+        assertEquals(0, meterRegistry.find("gdrive.coalesced").counters().size());
+    }
+
+    @Test
+    public void test_execute_sharesFailure() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final GoogleDriveMetrics.DriveCall<String> call = () -> {
+            started.countDown();
+            await(release);
+            throw new IOException("Not Found");
+        };
+
+        final CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> execute(ALICE, call));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> execute(ALICE, call));
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertThrows(Exception.class, () -> second.get(5, TimeUnit.SECONDS));
+        // The next call starts afresh
+        assertEquals("file", singleFlight.execute(new DriveSingleFlight.Key("get", ALICE, "file-1"), () -> "file"));
+    }
+
+    private String execute(final DriveUser user, final GoogleDriveMetrics.DriveCall<String> call) {
+        try {
+            return singleFlight.execute(new DriveSingleFlight.Key("get", user, "file-1"), call);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void awaitCoalesced(final int expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalesced() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, coalesced());
+    }
+
+    private double coalesced() {
+        final var counter = meterRegistry.find("gdrive.coalesced").counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static void await(final CountDownLatch latch) throws IOException {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IOException("Timed out");
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.strac.gdrive.gdrive.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DriveTaskScopeTest {
+
+    @Test
+    public void test_join_success() throws IOException {
+        try (DriveTaskScope scope = new DriveTaskScope(new SimpleAsyncTaskExecutor())) {
+            final CompletableFuture<String> first = scope.fork(() -> "first");
+            final CompletableFuture<String> second = scope.fork(() -> "second");
+
+            assertEquals("first", scope.join(first));
+            assertEquals("second", scope.join(second));
+        }
+    }
+
+    @Test
+    public void test_failure_cancelsSiblings() throws InterruptedException {
+        final CountDownLatch siblingInterrupted = new CountDownLatch(1);
+        try (DriveTaskScope scope = new DriveTaskScope(new SimpleAsyncTaskExecutor())) {
+            final CompletableFuture<String> slow = scope.fork(() -> {
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    siblingInterrupted.countDown();
+                }
+                return "slow";
+            });
+            scope.fork(() -> {
+                throw new IOException("Rate Limit Exceeded");
+            });
+
+            final IOException failure = assertThrows(IOException.class, () -> scope.join(slow));
+            assertEquals("Rate Limit Exceeded", failure.getMessage());
+        }
+        assertTrue(siblingInterrupted.await(5, TimeUnit.SECONDS));
+    }
+}
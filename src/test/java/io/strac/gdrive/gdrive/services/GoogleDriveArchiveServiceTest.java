@@ -0,0 +1,131 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.google.api.client.http.HttpResponseException;
+import io.strac.gdrive.gdrive.clients.DriveRateLimitedException;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveArchiveRequest;
+import io.strac.gdrive.gdrive.models.GoogleDriveBatchResult;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileListResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileQuery;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GoogleDriveArchiveServiceTest {
+
+    @Mock
+    private GoogleDriveService googleDriveService;
+
+    private GoogleDriveArchiveService archiveService;
+
+    @BeforeEach
+    public void setup() {
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        properties.getArchive().setPrefetchBudget(DataSize.ofBytes(1024));
+        archiveService = new GoogleDriveArchiveService(googleDriveService, new SimpleAsyncTaskExecutor(), properties);
+    }
+
+    @Test
+    public void test_resolve_walksSubfoldersAndSkipsGoogleDocs() throws IOException {
+        when(googleDriveService.getById("root")).thenReturn(folder("root", "Reports"));
+        when(googleDriveService.getFilesPaginated(eq(GoogleDriveFileQuery.builder().parent("root").build()), isNull(), eq(GoogleDriveService.MAX_PAGE_SIZE)))
+                .thenReturn(new GoogleDriveFileListResponse(List.of(file("a", "a.txt", "text/plain", 3), folder("sub", "2024")), "page-2"));
+        when(googleDriveService.getFilesPaginated(eq(GoogleDriveFileQuery.builder().parent("root").build()), eq("page-2"), eq(GoogleDriveService.MAX_PAGE_SIZE)))
+                .thenReturn(new GoogleDriveFileListResponse(List.of(file("doc", "Notes", "application/vnd.google-apps.document", 0)), null));
+        when(googleDriveService.getFilesPaginated(eq(GoogleDriveFileQuery.builder().parent("sub").build()), isNull(), eq(GoogleDriveService.MAX_PAGE_SIZE)))
+                .thenReturn(new GoogleDriveFileListResponse(List.of(file("b", "q1/q2.csv", "text/csv", 3)), null));
+
+        final GoogleDriveArchiveService.Archive archive = archiveService.resolve(GoogleDriveArchiveRequest.builder().folderId("root").build());
+
+        assertEquals("Reports", archive.name());
+        assertEquals(List.of("a.txt", "2024/q1_q2.csv"), archive.entries().stream().map(GoogleDriveArchiveService.ArchiveEntry::path).toList());
+    }
+
+    @Test
+    public void test_resolve_onlyMissingFilesAreBadRequests() throws IOException {
+        final GoogleDriveArchiveRequest request = GoogleDriveArchiveRequest.builder().ids(List.of("a", "gone")).build();
+        final GoogleDriveBatchResult found = GoogleDriveBatchResult.builder().id("a").status(200).file(file("a", "a.txt", "text/plain", 3)).build();
+
+        when(googleDriveService.batchGetByIds(List.of("a", "gone")))
+                .thenReturn(List.of(found, GoogleDriveBatchResult.builder().id("gone").status(404).reason("notFound").build()));
+        assertThrows(IllegalArgumentException.class, () -> archiveService.resolve(request));
+
+        when(googleDriveService.batchGetByIds(List.of("a", "gone")))
+                .thenReturn(List.of(found, GoogleDriveBatchResult.builder().id("gone").status(403).reason("insufficientFilePermissions").build()));
+        assertEquals(403, assertThrows(HttpResponseException.class, () -> archiveService.resolve(request)).getStatusCode());
+
+        when(googleDriveService.batchGetByIds(List.of("a", "gone")))
+                .thenReturn(List.of(found, GoogleDriveBatchResult.builder().id("gone").status(403).reason("userRateLimitExceeded").build()));
+        assertThrows(DriveRateLimitedException.class, () -> archiveService.resolve(request));
+
+        when(googleDriveService.batchGetByIds(List.of("a", "gone")))
+                .thenReturn(List.of(found, GoogleDriveBatchResult.builder().id("gone").status(503).build()));
+        assertEquals(503, assertThrows(HttpResponseException.class, () -> archiveService.resolve(request)).getStatusCode());
+    }
+
+    @Test
+    public void test_writeZip_writesEntriesInOrder() throws IOException {
+        final List<GoogleDriveArchiveService.ArchiveEntry> entries = List.of(
+                new GoogleDriveArchiveService.ArchiveEntry("notes.txt", file("1", "notes.txt", "text/plain", 5)),
+                new GoogleDriveArchiveService.ArchiveEntry("photo.jpg", file("2", "photo.jpg", "image/jpeg", 5)),
+                new GoogleDriveArchiveService.ArchiveEntry("notes.txt", file("3", "notes.txt", "text/plain", 5)),
+                new GoogleDriveArchiveService.ArchiveEntry("video.mp4", file("4", "video.mp4", "video/mp4", 2048)));
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write(("file" + invocation.getArgument(0)).getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(googleDriveService).downloadById(any(), any(OutputStream.class));
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write(new byte[2048]);
+            return null;
+        }).when(googleDriveService).downloadFile(eq(entries.get(3).file()), any(OutputStream.class));
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        archiveService.writeZip(entries, outputStream);
+
+        final List<String> names = new ArrayList<>();
+        final List<Integer> methods = new ArrayList<>();
+        final List<String> contents = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                names.add(entry.getName());
+                methods.add(entry.getMethod());
+                contents.add(new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(List.of("notes.txt", "photo.jpg", "notes (1).txt", "video.mp4"), names);
+        assertEquals(List.of(ZipEntry.DEFLATED, ZipEntry.STORED, ZipEntry.DEFLATED, ZipEntry.DEFLATED), methods);
+        assertEquals(List.of("file1", "file2", "file3"), contents.subList(0, 3));
+        // Larger than the prefetch budget, so streamed into the archive when its turn came
+        verify(googleDriveService, never()).downloadById(eq("4"), any());
+        // Files downloaded ahead never take the parallel or shared path of downloadFile
+        verify(googleDriveService, times(1)).downloadFile(any(), any(OutputStream.class));
+    }
+
+    private static GoogleDriveFileResponse file(String id, String name, String mimeType, long size) {
+        return GoogleDriveFileResponse.builder().id(id).name(name).mimeType(mimeType).size(size).build();
+    }
+
+    private static GoogleDriveFileResponse folder(String id, String name) {
+        return GoogleDriveFileResponse.builder().id(id).name(name).mimeType(GoogleDriveArchiveService.FOLDER_MIME_TYPE).build();
+    }
+}
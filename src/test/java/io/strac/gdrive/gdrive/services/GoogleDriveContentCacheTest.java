@@ -0,0 +1,143 @@
+package io.strac.gdrive.gdrive.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class GoogleDriveContentCacheTest {
+    private static final byte[] CONTENT = "Test content".getBytes();
+
+    @TempDir
+    private Path cacheDirectory;
+
+    private SimpleMeterRegistry meterRegistry;
+    private GoogleDriveContentCache contentCache;
+
+    @BeforeEach
+    public void setup() {
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        properties.getContentCache().setEnabled(true);
+        properties.getContentCache().setDirectory(cacheDirectory.toString());
+        meterRegistry = new SimpleMeterRegistry();
+        contentCache = new GoogleDriveContentCache(properties, meterRegistry);
+    }
+
+    @Test
+    public void test_fill_cachesCompleteContentPerChecksum() throws IOException {
+        final GoogleDriveFileResponse file = file("abc123", CONTENT.length);
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+        assertNull(contentCache.open(file));
+        contentCache.fill(file, out -> out.write(CONTENT), response);
+
+        assertArrayEquals(CONTENT, response.toByteArray());
+        assertArrayEquals(CONTENT, read(contentCache.open(file)));
+        assertNull(contentCache.open(file("def456", CONTENT.length)));
+        assertEquals(1.0 / 3, meterRegistry.get("gdrive.content.hit.ratio").gauge().value(), 0.001);
+    }
+
+    @Test
+    public void test_fill_skipsTruncatedContent() throws IOException {
+        final GoogleDriveFileResponse file = file("abc123", CONTENT.length + 1);
+
+        contentCache.fill(file, out -> out.write(CONTENT), new ByteArrayOutputStream());
+
+        assertNull(contentCache.open(file));
+        try (var leftovers = Files.list(cacheDirectory)) {
+            assertEquals(0, leftovers.count());
+        }
+    }
+
+    @Test
+    public void test_fillExport_cachesPerFormatAndModifiedTime() throws IOException {
+        final GoogleDriveFileResponse document = document("2024-01-01T00:00:00.000Z");
+
+        contentCache.fillExport(document, "application/pdf", out -> out.write(CONTENT), new ByteArrayOutputStream());
+
+        assertArrayEquals(CONTENT, read(contentCache.openExport(document, "application/pdf")));
+        assertNull(contentCache.openExport(document, "text/plain"));
+        assertNull(contentCache.openExport(document("2024-01-02T00:00:00.000Z"), "application/pdf"));
+    }
+
+    @Test
+    public void test_fillExport_skipsOversizedExport() throws IOException {
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        properties.getContentCache().setEnabled(true);
+        properties.getContentCache().setDirectory(cacheDirectory.toString());
+        properties.getContentCache().setMaximumFileSize(DataSize.ofBytes(4));
+        final GoogleDriveContentCache smallCache = new GoogleDriveContentCache(properties, new SimpleMeterRegistry());
+        final GoogleDriveFileResponse document = document("2024-01-01T00:00:00.000Z");
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+        smallCache.fillExport(document, "application/pdf", out -> out.write(CONTENT), response);
+
+        assertArrayEquals(CONTENT, response.toByteArray());
+        assertNull(smallCache.openExport(document, "application/pdf"));
+    }
+
+    @Test
+    public void test_transferTo_copiesRange() throws IOException {
+        final GoogleDriveFileResponse file = file("abc123", CONTENT.length);
+        contentCache.fill(file, out -> out.write(CONTENT), new ByteArrayOutputStream());
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+        try (FileChannel channel = contentCache.open(file)) {
+            GoogleDriveContentCache.transferTo(channel, 5, 7, response);
+        }
+
+        assertEquals("content", response.toString());
+    }
+
+    @Test
+    public void test_open_staysReadableWhenDeleted() throws IOException {
+        final GoogleDriveFileResponse file = file("abc123", CONTENT.length);
+        contentCache.fill(file, out -> out.write(CONTENT), new ByteArrayOutputStream());
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+        try (FileChannel channel = contentCache.open(file)) {
+            // As the eviction of the entry would
+            try (var cached = Files.list(cacheDirectory)) {
+                for (Path path : cached.toList()) {
+                    Files.delete(path);
+                }
+            }
+            assertNull(contentCache.open(file));
+            GoogleDriveContentCache.transferTo(channel, 0, CONTENT.length, response);
+        }
+
+        assertArrayEquals(CONTENT, response.toByteArray());
+    }
+
+    private static byte[] read(final FileChannel channel) throws IOException {
+        assertNotNull(channel);
+        try (channel) {
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            GoogleDriveContentCache.transferTo(channel, 0, channel.size(), content);
+            return content.toByteArray();
+        }
+    }
+
+    private static GoogleDriveFileResponse document(final String modifiedTime) {
+        return GoogleDriveFileResponse.builder().id("doc-1").mimeType("application/vnd.google-apps.document")
+                .lastModifiedDateTime(modifiedTime).build();
+    }
+
+    private static GoogleDriveFileResponse file(final String md5Checksum, final long size) {
+        return GoogleDriveFileResponse.builder().id("file-1").size(size).md5Checksum(md5Checksum).build();
+    }
+}
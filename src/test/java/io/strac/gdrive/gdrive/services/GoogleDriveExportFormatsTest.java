@@ -0,0 +1,60 @@
+package io.strac.gdrive.gdrive.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GoogleDriveExportFormatsTest {
+    private static final String DOCUMENT = "application/vnd.google-apps.document";
+    private static final String SPREADSHEET = "application/vnd.google-apps.spreadsheet";
+
+    @Test
+    public void test_isWorkspaceDocument() {
+        assertTrue(GoogleDriveExportFormats.isWorkspaceDocument(DOCUMENT));
+        assertFalse(GoogleDriveExportFormats.isWorkspaceDocument(GoogleDriveArchiveService.FOLDER_MIME_TYPE));
+        assertFalse(GoogleDriveExportFormats.isWorkspaceDocument("application/pdf"));
+        assertFalse(GoogleDriveExportFormats.isWorkspaceDocument(null));
+    }
+
+    @Test
+    public void test_resolve_default() {
+        assertEquals("pdf", GoogleDriveExportFormats.resolve(DOCUMENT, null, null).extension());
+        assertEquals("xlsx", GoogleDriveExportFormats.resolve(SPREADSHEET, null, "*/*").extension());
+    }
+
+    @Test
+    public void test_resolve_requestedFormat() {
+        assertEquals("text/csv", GoogleDriveExportFormats.resolve(SPREADSHEET, "CSV", null).mimeType());
+        assertEquals("odt", GoogleDriveExportFormats.resolve(DOCUMENT, "application/vnd.oasis.opendocument.text", null).extension());
+    }
+
+    @Test
+    public void test_resolve_accept() {
+        assertEquals("csv", GoogleDriveExportFormats.resolve(SPREADSHEET, null, "text/csv;q=0.9, application/json").extension());
+        assertEquals("txt", GoogleDriveExportFormats.resolve(DOCUMENT, null, "text/*").extension());
+        assertEquals("pdf", GoogleDriveExportFormats.resolve(DOCUMENT, null, "not a media type").extension());
+    }
+
+    @Test
+    public void test_resolve_acceptByQuality() {
+        assertEquals("pdf", GoogleDriveExportFormats.resolve(SPREADSHEET, null, "text/csv;q=0.1, application/pdf").extension());
+        assertEquals("csv", GoogleDriveExportFormats.resolve(SPREADSHEET, null, "application/pdf;q=0.5, text/csv;q=0.8").extension());
+        assertEquals("md", GoogleDriveExportFormats.resolve(DOCUMENT, null, "text/*;q=0.8, text/plain;q=0.1").extension());
+    }
+
+    @Test
+    public void test_resolve_acceptRefused() {
+        assertEquals("md", GoogleDriveExportFormats.resolve(DOCUMENT, null, "text/*, text/plain;q=0").extension());
+        assertEquals("csv", GoogleDriveExportFormats.resolve(SPREADSHEET, null, "text/csv;q=0.2, application/pdf;q=0").extension());
+        assertEquals("pdf", GoogleDriveExportFormats.resolve(SPREADSHEET, null, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet;q=0").extension());
+    }
+
+    @Test
+    public void test_resolve_unsupported() {
+        assertThrows(IllegalArgumentException.class, () -> GoogleDriveExportFormats.resolve(SPREADSHEET, "docx", null));
+        assertThrows(IllegalArgumentException.class, () -> GoogleDriveExportFormats.resolve("application/vnd.google-apps.form", null, null));
+    }
+}
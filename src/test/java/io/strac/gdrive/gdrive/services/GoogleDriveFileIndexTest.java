@@ -0,0 +1,140 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
+import com.google.api.services.drive.model.File;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.fakes.FakeDriveServer;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GoogleDriveFileIndexTest {
+    private static final DriveUser USER = new DriveUser("google", "user-1");
+
+    @TempDir
+    private Path storageDirectory;
+
+    private FakeDriveServer server;
+    private Drive client;
+    private GoogleDriveProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = FakeDriveServer.start();
+        client = server.client();
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new GoogleDriveProperties();
+        properties.getIndex().setEnabled(true);
+        properties.getIndex().setMaxStaleness(Duration.ZERO);
+        properties.getIndex().setStorageDirectory(storageDirectory.toString());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void test_files_bootstrapsThenAppliesChanges() throws IOException {
+        server.addFile(file("file-1", "a.txt"));
+        server.addFile(file("file-2", "b.txt"));
+        final GoogleDriveFileIndex index = newIndex();
+
+        assertEquals(Set.of("file-1", "file-2"), ids(index.files(USER, client)));
+
+        server.enqueueChanges(new ChangeList()
+                .setChanges(List.of(
+                        new Change().setChangeType("file").setFileId("file-1").setRemoved(true),
+                        new Change().setChangeType("file").setFileId("file-3").setFile(file("file-3", "c.txt"))))
+                .setNewStartPageToken("2"));
+
+        assertEquals(Set.of("file-2", "file-3"), ids(index.files(USER, client)));
+        assertEquals("c.txt", index.get(USER, client, "file-3").getName());
+    }
+
+    @Test
+    public void test_files_resumesFromPersistedStartPageToken() throws IOException {
+        server.addFile(file("file-1", "a.txt"));
+        newIndex().files(USER, client);
+        server.requests().clear();
+
+        final GoogleDriveFileIndex restarted = newIndex();
+
+        assertEquals(Set.of("file-1"), ids(restarted.files(USER, client)));
+        assertTrue(server.requests().contains("GET /drive/v3/changes"));
+        assertFalse(server.requests().contains("GET /drive/v3/files"));
+    }
+
+    @Test
+    public void test_files_servesFromMemoryWithinStaleness() throws IOException {
+        properties.getIndex().setMaxStaleness(Duration.ofMinutes(1));
+        server.addFile(file("file-1", "a.txt"));
+        final GoogleDriveFileIndex index = newIndex();
+        index.files(USER, client);
+        server.requests().clear();
+
+        index.files(USER, client);
+
+        assertTrue(server.requests().isEmpty());
+    }
+
+    @Test
+    public void test_findByContent_matchesChecksumAndSize() throws IOException {
+        server.addFile(file("file-1", "a.txt").setMd5Checksum("abc").setSize(12L));
+        server.addFile(file("file-2", "b.txt").setMd5Checksum("def").setSize(12L));
+        final GoogleDriveFileIndex index = newIndex();
+
+        assertEquals("file-1", index.findByContent(USER, client, "abc", 12).getId());
+        assertNull(index.findByContent(USER, client, "abc", 13));
+        assertNull(index.findByContent(USER, client, "xyz", 12));
+
+        index.remove("file-1");
+        assertNull(index.findByContent(USER, client, "abc", 12));
+    }
+
+    @Test
+    public void test_files_observesDriveCalls() {
+        server.setErrorRate(1);
+        final GoogleDriveFileIndex index = newIndex();
+
+        assertThrows(IOException.class, () -> index.files(USER, client));
+        assertEquals(1.0, meterRegistry.get("gdrive.errors").tag("operation", "changes.getStartPageToken").counter().count());
+    }
+
+    private GoogleDriveFileIndex newIndex() {
+        return new GoogleDriveFileIndex(properties, new GoogleDriveIndexStore(properties, new ObjectMapper()),
+                new GoogleDriveMetrics(ObservationRegistry.NOOP, meterRegistry));
+    }
+
+    private static File file(final String id, final String name) {
+        return new File().setId(id).setName(name).setModifiedTime(new DateTime(System.currentTimeMillis()));
+    }
+
+    private static Set<String> ids(final Collection<GoogleDriveFileResponse> files) {
+        return files.stream().map(GoogleDriveFileResponse::getId).collect(Collectors.toSet());
+    }
+}
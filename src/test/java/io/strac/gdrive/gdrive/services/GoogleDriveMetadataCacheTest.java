@@ -0,0 +1,62 @@
+package io.strac.gdrive.gdrive.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GoogleDriveMetadataCacheTest {
+    private static final DriveUser ALICE = new DriveUser("google", "alice");
+    private static final DriveUser BOB = new DriveUser("google", "bob");
+
+    private GoogleDriveProperties properties;
+    private GoogleDriveMetadataCache metadataCache;
+
+    @BeforeEach
+    public void setup() {
+        properties = new GoogleDriveProperties();
+        metadataCache = new GoogleDriveMetadataCache(properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void test_get_keptPerUser() {
+        metadataCache.put(ALICE, file("file-1"));
+
+        assertEquals("file-1", metadataCache.get(ALICE, "file-1").getId());
+        assertNull(metadataCache.get(BOB, "file-1"));
+    }
+
+    @Test
+    public void test_invalidate_dropsFileForEveryUser() {
+        metadataCache.put(ALICE, file("file-1"));
+        metadataCache.put(BOB, file("file-1"));
+        metadataCache.put(ALICE, file("file-2"));
+
+        metadataCache.invalidate("file-1");
+
+        assertNull(metadataCache.get(ALICE, "file-1"));
+        assertNull(metadataCache.get(BOB, "file-1"));
+        assertEquals("file-2", metadataCache.get(ALICE, "file-2").getId());
+    }
+
+    @Test
+    public void test_invalidate_afterPutAgain() {
+        metadataCache.put(ALICE, file("file-1"));
+        metadataCache.invalidate("file-1");
+        metadataCache.put(ALICE, file("file-1"));
+
+        metadataCache.invalidate("file-1");
+
+        assertNull(metadataCache.get(ALICE, "file-1"));
+    }
+
+    private static GoogleDriveFileResponse file(final String id) {
+        final GoogleDriveFileResponse file = new GoogleDriveFileResponse();
+        file.setId(id);
+        return file;
+    }
+}
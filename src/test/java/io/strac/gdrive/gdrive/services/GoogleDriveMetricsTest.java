@@ -0,0 +1,63 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GoogleDriveMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private GoogleDriveMetrics metrics;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        final ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        metrics = new GoogleDriveMetrics(observationRegistry, meterRegistry);
+    }
+
+    @Test
+    public void test_observe_timesOperationsAndCountsErrorsByReason() throws IOException {
+        assertEquals("ok", metrics.observe("get", () -> "ok"));
+        final GoogleJsonError error = new GoogleJsonError();
+        error.setCode(404);
+        final GoogleJsonError.ErrorInfo errorInfo = new GoogleJsonError.ErrorInfo();
+        errorInfo.setReason("notFound");
+        error.setErrors(List.of(errorInfo));
+        final GoogleJsonResponseException notFound = new GoogleJsonResponseException(
+                new HttpResponseException.Builder(404, "Not Found", new HttpHeaders()), error);
+
+        assertThrows(GoogleJsonResponseException.class, () -> metrics.observe("get", () -> {
+            throw notFound;
+        }));
+
+        assertEquals(1, meterRegistry.get("gdrive.operation").tags("operation", "get", "reason", "none").timer().count());
+        assertEquals(1, meterRegistry.get("gdrive.operation").tags("operation", "get", "reason", "notFound").timer().count());
+        assertEquals(1.0, meterRegistry.get("gdrive.errors").tags("operation", "get", "reason", "notFound").counter().count());
+    }
+
+    @Test
+    public void test_observeTransfers_countBytes() throws IOException {
+        metrics.observeDownload("download", new ByteArrayOutputStream(), out -> out.write(new byte[100]));
+        final int uploaded = metrics.observeUpload(new ByteArrayInputStream(new byte[40]), in -> in.readAllBytes().length);
+
+        assertEquals(40, uploaded);
+        assertEquals(100.0, meterRegistry.get("gdrive.transfer.bytes").tag("direction", "download").counter().count());
+        assertEquals(40.0, meterRegistry.get("gdrive.transfer.bytes").tag("direction", "upload").counter().count());
+        assertEquals(0.0, meterRegistry.get("gdrive.transfers.active").tag("direction", "download").gauge().value());
+    }
+}
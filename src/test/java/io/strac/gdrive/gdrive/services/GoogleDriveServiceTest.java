@@ -1,35 +1,61 @@
 package io.strac.gdrive.gdrive.services;
 
-import com.google.api.client.http.FileContent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.media.MediaHttpDownloader;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.InputStreamContent;
 import com.google.api.client.util.DateTime;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import io.strac.gdrive.gdrive.clients.GoogleDriveClientFactory;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveBatchResult;
 import io.strac.gdrive.gdrive.models.GoogleDriveFileListResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileQuery;
 import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static io.strac.gdrive.gdrive.services.GoogleDriveService.FILE_FIELDS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 public class GoogleDriveServiceTest {
 
-    @InjectMocks
     private GoogleDriveService googleDriveService;
 
+    private SimpleMeterRegistry meterRegistry;
+
     @Mock
     private GoogleDriveClientFactory mockGoogleDriveClientFactory;
 
@@ -41,7 +67,16 @@ public class GoogleDriveServiceTest {
 
     @BeforeEach
     public void setup() {
-        when(mockGoogleDriveClientFactory.createClient()).thenReturn(mockGoogleDriveClient);
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        properties.getRetry().setInitialInterval(Duration.ofMillis(1));
+        meterRegistry = new SimpleMeterRegistry();
+        final GoogleDriveMetrics metrics = new GoogleDriveMetrics(ObservationRegistry.NOOP, meterRegistry);
+        googleDriveService = new GoogleDriveService(mockGoogleDriveClientFactory,
+                new GoogleDriveMetadataCache(properties, meterRegistry),
+                new GoogleDriveFileIndex(properties, new GoogleDriveIndexStore(properties, new ObjectMapper()), metrics),
+                metrics, new SimpleAsyncTaskExecutor(), new SimpleAsyncTaskExecutor(), properties);
+        lenient().when(mockGoogleDriveClientFactory.createClient()).thenReturn(mockGoogleDriveClient);
+        lenient().when(mockGoogleDriveClientFactory.createClient(any())).thenReturn(mockGoogleDriveClient);
     }
 
     @Test
@@ -60,9 +95,104 @@ public class GoogleDriveServiceTest {
         when(listRequest.setPageToken(any())).thenReturn(listRequest);
         when(listRequest.execute()).thenReturn(fileList);
 
-        GoogleDriveFileListResponse files = googleDriveService.getFilesPaginated(null);
+        GoogleDriveFileListResponse files = googleDriveService.getFilesPaginated(null, null);
         assertEquals(1, files.getFiles().size());
         assertEquals(fileId, files.getFiles().getFirst().getId());
+        verify(listRequest).setPageSize(100);
+    }
+
+    @Test
+    public void test_getFilesPaginated_pushesQueryToDrive() throws IOException {
+        FileList fileList = new FileList().setFiles(List.of(
+                new File().setId("small").setName("a.pdf").setSize(10L),
+                new File().setId("large").setName("b.pdf").setSize(2048L)));
+
+        Drive.Files.List listRequest = mock(Drive.Files.List.class, RETURNS_SELF);
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockFiles.list()).thenReturn(listRequest);
+        doReturn(fileList).when(listRequest).execute();
+
+        final GoogleDriveFileQuery query = GoogleDriveFileQuery.builder()
+                .name("it's")
+                .mimeType("application/pdf")
+                .modifiedAfter(Instant.parse("2024-01-01T00:00:00Z"))
+                .minSize(1024L)
+                .orderBy("lastModifiedDateTime desc,name")
+                .fields("id,name")
+                .build();
+        GoogleDriveFileListResponse files = googleDriveService.getFilesPaginated(query, null, null);
+
+        verify(listRequest).setQ("name contains 'it\\'s' and mimeType = 'application/pdf' and modifiedTime > '2024-01-01T00:00:00Z'");
+        verify(listRequest).setOrderBy("modifiedTime desc,name");
+        verify(listRequest).setFields("nextPageToken, files(id, name, size)");
+        assertEquals(1, files.getFiles().size());
+        assertEquals(GoogleDriveFileResponse.builder().id("large").name("b.pdf").build(), files.getFiles().getFirst());
+    }
+
+    @Test
+    public void test_driveFileQuery_indexMatchesDriveSemantics() {
+        final DriveFileQuery query = DriveFileQuery.of(GoogleDriveFileQuery.builder().name("Report").orderBy("size desc").build());
+        final GoogleDriveFileResponse quarterly = GoogleDriveFileResponse.builder().id("1").name("Quarterly report.pdf").size(10L).quotaBytesUsed(30L).build();
+        final GoogleDriveFileResponse reports = GoogleDriveFileResponse.builder().id("2").name("reports-2024").size(20L).quotaBytesUsed(20L).build();
+        final GoogleDriveFileResponse misc = GoogleDriveFileResponse.builder().id("3").name("misreported").size(30L).quotaBytesUsed(10L).build();
+
+        assertEquals(List.of(quarterly, reports), Stream.of(misc, reports, quarterly)
+                .filter(query.indexFilter()).sorted(query.indexOrder()).toList());
+        assertEquals("name contains 'Report'", query.driveQuery());
+        assertEquals("quotaBytesUsed desc", query.driveOrderBy());
+    }
+
+    @Test
+    public void test_driveFileQuery_projectsEveryDocumentedField() {
+        final DriveFileQuery query = DriveFileQuery.of(GoogleDriveFileQuery.builder()
+                .fields("id,name,mimeType,size,lastModifiedDateTime,md5Checksum,version,quotaBytesUsed,canDownload").build());
+        final GoogleDriveFileResponse file = GoogleDriveFileResponse.builder().id("1").name("a.pdf").mimeType("application/pdf")
+                .size(10L).lastModifiedDateTime("2024-01-01T00:00:00Z").md5Checksum("md5").version(3L).quotaBytesUsed(20L)
+                .canDownload(true).build();
+
+        assertEquals("id, name, mimeType, size, modifiedTime, md5Checksum, version, quotaBytesUsed, capabilities/canDownload",
+                query.driveFields());
+        assertEquals(file, query.projection().apply(file));
+        assertThrows(IllegalArgumentException.class, () -> DriveFileQuery.of(GoogleDriveFileQuery.builder().fields("owners").build()));
+    }
+
+    @Test
+    public void test_listAllFiles_walksEveryPage() throws IOException {
+        final DateTime modifiedDateTime = new DateTime(System.currentTimeMillis());
+        FileList firstPage = new FileList()
+                .setFiles(List.of(new File().setId("file-1").setModifiedTime(modifiedDateTime)))
+                .setNextPageToken("page-2");
+        FileList secondPage = new FileList()
+                .setFiles(List.of(new File().setId("file-2").setModifiedTime(modifiedDateTime)));
+
+        Drive.Files.List listRequest = mock(Drive.Files.List.class);
+
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockFiles.list()).thenReturn(listRequest);
+        when(listRequest.setPageSize(eq(1000))).thenReturn(listRequest);
+        when(listRequest.setFields(any())).thenReturn(listRequest);
+        when(listRequest.setPageToken(any())).thenReturn(listRequest);
+        when(listRequest.execute()).thenReturn(firstPage, secondPage);
+
+        final List<String> fileIds = new ArrayList<>();
+        googleDriveService.listAllFiles(5000, files -> files.forEach(file -> fileIds.add(file.getId())));
+
+        assertEquals(List.of("file-1", "file-2"), fileIds);
+        verify(listRequest).setPageToken("page-2");
+    }
+
+    @Test
+    public void test_indexOffset_validatesToken() {
+        assertEquals(0, GoogleDriveService.indexOffset(null));
+        assertEquals(200, GoogleDriveService.indexOffset("index:200"));
+        assertThrows(IllegalArgumentException.class, () -> GoogleDriveService.indexOffset("index:abc"));
+        assertThrows(IllegalArgumentException.class, () -> GoogleDriveService.indexOffset("index:-5"));
+        assertThrows(IllegalArgumentException.class, () -> GoogleDriveService.indexOffset("drive-page-token"));
+    }
+
+    @Test
+    public void test_getFilesPaginated_indexTokenRefusedByDrive() {
+        assertThrows(IllegalArgumentException.class, () -> googleDriveService.getFilesPaginated("index:100", null));
     }
 
     @Test
@@ -84,6 +214,52 @@ public class GoogleDriveServiceTest {
         assertEquals(fileId, result.getId());
     }
 
+    @Test
+    public void test_getById_servedFromCache() throws IOException {
+        final DateTime modifiedDateTime = new DateTime(System.currentTimeMillis());
+        final String fileId = "test-file-id";
+        File file = new File()
+                .setId(fileId)
+                .setModifiedTime(modifiedDateTime);
+
+        Drive.Files.Get getRequest = mock(Drive.Files.Get.class);
+
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockFiles.get(eq(fileId))).thenReturn(getRequest);
+        when(getRequest.setFields(eq(FILE_FIELDS))).thenReturn(getRequest);
+        when(getRequest.execute()).thenReturn(file);
+
+        googleDriveService.getById(fileId);
+        GoogleDriveFileResponse result = googleDriveService.getById(fileId);
+
+        assertEquals(fileId, result.getId());
+        verify(getRequest, times(1)).execute();
+    }
+
+    @Test
+    public void test_getById_invalidatedByDelete() throws IOException {
+        final DateTime modifiedDateTime = new DateTime(System.currentTimeMillis());
+        final String fileId = "test-file-id";
+        File file = new File()
+                .setId(fileId)
+                .setModifiedTime(modifiedDateTime);
+
+        Drive.Files.Get getRequest = mock(Drive.Files.Get.class);
+        Drive.Files.Delete deleteRequest = mock(Drive.Files.Delete.class);
+
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockFiles.get(eq(fileId))).thenReturn(getRequest);
+        when(mockFiles.delete(eq(fileId))).thenReturn(deleteRequest);
+        when(getRequest.setFields(eq(FILE_FIELDS))).thenReturn(getRequest);
+        when(getRequest.execute()).thenReturn(file);
+
+        googleDriveService.getById(fileId);
+        googleDriveService.deleteFile(fileId);
+        googleDriveService.getById(fileId);
+
+        verify(getRequest, times(2)).execute();
+    }
+
     @Test
     public void test_downloadById_success() throws IOException {
         String fileId = "file-id";
@@ -93,10 +269,51 @@ public class GoogleDriveServiceTest {
         when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
         when(mockFiles.get(eq(fileId))).thenReturn(getRequest);
         when(getRequest.setFields(eq(FILE_FIELDS))).thenReturn(getRequest);
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(0)).write("Test content".getBytes());
+            return null;
+        }).when(getRequest).executeMediaAndDownloadTo(any(OutputStream.class));
 
         googleDriveService.downloadById(fileId, outputStream);
 
-        verify(getRequest).executeMediaAndDownloadTo(outputStream);
+        assertEquals("Test content", outputStream.toString());
+        assertEquals(12.0, meterRegistry.get("gdrive.transfer.bytes").tag("direction", "download").counter().count());
+    }
+
+    @Test
+    public void test_exportFile_success() throws IOException {
+        GoogleDriveFileResponse file = GoogleDriveFileResponse.builder().id("doc-id").mimeType("application/vnd.google-apps.document").build();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        Drive.Files.Export exportRequest = mock(Drive.Files.Export.class);
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockFiles.export(eq("doc-id"), eq("application/pdf"))).thenReturn(exportRequest);
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(0)).write("%PDF".getBytes());
+            return null;
+        }).when(exportRequest).executeMediaAndDownloadTo(any(OutputStream.class));
+
+        googleDriveService.exportFile(file, "application/pdf", outputStream);
+
+        assertEquals("%PDF", outputStream.toString());
+        assertEquals(4.0, meterRegistry.get("gdrive.transfer.bytes").tag("direction", "download").counter().count());
+    }
+
+    @Test
+    public void test_downloadRangeById_success() throws IOException {
+        String fileId = "file-id";
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        Drive.Files.Get getRequest = mock(Drive.Files.Get.class);
+        MediaHttpDownloader downloader = mock(MediaHttpDownloader.class, RETURNS_SELF);
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockFiles.get(eq(fileId))).thenReturn(getRequest);
+        when(getRequest.getMediaHttpDownloader()).thenReturn(downloader);
+
+        googleDriveService.downloadRangeById(fileId, 100L, 199L, outputStream);
+
+        verify(downloader).setContentRange(100L, 199L);
+        verify(getRequest).executeMediaAndDownloadTo(any(OutputStream.class));
     }
 
     @Test
@@ -116,20 +333,169 @@ public class GoogleDriveServiceTest {
     @Test
     public void test_uploadFile_success() throws IOException {
         final DateTime modifiedDateTime = new DateTime(System.currentTimeMillis());
-        java.io.File filePath = new java.io.File("test.txt");
+        final byte[] content = "Test content".getBytes();
         String mimeType = "text/plain";
         File fileMetadata = new File()
                 .setId("file-id")
                 .setModifiedTime(modifiedDateTime);
 
         Drive.Files.Create createRequest = mock(Drive.Files.Create.class);
+        MediaHttpUploader uploader = mock(MediaHttpUploader.class);
 
         when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
-        when(mockFiles.create(any(File.class), any(FileContent.class))).thenReturn(createRequest);
+        when(mockFiles.create(any(File.class), any(InputStreamContent.class))).thenReturn(createRequest);
         when(createRequest.setFields(eq(FILE_FIELDS))).thenReturn(createRequest);
+        when(createRequest.getMediaHttpUploader()).thenReturn(uploader);
         when(createRequest.execute()).thenReturn(fileMetadata);
 
-        GoogleDriveFileResponse result = googleDriveService.uploadFile(filePath, mimeType);
+        GoogleDriveFileResponse result = googleDriveService.uploadFile(
+                "test.txt", mimeType, new ByteArrayInputStream(content), content.length);
         assertEquals("file-id", result.getId());
+        verify(uploader).setDirectUploadEnabled(true);
+    }
+
+    @Test
+    public void test_uploadFile_unknownLength_usesResumableSession() throws IOException {
+        final DateTime modifiedDateTime = new DateTime(System.currentTimeMillis());
+        File fileMetadata = new File()
+                .setId("file-id")
+                .setModifiedTime(modifiedDateTime);
+
+        Drive.Files.Create createRequest = mock(Drive.Files.Create.class);
+        MediaHttpUploader uploader = mock(MediaHttpUploader.class);
+
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockFiles.create(any(File.class), any(InputStreamContent.class))).thenReturn(createRequest);
+        when(createRequest.setFields(eq(FILE_FIELDS))).thenReturn(createRequest);
+        when(createRequest.getMediaHttpUploader()).thenReturn(uploader);
+        when(createRequest.execute()).thenReturn(fileMetadata);
+
+        googleDriveService.uploadFile("video.mp4", "video/mp4", new ByteArrayInputStream(new byte[0]), -1);
+
+        verify(uploader).setChunkSize(8 * 1024 * 1024);
+        verify(uploader).setDirectUploadEnabled(false);
+    }
+
+    @Test
+    public void test_uploadFile_dedup_copiesMatchingFile() throws IOException {
+        final byte[] content = "Test content".getBytes();
+        final GoogleDriveFileIndex fileIndex = mock(GoogleDriveFileIndex.class);
+        final GoogleDriveService dedupService = newDedupService(fileIndex);
+        final GoogleDriveFileResponse existing = GoogleDriveFileResponse.builder().id("existing-id").build();
+        when(fileIndex.isEnabled()).thenReturn(true);
+        when(fileIndex.findByContent(any(), eq(mockGoogleDriveClient), eq(md5Hex(content)), eq((long) content.length)))
+                .thenReturn(existing);
+        Drive.Files.Copy copyRequest = mock(Drive.Files.Copy.class);
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockFiles.copy(eq("existing-id"), any(File.class))).thenReturn(copyRequest);
+        when(copyRequest.setFields(eq(FILE_FIELDS))).thenReturn(copyRequest);
+        when(copyRequest.execute()).thenReturn(new File().setId("copy-id").setName("test.txt"));
+
+        GoogleDriveFileResponse result = dedupService.uploadFile(
+                "test.txt", "text/plain", new ByteArrayInputStream(content), content.length);
+
+        assertEquals("copy-id", result.getId());
+        verify(mockFiles, never()).create(any(File.class), any(InputStreamContent.class));
+        assertEquals(1, meterRegistry.find("gdrive.upload.deduplicated").tag("mode", "copy").counter().count());
+    }
+
+    @Test
+    public void test_uploadFile_dedup_knownChecksumSkipsSpooling() throws IOException {
+        final byte[] content = "Test content".getBytes();
+        final GoogleDriveFileIndex fileIndex = mock(GoogleDriveFileIndex.class);
+        final GoogleDriveService dedupService = newDedupService(fileIndex);
+        final GoogleDriveFileResponse existing = GoogleDriveFileResponse.builder().id("existing-id").build();
+        final InputStream unread = mock(InputStream.class);
+        when(fileIndex.isEnabled()).thenReturn(true);
+        when(fileIndex.findByContent(any(), eq(mockGoogleDriveClient), eq(md5Hex(content)), eq((long) content.length)))
+                .thenReturn(existing);
+        Drive.Files.Copy copyRequest = mock(Drive.Files.Copy.class);
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockFiles.copy(eq("existing-id"), any(File.class))).thenReturn(copyRequest);
+        when(copyRequest.setFields(eq(FILE_FIELDS))).thenReturn(copyRequest);
+        when(copyRequest.execute()).thenReturn(new File().setId("copy-id").setName("test.txt"));
+
+        GoogleDriveFileResponse result = dedupService.uploadFile("test.txt", "text/plain", unread, content.length, md5Hex(content));
+
+        assertEquals("copy-id", result.getId());
+        verifyNoInteractions(unread);
+    }
+
+    @Test
+    public void test_uploadFile_dedup_uploadsNewContent() throws IOException {
+        final byte[] content = "Test content".getBytes();
+        final GoogleDriveFileIndex fileIndex = mock(GoogleDriveFileIndex.class);
+        final GoogleDriveService dedupService = newDedupService(fileIndex);
+        when(fileIndex.isEnabled()).thenReturn(true);
+        when(fileIndex.findByContent(any(), eq(mockGoogleDriveClient), eq(md5Hex(content)), eq((long) content.length)))
+                .thenReturn(null);
+        Drive.Files.Create createRequest = mock(Drive.Files.Create.class);
+        MediaHttpUploader uploader = mock(MediaHttpUploader.class);
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockFiles.create(any(File.class), any(InputStreamContent.class))).thenReturn(createRequest);
+        when(createRequest.setFields(eq(FILE_FIELDS))).thenReturn(createRequest);
+        when(createRequest.getMediaHttpUploader()).thenReturn(uploader);
+        when(createRequest.execute()).thenReturn(new File().setId("file-id"));
+
+        // Unknown length: the spooled copy knows it
+        GoogleDriveFileResponse result = dedupService.uploadFile(
+                "test.txt", "text/plain", new ByteArrayInputStream(content), -1);
+
+        assertEquals("file-id", result.getId());
+        verify(uploader).setDirectUploadEnabled(true);
+        verify(fileIndex).put(any(), eq(result));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_batchDelete_retriesOnlyFailedIds() throws IOException {
+        BatchRequest batch = mock(BatchRequest.class);
+        Drive.Files.Delete firstDelete = mock(Drive.Files.Delete.class);
+        Drive.Files.Delete secondDelete = mock(Drive.Files.Delete.class);
+        Drive.Files.Delete secondDeleteRetry = mock(Drive.Files.Delete.class);
+        Map<Drive.Files.Delete, JsonBatchCallback<Void>> callbacks = new HashMap<>();
+
+        when(mockGoogleDriveClient.files()).thenReturn(mockFiles);
+        when(mockGoogleDriveClient.batch()).thenReturn(batch);
+        when(mockFiles.delete("file-1")).thenReturn(firstDelete);
+        when(mockFiles.delete("file-2")).thenReturn(secondDelete, secondDeleteRetry);
+        for (Drive.Files.Delete request : List.of(firstDelete, secondDelete, secondDeleteRetry)) {
+            doAnswer(invocation -> callbacks.put(request, invocation.getArgument(1)))
+                    .when(request).queue(eq(batch), any(JsonBatchCallback.class));
+        }
+        doAnswer(invocation -> {
+            callbacks.get(firstDelete).onSuccess(null, null);
+            callbacks.get(secondDelete).onFailure(new GoogleJsonError().set("code", 429).set("message", "Rate Limit Exceeded"), null);
+            return null;
+        }).doAnswer(invocation -> {
+            callbacks.get(secondDeleteRetry).onSuccess(null, null);
+            return null;
+        }).when(batch).execute();
+
+        List<GoogleDriveBatchResult> results = googleDriveService.batchDelete(List.of("file-1", "file-2"));
+
+        assertEquals(2, results.size());
+        assertEquals(204, results.get(0).getStatus());
+        assertEquals("file-2", results.get(1).getId());
+        assertEquals(204, results.get(1).getStatus());
+        verify(mockFiles, times(1)).delete("file-1");
+        verify(mockFiles, times(2)).delete("file-2");
+    }
+
+    private GoogleDriveService newDedupService(final GoogleDriveFileIndex fileIndex) {
+        final GoogleDriveProperties properties = new GoogleDriveProperties();
+        properties.getUpload().getDedup().setEnabled(true);
+        return new GoogleDriveService(mockGoogleDriveClientFactory,
+                new GoogleDriveMetadataCache(properties, meterRegistry), fileIndex,
+                new GoogleDriveMetrics(ObservationRegistry.NOOP, meterRegistry), new SimpleAsyncTaskExecutor(),
+                new SimpleAsyncTaskExecutor(), properties);
+    }
+
+    private static String md5Hex(final byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,223 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.strac.gdrive.gdrive.clients.DriveUser;
+import io.strac.gdrive.gdrive.clients.GoogleDriveClientFactory;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import io.strac.gdrive.gdrive.models.GoogleDriveFileResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveUploadJobResponse;
+import io.strac.gdrive.gdrive.models.GoogleDriveUploadJobResponse.State;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GoogleDriveUploadServiceTest {
+    private static final DriveUser ALICE = new DriveUser("google", "alice");
+    private static final DriveUser BOB = new DriveUser("google", "bob");
+    private static final byte[] CONTENT = "Hello, Drive".getBytes(StandardCharsets.UTF_8);
+    private static final String CONTENT_MD5 = HexFormat.of().formatHex(GoogleDriveService.newMd5().digest(CONTENT));
+
+    @Mock
+    private GoogleDriveService googleDriveService;
+
+    @Mock
+    private GoogleDriveClientFactory driveClientFactory;
+
+    @TempDir
+    private Path spoolDirectory;
+
+    private GoogleDriveProperties properties;
+    private UploadJobStore jobStore;
+    private GoogleDriveUploadService uploadService;
+
+    @BeforeEach
+    public void setup() {
+        properties = new GoogleDriveProperties();
+        properties.getRetry().setInitialInterval(Duration.ofMillis(1));
+        properties.getUpload().getJobs().setSpoolDirectory(spoolDirectory.toString());
+        lenient().when(driveClientFactory.currentUser()).thenReturn(ALICE);
+        uploadService = newUploadService();
+    }
+
+    @Test
+    public void test_submit_uploadsInBackground() throws Exception {
+        when(googleDriveService.uploadFile(eq("hello.txt"), eq("text/plain"), any(InputStream.class), eq((long) CONTENT.length), eq(CONTENT_MD5)))
+                .thenAnswer(invocation -> {
+                    invocation.getArgument(2, InputStream.class).readAllBytes();
+                    return file("file-id");
+                });
+
+        final GoogleDriveUploadJobResponse submitted = uploadService.submit("hello.txt", "text/plain", new ByteArrayInputStream(CONTENT));
+        final GoogleDriveUploadJobResponse job = awaitFinished(submitted.getId());
+
+        assertEquals(State.SUCCEEDED, job.getState());
+        assertEquals("file-id", job.getFile().getId());
+        assertEquals(CONTENT.length, job.getBytesSent());
+        assertEquals(1, job.getAttempts());
+        assertSpoolDirectoryEmpty();
+    }
+
+    @Test
+    public void test_submit_multipartFileMovedIntoSpool() throws Exception {
+        when(googleDriveService.uploadFile(eq("hello.txt"), eq("text/plain"), any(InputStream.class), eq((long) CONTENT.length), eq(CONTENT_MD5)))
+                .thenAnswer(invocation -> {
+                    assertArrayEquals(CONTENT, invocation.getArgument(2, InputStream.class).readAllBytes());
+                    return file("file-id");
+                });
+
+        final GoogleDriveUploadJobResponse job = awaitFinished(
+                uploadService.submit(new MockMultipartFile("file", "hello.txt", "text/plain", CONTENT)).getId());
+
+        assertEquals(State.SUCCEEDED, job.getState());
+        assertEquals(CONTENT.length, job.getSize());
+        assertSpoolDirectoryEmpty();
+    }
+
+    @Test
+    public void test_submit_transientFailureRetried() throws Exception {
+        when(googleDriveService.uploadFile(eq("hello.txt"), eq("text/plain"), any(InputStream.class), eq((long) CONTENT.length), eq(CONTENT_MD5)))
+                .thenThrow(new IOException("Connection reset"))
+                .thenReturn(file("file-id"));
+
+        final GoogleDriveUploadJobResponse job = awaitFinished(
+                uploadService.submit("hello.txt", "text/plain", new ByteArrayInputStream(CONTENT)).getId());
+
+        assertEquals(State.SUCCEEDED, job.getState());
+        assertEquals(2, job.getAttempts());
+    }
+
+    @Test
+    public void test_submit_clientErrorNotRetried() throws Exception {
+        when(googleDriveService.uploadFile(eq("hello.txt"), eq("text/plain"), any(InputStream.class), eq((long) CONTENT.length), eq(CONTENT_MD5)))
+                .thenThrow(new HttpResponseException.Builder(400, "Bad Request", new HttpHeaders()).build());
+
+        final GoogleDriveUploadJobResponse job = awaitFinished(
+                uploadService.submit("hello.txt", "text/plain", new ByteArrayInputStream(CONTENT)).getId());
+
+        assertEquals(State.FAILED, job.getState());
+        assertEquals(1, job.getAttempts());
+        assertNotNull(job.getError());
+        assertSpoolDirectoryEmpty();
+    }
+
+    @Test
+    public void test_submit_queueFull() throws Exception {
+        properties.getUpload().getJobs().setWorkers(1);
+        properties.getUpload().getJobs().setQueueCapacity(0);
+        properties.getUpload().getJobs().setRetryAfter(Duration.ofSeconds(7));
+        uploadService = newUploadService();
+        final CountDownLatch release = new CountDownLatch(1);
+        when(googleDriveService.uploadFile(eq("hello.txt"), eq("text/plain"), any(InputStream.class), eq((long) CONTENT.length), eq(CONTENT_MD5)))
+                .thenAnswer(invocation -> {
+                    assertTrue(release.await(5, TimeUnit.SECONDS));
+                    return file("file-id");
+                });
+
+        final GoogleDriveUploadJobResponse first = uploadService.submit("hello.txt", "text/plain", new ByteArrayInputStream(CONTENT));
+        final UploadQueueFullException e = assertThrows(UploadQueueFullException.class,
+                () -> uploadService.submit("other.txt", "text/plain", new ByteArrayInputStream(CONTENT)));
+        assertEquals(Duration.ofSeconds(7), e.getRetryAfter());
+
+        release.countDown();
+        assertEquals(State.SUCCEEDED, awaitFinished(first.getId()).getState());
+        // The finished job frees its slot
+        assertNotNull(uploadService.submit("hello.txt", "text/plain", new ByteArrayInputStream(CONTENT)));
+    }
+
+    @Test
+    public void test_get_otherUsersJobNotFound() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(googleDriveService.uploadFile(eq("hello.txt"), eq("text/plain"), any(InputStream.class), eq((long) CONTENT.length), eq(CONTENT_MD5)))
+                .thenAnswer(invocation -> {
+                    assertTrue(release.await(5, TimeUnit.SECONDS));
+                    return file("file-id");
+                });
+        final GoogleDriveUploadJobResponse job = uploadService.submit("hello.txt", "text/plain", new ByteArrayInputStream(CONTENT));
+
+        when(driveClientFactory.currentUser()).thenReturn(BOB);
+        assertNull(uploadService.get(job.getId()));
+        assertNull(uploadService.get("unknown-job"));
+
+        when(driveClientFactory.currentUser()).thenReturn(ALICE);
+        release.countDown();
+        assertEquals(State.SUCCEEDED, awaitFinished(job.getId()).getState());
+    }
+
+    @Test
+    public void test_get_jobOfAnotherNodeReadFromSharedStore() throws Exception {
+        uploadService = newUploadService();
+        final GoogleDriveUploadService otherNode = newUploadService();
+        final CountDownLatch release = new CountDownLatch(1);
+        when(googleDriveService.uploadFile(eq("hello.txt"), eq("text/plain"), any(InputStream.class), eq((long) CONTENT.length), eq(CONTENT_MD5)))
+                .thenAnswer(invocation -> {
+                    release.await();
+                    return GoogleDriveFileResponse.builder().id("file-1").build();
+                });
+        final GoogleDriveUploadJobResponse job = uploadService.submit("hello.txt", "text/plain", new ByteArrayInputStream(CONTENT));
+
+        assertEquals(job.getId(), otherNode.get(job.getId()).getId());
+        when(driveClientFactory.currentUser()).thenReturn(BOB);
+        assertNull(otherNode.get(job.getId()));
+
+        when(driveClientFactory.currentUser()).thenReturn(ALICE);
+        release.countDown();
+        assertEquals(State.SUCCEEDED, awaitFinished(job.getId()).getState());
+        final GoogleDriveUploadJobResponse reported = otherNode.get(job.getId());
+        assertEquals(State.SUCCEEDED, reported.getState());
+        assertEquals("file-1", reported.getFile().getId());
+    }
+
+    private GoogleDriveUploadService newUploadService() {
+        if (jobStore == null) {
+            jobStore = new MemoryUploadJobStore(properties);
+        }
+        return new GoogleDriveUploadService(googleDriveService, driveClientFactory, new SimpleAsyncTaskExecutor(),
+                jobStore, properties, new SimpleMeterRegistry());
+    }
+
+    private GoogleDriveUploadJobResponse awaitFinished(final String jobId) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        GoogleDriveUploadJobResponse job = uploadService.get(jobId);
+        while ((job.getState() == State.QUEUED || job.getState() == State.RUNNING) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+            job = uploadService.get(jobId);
+        }
+        return job;
+    }
+
+    private void assertSpoolDirectoryEmpty() throws IOException {
+        try (var files = Files.list(spoolDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private static GoogleDriveFileResponse file(final String id) {
+        final GoogleDriveFileResponse file = new GoogleDriveFileResponse();
+        file.setId(id);
+        return file;
+    }
+}
@@ -0,0 +1,159 @@
+package io.strac.gdrive.gdrive.services;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelRangeDownloadTest {
+    private static final int SIZE = 10_000;
+
+    private byte[] content;
+    private GoogleDriveProperties.Download.Parallel properties;
+
+    @BeforeEach
+    public void setup() {
+        content = new byte[SIZE];
+        new Random(1).nextBytes(content);
+        properties = new GoogleDriveProperties.Download.Parallel();
+        properties.setRangeSize(DataSize.ofBytes(1_000));
+        properties.setConnections(4);
+        properties.setBufferBudget(DataSize.ofBytes(3_000));
+    }
+
+    @Test
+    public void test_copyTo_reassemblesRangesInOrder() throws IOException {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        download().copyTo(SIZE, (first, last, out) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            out.write(content, (int) first, (int) (last - first + 1));
+        }, outputStream);
+
+        assertArrayEquals(content, outputStream.toByteArray());
+        // The buffer budget holds 3 ranges, fewer than the 4 connections
+        assertTrue(maxInFlight.get() <= 3, "ranges in flight: " + maxInFlight.get());
+    }
+
+    @Test
+    public void test_copyTo_failedRangeResumesWhereItStopped() throws IOException {
+        final List<String> requests = new CopyOnWriteArrayList<>();
+        final AtomicInteger failures = new AtomicInteger();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        download().copyTo(SIZE, (first, last, out) -> {
+            requests.add(first + "-" + last);
+            if (first == 5_000 && failures.getAndIncrement() == 0) {
+                out.write(content, 5_000, 400);
+                throw new IOException("Connection reset");
+            }
+            out.write(content, (int) first, (int) (last - first + 1));
+        }, outputStream);
+
+        assertArrayEquals(content, outputStream.toByteArray());
+        assertTrue(requests.contains("5400-5999"));
+        assertEquals(11, requests.size());
+    }
+
+    @Test
+    public void test_copyTo_clientErrorIsNotRetried() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final HttpResponseException thrown = assertThrows(HttpResponseException.class, () -> download().copyTo(SIZE, (first, last, out) -> {
+            if (first == 3_000) {
+                attempts.incrementAndGet();
+                throw new HttpResponseException.Builder(404, "Not Found", new HttpHeaders()).build();
+            }
+            out.write(content, (int) first, (int) (last - first + 1));
+        }, new ByteArrayOutputStream()));
+
+        assertEquals(404, thrown.getStatusCode());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void test_copyTo_writesRangesToFileByPosition(@TempDir Path directory) throws IOException {
+        final Path destination = directory.resolve("download.bin");
+        properties.setMaxAttempts(2);
+
+        try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            download().copyTo(SIZE, (first, last, out) -> {
+                final int length = (int) (last - first + 1);
+                // Drive may send a range in several writes
+                out.write(content, (int) first, length / 2);
+                out.write(content, (int) first + length / 2, length - length / 2);
+            }, channel);
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(destination));
+    }
+
+    @Test
+    public void test_copyTo_completesWhileExecutorIsBusy(@TempDir Path directory) throws Exception {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.initialize();
+        final CountDownLatch busy = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                busy.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final ParallelRangeDownload download = new ParallelRangeDownload(executor, properties, Duration.ofMillis(1));
+        final ParallelRangeDownload.RangeSource source = (first, last, out) -> out.write(content, (int) first, (int) (last - first + 1));
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final Path destination = directory.resolve("download.bin");
+
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                download.copyTo(SIZE, source, outputStream);
+                try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    download.copyTo(SIZE, source, channel);
+                }
+            });
+        } finally {
+            busy.countDown();
+            executor.shutdown();
+        }
+
+        assertArrayEquals(content, outputStream.toByteArray());
+        assertArrayEquals(content, Files.readAllBytes(destination));
+    }
+
+    private ParallelRangeDownload download() {
+        return new ParallelRangeDownload(new SimpleAsyncTaskExecutor(), properties, Duration.ofMillis(1));
+    }
+}
@@ -0,0 +1,179 @@
+package io.strac.gdrive.gdrive.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import io.strac.gdrive.gdrive.config.GoogleDriveProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharedDownloadsTest {
+    private static final int SIZE = 10_000;
+
+    private byte[] content;
+    private SimpleMeterRegistry meterRegistry;
+    private SharedDownloads sharedDownloads;
+
+    @BeforeEach
+    public void setup() {
+        content = new byte[SIZE];
+        new Random(1).nextBytes(content);
+        meterRegistry = new SimpleMeterRegistry();
+        sharedDownloads = new SharedDownloads(new SimpleAsyncTaskExecutor(), 1_000,
+                new GoogleDriveMetrics(ObservationRegistry.NOOP, meterRegistry));
+    }
+
+    @Test
+    public void test_copyTo_readersJoinDownloadInFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch joined = new CountDownLatch(1);
+        final AtomicInteger downloads = new AtomicInteger();
+        final GoogleDriveContentCache.ContentSource source = out -> {
+            downloads.incrementAndGet();
+            out.write(content, 0, 500);
+            started.countDown();
+            await(joined);
+            for (int offset = 500; offset < SIZE; offset += 100) {
+                out.write(content, offset, 100);
+            }
+        };
+
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        final CompletableFuture<Void> firstDone = CompletableFuture.runAsync(() -> copyTo(source, first));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final ByteArrayOutputStream second = new ByteArrayOutputStream();
+        final CompletableFuture<Void> secondDone = CompletableFuture.runAsync(() -> copyTo(source, second));
+        while (meterRegistry.find("gdrive.coalesced").counter() == null) {
+            Thread.sleep(5);
+        }
+        joined.countDown();
+        firstDone.get(5, TimeUnit.SECONDS);
+        secondDone.get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, downloads.get());
+        assertArrayEquals(content, first.toByteArray());
+        assertArrayEquals(content, second.toByteArray());
+    }
+
+    @Test
+    public void test_copyTo_readerGoingAwayDoesNotStopOthers() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch joined = new CountDownLatch(1);
+        final GoogleDriveContentCache.ContentSource source = out -> {
+            out.write(content, 0, 100);
+            started.countDown();
+            await(joined);
+            for (int offset = 100; offset < SIZE; offset += 100) {
+                out.write(content, offset, 100);
+            }
+        };
+
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        final CompletableFuture<Void> firstDone = CompletableFuture.runAsync(() -> copyTo(source, first));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final OutputStream disconnected = new OutputStream() {
+            private int written;
+
+            @Override
+            public void write(final int b) throws IOException {
+                if (++written > 2_000) {
+                    throw new IOException("Broken pipe");
+                }
+            }
+        };
+        final CompletableFuture<Void> secondDone = CompletableFuture.runAsync(() -> copyTo(source, disconnected));
+        while (meterRegistry.find("gdrive.coalesced").counter() == null) {
+            Thread.sleep(5);
+        }
+        joined.countDown();
+
+        firstDone.get(5, TimeUnit.SECONDS);
+        assertArrayEquals(content, first.toByteArray());
+        assertThrows(Exception.class, () -> secondDone.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_copyTo_downloadCancelledWhenEveryReaderHasGone() throws Exception {
+        final CompletableFuture<Throwable> downloadFailure = new CompletableFuture<>();
+        final GoogleDriveContentCache.ContentSource source = out -> {
+            try {
+                for (int i = 0; i < 1_000; i++) {
+                    out.write(content, 0, 100);
+                }
+                downloadFailure.complete(null);
+            } catch (IOException e) {
+                downloadFailure.complete(e);
+                throw e;
+            }
+        };
+        final OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThrows(IOException.class, () -> sharedDownloads.copyTo("file-1@md5:abc", source, disconnected));
+
+        assertInstanceOf(IOException.class, downloadFailure.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_copyTo_parallelRangeDownloadFinishesOnSingleThreadExecutor() {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.initialize();
+        final GoogleDriveProperties.Download.Parallel properties = new GoogleDriveProperties.Download.Parallel();
+        properties.setRangeSize(DataSize.ofBytes(1_000));
+        properties.setConnections(4);
+        final ParallelRangeDownload parallelDownload = new ParallelRangeDownload(executor, properties, Duration.ofMillis(1));
+        final SharedDownloads singleThreaded = new SharedDownloads(executor, 1_000,
+                new GoogleDriveMetrics(ObservationRegistry.NOOP, meterRegistry));
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        try {
+            // The shared download takes the only thread, so its range fetches can never be picked up by the executor
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> singleThreaded.copyTo("file-1@md5:abc",
+                    out -> parallelDownload.copyTo(SIZE, (first, last, rangeOut) ->
+                            rangeOut.write(content, (int) first, (int) (last - first + 1)), out),
+                    outputStream));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertArrayEquals(content, outputStream.toByteArray());
+    }
+
+    private void copyTo(final GoogleDriveContentCache.ContentSource source, final OutputStream outputStream) {
+        try {
+            sharedDownloads.copyTo("file-1@md5:abc", source, outputStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void await(final CountDownLatch latch) throws IOException {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IOException("Timed out");
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}